@@ -0,0 +1,81 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.benchmarks;
+
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * The inputs for benchmarking the translation of a single entity: its {@link EntityMetadata},
+ * the entry as it would be returned from ldap, and the same entity as a json document.
+ *
+ * @author dcrissman
+ */
+public class BenchmarkEntity {
+
+    private final EntityMetadata entityMetadata;
+    private final SearchResultEntry searchResultEntry;
+    private final JsonDoc document;
+    private final LdapFieldNameTranslator fieldNameTranslator = new TrivialLdapFieldNameTranslator();
+
+    BenchmarkEntity(EntityMetadata entityMetadata, SearchResultEntry searchResultEntry, JsonDoc document) {
+        this.entityMetadata = entityMetadata;
+        this.searchResultEntry = searchResultEntry;
+        this.document = document;
+    }
+
+    public EntityMetadata getEntityMetadata() {
+        return entityMetadata;
+    }
+
+    public LdapFieldNameTranslator getFieldNameTranslator() {
+        return fieldNameTranslator;
+    }
+
+    public String getDn() {
+        return searchResultEntry.getDN();
+    }
+
+    /**
+     * @return the entity as it would be returned from a search.
+     */
+    public SearchResultEntry getSearchResultEntry() {
+        return searchResultEntry;
+    }
+
+    /**
+     * @return the entity as it currently exists in ldap, for translating modifications against.
+     */
+    public Entry getCurrentEntry() {
+        return searchResultEntry;
+    }
+
+    /**
+     * @return the entity as a json document, with every value changed from the current entry.
+     * The dn is not included, as it is derived rather than written.
+     */
+    public JsonDoc getDocument() {
+        return document;
+    }
+
+}
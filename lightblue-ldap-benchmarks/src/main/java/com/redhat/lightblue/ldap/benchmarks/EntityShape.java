@@ -0,0 +1,193 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Fields;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.types.BinaryType;
+import com.redhat.lightblue.metadata.types.BooleanType;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.util.Base64;
+
+/**
+ * Shapes of entity, modelled on typical directory entries, that the translators are benchmarked
+ * against.
+ *
+ * @author dcrissman
+ */
+public enum EntityShape {
+
+    /** An inetOrgPerson with only simple fields. */
+    FLAT {
+        @Override
+        void addFields(Fields fields, List<Attribute> attributes, ObjectNode document) {
+            addPersonFields(fields, attributes, document);
+        }
+    },
+    /** A person whose address and manager are modelled as nested objects. */
+    NESTED {
+        @Override
+        void addFields(Fields fields, List<Attribute> attributes, ObjectNode document) {
+            addPersonFields(fields, attributes, document);
+
+            ObjectField address = new ObjectField("address");
+            address.getFields().addNew(new SimpleField("street", StringType.TYPE));
+            address.getFields().addNew(new SimpleField("city", StringType.TYPE));
+            address.getFields().addNew(new SimpleField("postalCode", StringType.TYPE));
+            fields.addNew(address);
+            attributes.add(new Attribute("street", "100 East Davie Street"));
+            attributes.add(new Attribute("city", "Raleigh"));
+            attributes.add(new Attribute("postalCode", "27601"));
+            document.putObject("address")
+                .put("street", "200 East Davie Street")
+                .put("city", "Durham")
+                .put("postalCode", "27701");
+
+            ObjectField manager = new ObjectField("manager");
+            manager.getFields().addNew(new SimpleField("managerUid", StringType.TYPE));
+            manager.getFields().addNew(new SimpleField("managerName", StringType.TYPE));
+            fields.addNew(manager);
+            attributes.add(new Attribute("managerUid", "jane.smith"));
+            attributes.add(new Attribute("managerName", "Jane Smith"));
+            document.putObject("manager")
+                .put("managerUid", "mary.jones")
+                .put("managerName", "Mary Jones");
+        }
+    },
+    /** A group with a large multi-valued member attribute. */
+    LARGE_ARRAY {
+        @Override
+        void addFields(Fields fields, List<Attribute> attributes, ObjectNode document) {
+            fields.addNew(new SimpleField("cn", StringType.TYPE));
+            fields.addNew(new SimpleField("description", StringType.TYPE));
+            fields.addNew(new ArrayField("member", new SimpleArrayElement(StringType.TYPE)));
+            attributes.add(new Attribute("cn", "engineering"));
+            attributes.add(new Attribute("description", "Everyone in engineering"));
+            document.put("cn", "engineering");
+            document.put("description", "Everyone in engineering and operations");
+
+            String[] members = new String[LARGE_ARRAY_SIZE];
+            ArrayNode memberNode = document.putArray("member");
+            for (int x = 0; x < LARGE_ARRAY_SIZE; x++) {
+                members[x] = "uid=user" + x + ",ou=Users,dc=example,dc=com";
+                //Shift the members by half, so that the document both adds and removes values.
+                memberNode.add("uid=user" + (x + (LARGE_ARRAY_SIZE / 2)) + ",ou=Users,dc=example,dc=com");
+            }
+            attributes.add(new Attribute("member", members));
+        }
+    },
+    /** A person with binary certificate and photo attributes. */
+    BINARY {
+        @Override
+        void addFields(Fields fields, List<Attribute> attributes, ObjectNode document) {
+            addPersonFields(fields, attributes, document);
+
+            fields.addNew(new SimpleField("userCertificate", BinaryType.TYPE));
+            fields.addNew(new SimpleField("jpegPhoto", BinaryType.TYPE));
+            attributes.add(new Attribute("userCertificate", createBytes(CERTIFICATE_SIZE, 1)));
+            attributes.add(new Attribute("jpegPhoto", createBytes(PHOTO_SIZE, 2)));
+            document.put("userCertificate", Base64.encode(createBytes(CERTIFICATE_SIZE, 3)));
+            document.put("jpegPhoto", Base64.encode(createBytes(PHOTO_SIZE, 4)));
+        }
+    };
+
+    static final int LARGE_ARRAY_SIZE = 5000;
+    static final int CERTIFICATE_SIZE = 2048;
+    static final int PHOTO_SIZE = 32 * 1024;
+
+    private static final String DN = "uid=john.doe,ou=Users,dc=example,dc=com";
+
+    abstract void addFields(Fields fields, List<Attribute> attributes, ObjectNode document);
+
+    /**
+     * @return a new {@link BenchmarkEntity} of this shape.
+     */
+    public BenchmarkEntity create() {
+        EntityMetadata md = new EntityMetadata(name().toLowerCase());
+        List<Attribute> attributes = new ArrayList<>();
+        ObjectNode document = JsonNodeFactory.instance.objectNode();
+
+        //Added to every ldap entity by the metadata listener, but never sent back to ldap.
+        md.getFields().addNew(new SimpleField(LdapConstant.ATTRIBUTE_DN, StringType.TYPE));
+
+        addFields(md.getFields(), attributes, document);
+
+        return new BenchmarkEntity(md, new SearchResultEntry(DN, attributes, new Control[0]), new JsonDoc(document));
+    }
+
+    private static void addPersonFields(Fields fields, List<Attribute> attributes, ObjectNode document) {
+        addString(fields, attributes, document, "uid", "john.doe", "john.doe");
+        addString(fields, attributes, document, "cn", "John Doe", "Johnathan Doe");
+        addString(fields, attributes, document, "sn", "Doe", "Doe");
+        addString(fields, attributes, document, "givenName", "John", "Johnathan");
+        addString(fields, attributes, document, "mail", "john.doe@example.com", "johnathan.doe@example.com");
+        addString(fields, attributes, document, "title", "Software Engineer", "Senior Software Engineer");
+        addString(fields, attributes, document, "telephoneNumber", "+1 919 555 0100", "+1 919 555 0199");
+        addString(fields, attributes, document, "departmentNumber", "4200", "4300");
+
+        fields.addNew(new SimpleField("employeeNumber", IntegerType.TYPE));
+        attributes.add(new Attribute("employeeNumber", "12345"));
+        document.put("employeeNumber", 12346);
+
+        fields.addNew(new SimpleField("active", BooleanType.TYPE));
+        attributes.add(new Attribute("active", "true"));
+        document.put("active", false);
+
+        fields.addNew(new SimpleField("hireDate", DateType.TYPE));
+        attributes.add(new Attribute("hireDate", "20150102030405.000Z"));
+        document.put("hireDate", "20160102T03:04:05.000+0000");
+
+        fields.addNew(new ArrayField("objectClass", new SimpleArrayElement(StringType.TYPE)));
+        attributes.add(new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"));
+        document.putArray("objectClass").add("top").add("person").add("organizationalPerson").add("inetOrgPerson");
+    }
+
+    private static void addString(Fields fields, List<Attribute> attributes, ObjectNode document,
+            String name, String currentValue, String newValue) {
+        fields.addNew(new SimpleField(name, StringType.TYPE));
+        attributes.add(new Attribute(name, currentValue));
+        document.put(name, newValue);
+    }
+
+    private static byte[] createBytes(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int x = 0; x < size; x++) {
+            bytes[x] = (byte) ((x * 31) + seed);
+        }
+        return bytes;
+    }
+
+}
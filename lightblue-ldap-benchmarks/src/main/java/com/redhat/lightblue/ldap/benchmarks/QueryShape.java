@@ -0,0 +1,101 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.benchmarks;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Shapes of query and sort, modelled on the requests typically made against a directory, that
+ * filter building and sort translation are benchmarked against.
+ *
+ * @author dcrissman
+ */
+public enum QueryShape {
+
+    /** Lookup of a single entry by its unique attribute. */
+    EQUALITY(
+            "{\"field\":\"uid\",\"op\":\"=\",\"rvalue\":\"john.doe\"}",
+            "{\"uid\":\"$asc\"}"),
+    /** Nested logical operators mixing comparisons and a negation. */
+    CONJUNCTION(
+            "{\"$and\":["
+                + "{\"field\":\"objectClass\",\"op\":\"=\",\"rvalue\":\"inetOrgPerson\"},"
+                + "{\"field\":\"departmentNumber\",\"op\":\">=\",\"rvalue\":\"4000\"},"
+                + "{\"$or\":["
+                    + "{\"field\":\"title\",\"op\":\"!=\",\"rvalue\":\"Intern\"},"
+                    + "{\"$not\":{\"field\":\"active\",\"op\":\"=\",\"rvalue\":false}}"
+                + "]}"
+            + "]}",
+            "[{\"sn\":\"$asc\"},{\"givenName\":\"$asc\"},{\"hireDate\":\"$desc\"}]"),
+    /** Bulk lookup of many entries by their unique attribute. */
+    LARGE_IN(createLargeIn(), "{\"cn\":\"$asc\"}"),
+    /** Groups containing any of a number of members. */
+    ARRAY_CONTAINS(createArrayContains(), "[{\"cn\":\"$asc\"},{\"description\":\"$desc\"}]");
+
+    static final int LARGE_IN_SIZE = 500;
+    static final int ARRAY_CONTAINS_SIZE = 50;
+
+    private final QueryExpression query;
+    private final Sort sort;
+
+    private QueryShape(String query, String sort) {
+        try {
+            this.query = QueryExpression.fromJson(JsonUtils.json(query));
+            this.sort = Sort.fromJson(JsonUtils.json(sort));
+        } catch (Exception e) {
+            throw new IllegalStateException("Invalid benchmark query: " + query, e);
+        }
+    }
+
+    public QueryExpression getQuery() {
+        return query;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    private static String createLargeIn() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("field", "uid");
+        node.put("op", "$in");
+        ArrayNode values = node.putArray("values");
+        for (int x = 0; x < LARGE_IN_SIZE; x++) {
+            values.add("user" + x);
+        }
+        return node.toString();
+    }
+
+    private static String createArrayContains() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("array", "member");
+        node.put("contains", "$any");
+        ArrayNode values = node.putArray("values");
+        for (int x = 0; x < ARRAY_CONTAINS_SIZE; x++) {
+            values.add("uid=user" + x + ",ou=Users,dc=example,dc=com");
+        }
+        return node.toString();
+    }
+
+}
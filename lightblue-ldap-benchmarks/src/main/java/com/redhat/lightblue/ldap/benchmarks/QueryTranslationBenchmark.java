@@ -0,0 +1,77 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.crud.ldap.FilterBuilder;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.crud.ldap.translator.SortTranslator;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.controls.SortKey;
+
+/**
+ * Benchmarks building ldap filters and sort keys for each {@link QueryShape}.
+ *
+ * @author dcrissman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QueryTranslationBenchmark {
+
+    @Param
+    public QueryShape shape;
+
+    private FilterBuilder filterBuilder;
+    private SortTranslator sortTranslator;
+
+    @Setup
+    public void setup() {
+        TrivialLdapFieldNameTranslator fieldNameTranslator = new TrivialLdapFieldNameTranslator();
+        filterBuilder = new FilterBuilder(fieldNameTranslator);
+        sortTranslator = new SortTranslator(fieldNameTranslator);
+    }
+
+    @Benchmark
+    public Filter filterBuilder() {
+        return filterBuilder.build(shape.getQuery());
+    }
+
+    @Benchmark
+    public SortKey[] sortTranslator() {
+        return sortTranslator.translate(shape.getSort());
+    }
+
+}
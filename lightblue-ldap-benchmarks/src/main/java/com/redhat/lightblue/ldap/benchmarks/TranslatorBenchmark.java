@@ -0,0 +1,90 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.crud.ldap.translator.EntryTranslatorFromJson;
+import com.redhat.lightblue.crud.ldap.translator.ModificationTranslatorFromJson;
+import com.redhat.lightblue.crud.ldap.translator.ResultTranslatorToJson;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.ModifyRequest;
+
+/**
+ * Benchmarks translating entries to and from json for each {@link EntityShape}.<br>
+ * The translators are created once per trial, the same as they are once per request by
+ * the crud controller, so only the translation itself is measured.
+ *
+ * @author dcrissman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TranslatorBenchmark {
+
+    @Param
+    public EntityShape shape;
+
+    private BenchmarkEntity entity;
+    private ResultTranslatorToJson resultTranslator;
+    private EntryTranslatorFromJson entryTranslator;
+    private ModificationTranslatorFromJson modificationTranslator;
+
+    @Setup
+    public void setup() {
+        entity = shape.create();
+        resultTranslator = new ResultTranslatorToJson(
+                JsonNodeFactory.withExactBigDecimals(true), entity.getEntityMetadata(), entity.getFieldNameTranslator());
+        entryTranslator = new EntryTranslatorFromJson(entity.getEntityMetadata(), entity.getFieldNameTranslator());
+        modificationTranslator = new ModificationTranslatorFromJson(entity.getEntityMetadata(), entity.getFieldNameTranslator());
+    }
+
+    @Benchmark
+    public JsonDoc resultTranslatorToJson() {
+        return resultTranslator.translate(entity.getSearchResultEntry());
+    }
+
+    @Benchmark
+    public Entry entryTranslatorFromJson() {
+        return entryTranslator.translate(entity.getDocument(), entity.getDn());
+    }
+
+    @Benchmark
+    public ModifyRequest modificationTranslatorFromJson() {
+        return modificationTranslator.translate(entity.getDocument(), entity.getDn(), entity.getCurrentEntry());
+    }
+
+}
@@ -34,7 +34,34 @@ public interface DBResolver {
      * <b>NOTE:</b> A connection pool may be being used behind the scenes, so if
      * this method is called multiple times you might get a different connection instance
      * to the same database.
+     * @deprecated the returned connection is never handed back to the pool, use {@link #lease(DataStore)} instead.
      */
+    @Deprecated
     LDAPConnection get(DataStore store) throws LDAPException;
 
+    /**
+     * Checks a {@link LDAPConnection} out of the pool backing the {@link DataStore}. The
+     * returned {@link LdapConnectionLease} must be closed once the operation is complete
+     * so that the connection can be reused.<br>
+     * Equivalent to leasing a connection for {@link LdapOperationType#WRITE}.
+     */
+    LdapConnectionLease lease(DataStore store) throws LDAPException;
+
+    /**
+     * Checks a {@link LDAPConnection} suitable for the {@link LdapOperationType} out of the
+     * pool backing the {@link DataStore}. The returned {@link LdapConnectionLease} must be
+     * closed once the operation is complete so that the connection can be reused.
+     */
+    LdapConnectionLease lease(DataStore store, LdapOperationType operationType) throws LDAPException;
+
+    /**
+     * Returns the {@link LdapCrudSettings} configured for the database backing the {@link DataStore}.
+     */
+    LdapCrudSettings getSettings(DataStore store);
+
+    /**
+     * Returns the {@link LdapOperationStatistics} kept for the database backing the {@link DataStore}.
+     */
+    LdapOperationStatistics getStatistics(DataStore store);
+
 }
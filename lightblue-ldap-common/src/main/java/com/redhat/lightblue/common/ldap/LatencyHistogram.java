@@ -0,0 +1,156 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of latencies, with exponentially sized buckets. Bucket <code>n</code>
+ * holds latencies of up to 2<sup>n</sup> microseconds, so percentiles are reported as the upper
+ * bound of the bucket they fall in. Recording is lock free, so that it can be done on every
+ * operation.
+ *
+ * @author dcrissman
+ */
+public class LatencyHistogram {
+
+    /** Last bucket, just over 17 minutes, also holds anything slower. */
+    private static final int NUMBER_OF_BUCKETS = 31;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     * @param nanos - latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        if (micros <= 1) {
+            return 0;
+        }
+        //Smallest n where micros <= 2^n
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(bucket, NUMBER_OF_BUCKETS - 1);
+    }
+
+    private static double upperBoundMillis(int bucket) {
+        return (1L << bucket) / 1000.0;
+    }
+
+    /**
+     * @return the number of latencies recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int x = 0; x < NUMBER_OF_BUCKETS; x++) {
+            count += buckets.get(x);
+        }
+        return count;
+    }
+
+    /**
+     * @return the mean latency in milliseconds, or <code>0</code> if nothing has been recorded.
+     */
+    public double getMeanMillis() {
+        long count = getCount();
+        return (count == 0) ? 0 : (totalNanos.sum() / (double) count) / 1000000.0;
+    }
+
+    /**
+     * @return the largest latency recorded, in milliseconds.
+     */
+    public double getMaxMillis() {
+        return maxNanos.get() / 1000000.0;
+    }
+
+    /**
+     * @param percentile - between 0 and 100.
+     * @return the upper bound, in milliseconds, of the bucket that the percentile falls in, or
+     * <code>0</code> if nothing has been recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        if ((percentile < 0) || (percentile > 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+
+        long[] counts = new long[NUMBER_OF_BUCKETS];
+        long count = 0;
+        for (int x = 0; x < NUMBER_OF_BUCKETS; x++) {
+            counts[x] = buckets.get(x);
+            count += counts[x];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil((percentile / 100.0) * count));
+        long seen = 0;
+        for (int x = 0; x < NUMBER_OF_BUCKETS; x++) {
+            seen += counts[x];
+            if (seen >= rank) {
+                return Math.min(upperBoundMillis(x), getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return the number of latencies in each non-empty bucket, keyed by the upper bound of
+     * the bucket in milliseconds (ie. <code>&lt;=0.512ms</code>), from fastest to slowest.
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int x = 0; x < NUMBER_OF_BUCKETS; x++) {
+            long count = buckets.get(x);
+            if (count > 0) {
+                String label = (x == NUMBER_OF_BUCKETS - 1) ? ">" + upperBoundMillis(x - 1) + "ms" : "<=" + upperBoundMillis(x) + "ms";
+                counts.put(label, count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Clears everything that has been recorded.
+     */
+    public void reset() {
+        for (int x = 0; x < NUMBER_OF_BUCKETS; x++) {
+            buckets.set(x, 0);
+        }
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+}
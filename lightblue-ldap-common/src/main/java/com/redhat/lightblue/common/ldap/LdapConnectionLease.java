@@ -0,0 +1,127 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import com.unboundid.ldap.sdk.AbstractConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * A {@link LDAPConnection} that has been checked out of a connection pool for the
+ * duration of a single operation. Intended to be used with try-with-resources so that
+ * the connection is always handed back to the pool it came from.<br>
+ * If an {@link LDAPException} indicating that the connection is no longer usable
+ * (ie. {@link ResultCode#SERVER_DOWN}) is reported through {@link #markDefunct(LDAPException)},
+ * then the connection will be released as defunct and replaced by the pool. Every reported
+ * failure is also counted against the {@link LdapOperationStatistics}, if one was provided.
+ *
+ * @author dcrissman
+ */
+public class LdapConnectionLease implements AutoCloseable {
+
+    private final LDAPConnection connection;
+    private final AbstractConnectionPool pool;
+    private final LdapOperationStatistics statistics;
+
+    private LDAPException failure;
+    private boolean released = false;
+
+    public LdapConnectionLease(LDAPConnection connection, AbstractConnectionPool pool) {
+        this(connection, pool, null);
+    }
+
+    /**
+     * @param connection - the leased {@link LDAPConnection}.
+     * @param pool - the pool the connection was checked out of.
+     * @param statistics - {@link LdapOperationStatistics} to count failures against, may be null.
+     */
+    public LdapConnectionLease(LDAPConnection connection, AbstractConnectionPool pool, LdapOperationStatistics statistics) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection cannot be null");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        this.connection = connection;
+        this.pool = pool;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the leased {@link LDAPConnection}.
+     * @throws IllegalStateException if the lease has already been released.
+     */
+    public LDAPConnection getConnection() {
+        if (released) {
+            throw new IllegalStateException("Connection has already been released back to the pool.");
+        }
+        return connection;
+    }
+
+    /**
+     * Records an {@link LDAPException} that occurred while using the connection. If the
+     * {@link ResultCode} indicates the connection can no longer be used, then the connection
+     * will be released as defunct.
+     * @param e - {@link LDAPException}
+     * @return <code>true</code> if the connection is considered defunct, otherwise <code>false</code>.
+     */
+    public boolean markDefunct(LDAPException e) {
+        if ((e != null) && (statistics != null)) {
+            statistics.recordError(e.getResultCode());
+        }
+        if ((e != null) && !ResultCode.isConnectionUsable(e.getResultCode())) {
+            failure = e;
+        }
+        return isDefunct();
+    }
+
+    /**
+     * @return <code>true</code> if a connection terminating failure has been recorded, otherwise <code>false</code>.
+     */
+    public boolean isDefunct() {
+        return failure != null;
+    }
+
+    /**
+     * @return <code>true</code> if the connection has already been handed back to the pool, otherwise <code>false</code>.
+     */
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Releases the connection back to the pool. Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (released) {
+            return;
+        }
+        released = true;
+
+        if (failure == null) {
+            pool.releaseConnection(connection);
+        }
+        else {
+            pool.releaseDefunctConnection(connection);
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.unboundid.ldap.sdk.OperationType;
+
+/**
+ * Tunables, sourced from the datasource configuration, that control how CRUD
+ * operations are carried out against an LDAP database.
+ *
+ * @author dcrissman
+ */
+public class LdapCrudSettings implements Serializable {
+
+    private static final long serialVersionUID = -3914856740326411521L;
+
+    public static final int DEFAULT_SEARCH_WINDOW_SIZE = 100;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_MAX_OPERATIONS_IN_FLIGHT = 32;
+    public static final long DEFAULT_OPERATION_TIMEOUT_MILLIS = 0;
+    public static final int DEFAULT_LOOKUP_BATCH_SIZE = 100;
+    public static final boolean DEFAULT_DIFF_MODIFICATIONS = false;
+    public static final int DEFAULT_DELETE_CONNECTIONS = 1;
+    public static final boolean DEFAULT_SUBTREE_DELETE = false;
+
+    private int searchWindowSize = DEFAULT_SEARCH_WINDOW_SIZE;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int maxOperationsInFlight = DEFAULT_MAX_OPERATIONS_IN_FLIGHT;
+    private long operationTimeoutMillis = DEFAULT_OPERATION_TIMEOUT_MILLIS;
+    private int lookupBatchSize = DEFAULT_LOOKUP_BATCH_SIZE;
+    private boolean diffModifications = DEFAULT_DIFF_MODIFICATIONS;
+    private int deleteConnections = DEFAULT_DELETE_CONNECTIONS;
+    private boolean subtreeDelete = DEFAULT_SUBTREE_DELETE;
+    private final Map<OperationType, Long> responseTimeouts = new EnumMap<>(OperationType.class);
+
+    /**
+     * @return the maximum number of search result entries that may be received from the
+     * server, but not yet processed, at any one time. A value of <code>0</code> indicates
+     * that entries will be processed as they are read off the connection.
+     */
+    public int getSearchWindowSize() {
+        return searchWindowSize;
+    }
+
+    public void setSearchWindowSize(int searchWindowSize) {
+        if (searchWindowSize < 0) {
+            throw new IllegalArgumentException("searchWindowSize cannot be negative: " + searchWindowSize);
+        }
+        this.searchWindowSize = searchWindowSize;
+    }
+
+    /**
+     * @return the number of entries to request per page when searching with the simple paged
+     * results control (RFC 2696). A value of <code>0</code> disables paging. May be overridden
+     * per entity by {@link LdapDataStore#getPageSize()}.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("pageSize cannot be negative: " + pageSize);
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the maximum number of write operations that may be awaiting a response on a
+     * single connection at any one time.
+     */
+    public int getMaxOperationsInFlight() {
+        return maxOperationsInFlight;
+    }
+
+    public void setMaxOperationsInFlight(int maxOperationsInFlight) {
+        if (maxOperationsInFlight < 1) {
+            throw new IllegalArgumentException("maxOperationsInFlight must be at least 1: " + maxOperationsInFlight);
+        }
+        this.maxOperationsInFlight = maxOperationsInFlight;
+    }
+
+    /**
+     * @return the time, in milliseconds, to wait for the response to each write operation. A
+     * value of <code>0</code> indicates that the response timeout of the connection should be used.
+     */
+    public long getOperationTimeoutMillis() {
+        return operationTimeoutMillis;
+    }
+
+    public void setOperationTimeoutMillis(long operationTimeoutMillis) {
+        if (operationTimeoutMillis < 0) {
+            throw new IllegalArgumentException("operationTimeoutMillis cannot be negative: " + operationTimeoutMillis);
+        }
+        this.operationTimeoutMillis = operationTimeoutMillis;
+    }
+
+    /**
+     * @param operationType - {@link OperationType}
+     * @return the time, in milliseconds, to wait for the response to an operation of the given
+     * type. Falls back to {@link #getOperationTimeoutMillis()} if no timeout has been set for
+     * the type. A value of <code>0</code> indicates that the response timeout of the connection
+     * should be used.
+     */
+    public long getResponseTimeoutMillis(OperationType operationType) {
+        Long timeout = responseTimeouts.get(operationType);
+        return (timeout == null) ? operationTimeoutMillis : timeout;
+    }
+
+    public void setResponseTimeoutMillis(OperationType operationType, long responseTimeoutMillis) {
+        if (operationType == null) {
+            throw new IllegalArgumentException("operationType cannot be null");
+        }
+        if (responseTimeoutMillis < 0) {
+            throw new IllegalArgumentException("responseTimeoutMillis cannot be negative: " + responseTimeoutMillis);
+        }
+        responseTimeouts.put(operationType, responseTimeoutMillis);
+    }
+
+    /**
+     * @return the maximum number of entries to look up with a single search when looking
+     * for many entries by DN.
+     */
+    public int getLookupBatchSize() {
+        return lookupBatchSize;
+    }
+
+    public void setLookupBatchSize(int lookupBatchSize) {
+        if (lookupBatchSize < 1) {
+            throw new IllegalArgumentException("lookupBatchSize must be at least 1: " + lookupBatchSize);
+        }
+        this.lookupBatchSize = lookupBatchSize;
+    }
+
+    /**
+     * @return <code>true</code> if modifications should only contain the differences between
+     * the document and the current state of the entry, otherwise <code>false</code> in which
+     * case every attribute in the document is replaced.
+     */
+    public boolean isDiffModifications() {
+        return diffModifications;
+    }
+
+    public void setDiffModifications(boolean diffModifications) {
+        this.diffModifications = diffModifications;
+    }
+
+    /**
+     * @return the number of pooled connections that the deletes of a single bulk delete
+     * are spread across.
+     */
+    public int getDeleteConnections() {
+        return deleteConnections;
+    }
+
+    public void setDeleteConnections(int deleteConnections) {
+        if (deleteConnections < 1) {
+            throw new IllegalArgumentException("deleteConnections must be at least 1: " + deleteConnections);
+        }
+        this.deleteConnections = deleteConnections;
+    }
+
+    /**
+     * @return <code>true</code> if a matched entry whose entire subtree was also matched should be
+     * deleted in one request using the subtree delete request control, otherwise <code>false</code>.
+     * Entries with unmatched descendants are always deleted one at a time.
+     */
+    public boolean isSubtreeDelete() {
+        return subtreeDelete;
+    }
+
+    public void setSubtreeDelete(boolean subtreeDelete) {
+        this.subtreeDelete = subtreeDelete;
+    }
+
+}
@@ -32,6 +32,7 @@ public class LdapDataStore implements DataStore {
     private String database;
     private String baseDN;
     private String uniqueAttr;
+    private Integer pageSize;
 
     @Override
     public String getBackend() {
@@ -62,6 +63,18 @@ public class LdapDataStore implements DataStore {
         this.uniqueAttr = uniqueField;
     }
 
+    /**
+     * @return the page size to use when searching this entity, or <code>null</code>
+     * to use the page size configured on the datasource.
+     */
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
     public LdapDataStore(){}
 
     public LdapDataStore(String database, String baseDN, String uniqueAttr){
@@ -79,6 +92,8 @@ public class LdapDataStore implements DataStore {
                 + ((database == null) ? 0 : database.hashCode());
         result = prime * result
                 + ((uniqueAttr == null) ? 0 : uniqueAttr.hashCode());
+        result = prime * result
+                + ((pageSize == null) ? 0 : pageSize.hashCode());
         return result;
     }
 
@@ -118,13 +133,21 @@ public class LdapDataStore implements DataStore {
         else if (!uniqueAttr.equals(other.uniqueAttr)) {
             return false;
         }
+        if (pageSize == null) {
+            if (other.pageSize != null) {
+                return false;
+            }
+        }
+        else if (!pageSize.equals(other.pageSize)) {
+            return false;
+        }
         return true;
     }
 
     @Override
     public String toString() {
         return "LdapDataStore [database=" + database + ", baseDN=" + baseDN
-                + ", uniqueAttribute=" + uniqueAttr + "]";
+                + ", uniqueAttribute=" + uniqueAttr + ", pageSize=" + pageSize + "]";
     }
 
 }
@@ -0,0 +1,130 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Counters and latencies of the CRUD operations performed against a single LDAP database,
+ * along with the number of LDAP requests that failed by {@link ResultCode}. Safe to be
+ * updated concurrently by every request.
+ *
+ * @author dcrissman
+ */
+public class LdapOperationStatistics {
+
+    /**
+     * The CRUD operations that statistics are kept for.
+     */
+    public enum CrudOperation {
+        FIND, INSERT, SAVE, UPDATE, DELETE
+    }
+
+    private final Map<CrudOperation, OperationStatistics> operations = new EnumMap<>(CrudOperation.class);
+    private final ConcurrentMap<ResultCode, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public LdapOperationStatistics() {
+        for (CrudOperation operation : CrudOperation.values()) {
+            operations.put(operation, new OperationStatistics());
+        }
+    }
+
+    /**
+     * Records a completed operation.
+     * @param operation - {@link CrudOperation}
+     * @param elapsedNanos - time the operation took.
+     * @param entries - number of entries returned or changed by the operation.
+     * @param failed - <code>true</code> if the operation reported any errors.
+     */
+    public void recordOperation(CrudOperation operation, long elapsedNanos, long entries, boolean failed) {
+        OperationStatistics statistics = operations.get(operation);
+        statistics.count.increment();
+        statistics.entries.add(entries);
+        if (failed) {
+            statistics.failures.increment();
+        }
+        statistics.latency.record(elapsedNanos);
+    }
+
+    /**
+     * Records an LDAP request that failed.
+     * @param resultCode - {@link ResultCode} the request failed with.
+     */
+    public void recordError(ResultCode resultCode) {
+        if (resultCode == null) {
+            return;
+        }
+        errors.computeIfAbsent(resultCode, (ResultCode code) -> new LongAdder()).increment();
+    }
+
+    public long getCount(CrudOperation operation) {
+        return operations.get(operation).count.sum();
+    }
+
+    public long getFailures(CrudOperation operation) {
+        return operations.get(operation).failures.sum();
+    }
+
+    public long getEntries(CrudOperation operation) {
+        return operations.get(operation).entries.sum();
+    }
+
+    public LatencyHistogram getLatency(CrudOperation operation) {
+        return operations.get(operation).latency;
+    }
+
+    /**
+     * @return the number of failed LDAP requests keyed by the name of the {@link ResultCode}.
+     */
+    public Map<String, Long> getErrorsByResultCode() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<ResultCode, LongAdder> error : errors.entrySet()) {
+            counts.put(error.getKey().getName(), error.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Clears everything that has been recorded.
+     */
+    public void reset() {
+        for (OperationStatistics statistics : operations.values()) {
+            statistics.count.reset();
+            statistics.failures.reset();
+            statistics.entries.reset();
+            statistics.latency.reset();
+        }
+        errors.clear();
+    }
+
+    private static class OperationStatistics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder entries = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+}
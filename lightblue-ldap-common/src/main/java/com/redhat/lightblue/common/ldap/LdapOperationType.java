@@ -0,0 +1,35 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+/**
+ * The kind of work a connection will be used for, which determines the servers
+ * it may be leased from.
+ *
+ * @author dcrissman
+ */
+public enum LdapOperationType {
+
+    /** Only searches, may be sent to read-only replicas. */
+    READ,
+
+    /** Anything that changes data, or reads that must be consistent with those changes. */
+    WRITE
+
+}
@@ -0,0 +1,87 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty(){
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMillis(), 0);
+        assertEquals(0, histogram.getPercentileMillis(99), 0);
+        assertTrue(histogram.getBuckets().isEmpty());
+    }
+
+    @Test
+    public void testPercentiles(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(100, histogram.getCount());
+        //500us falls in the bucket up to 512us
+        assertEquals(0.512, histogram.getPercentileMillis(50), 0);
+        assertEquals(0.512, histogram.getPercentileMillis(99), 0);
+        assertEquals(100, histogram.getPercentileMillis(100), 0);
+        assertEquals(100, histogram.getMaxMillis(), 0);
+        assertEquals(((99 * 0.5) + 100) / 100, histogram.getMeanMillis(), 0.0001);
+    }
+
+    @Test
+    public void testBuckets(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(4));
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+
+        Map<String, Long> buckets = histogram.getBuckets();
+        assertEquals(Long.valueOf(1), buckets.get("<=0.001ms"));
+        assertEquals(Long.valueOf(2), buckets.get("<=0.004ms"));
+        assertEquals(Long.valueOf(1), buckets.get(">536870.912ms"));
+    }
+
+    @Test
+    public void testReset(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMillis(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile(){
+        new LatencyHistogram().getPercentileMillis(101);
+    }
+
+}
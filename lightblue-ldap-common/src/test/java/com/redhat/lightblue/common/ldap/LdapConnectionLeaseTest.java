@@ -0,0 +1,109 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.unboundid.ldap.sdk.AbstractConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+public class LdapConnectionLeaseTest {
+
+    private LDAPConnection connection;
+    private AbstractConnectionPool pool;
+
+    @Before
+    public void before(){
+        connection = new LDAPConnection();
+        pool = mock(AbstractConnectionPool.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullConnection(){
+        new LdapConnectionLease(null, pool);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPool(){
+        new LdapConnectionLease(connection, null);
+    }
+
+    @Test
+    public void testClose_ReleasesConnection(){
+        LdapConnectionLease lease = new LdapConnectionLease(connection, pool);
+        lease.close();
+        lease.close();
+
+        assertTrue(lease.isReleased());
+        verify(pool, times(1)).releaseConnection(connection);
+        verify(pool, never()).releaseDefunctConnection(connection);
+    }
+
+    @Test
+    public void testClose_UsableConnection(){
+        try (LdapConnectionLease lease = new LdapConnectionLease(connection, pool)) {
+            assertFalse(lease.markDefunct(new LDAPException(ResultCode.NO_SUCH_OBJECT)));
+        }
+
+        verify(pool).releaseConnection(connection);
+        verify(pool, never()).releaseDefunctConnection(connection);
+    }
+
+    @Test
+    public void testClose_DefunctConnection(){
+        try (LdapConnectionLease lease = new LdapConnectionLease(connection, pool)) {
+            assertTrue(lease.markDefunct(new LDAPException(ResultCode.SERVER_DOWN)));
+        }
+
+        verify(pool).releaseDefunctConnection(connection);
+        verify(pool, never()).releaseConnection(connection);
+    }
+
+    @Test
+    public void testMarkDefunct_RecordsErrors(){
+        LdapOperationStatistics statistics = new LdapOperationStatistics();
+        try (LdapConnectionLease lease = new LdapConnectionLease(connection, pool, statistics)) {
+            lease.markDefunct(new LDAPException(ResultCode.NO_SUCH_OBJECT));
+            lease.markDefunct(new LDAPException(ResultCode.NO_SUCH_OBJECT));
+            lease.markDefunct(new LDAPException(ResultCode.SERVER_DOWN));
+        }
+
+        assertEquals(Long.valueOf(2), statistics.getErrorsByResultCode().get(ResultCode.NO_SUCH_OBJECT.getName()));
+        assertEquals(Long.valueOf(1), statistics.getErrorsByResultCode().get(ResultCode.SERVER_DOWN.getName()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetConnection_AfterRelease(){
+        LdapConnectionLease lease = new LdapConnectionLease(connection, pool);
+        lease.close();
+        lease.getConnection();
+    }
+
+}
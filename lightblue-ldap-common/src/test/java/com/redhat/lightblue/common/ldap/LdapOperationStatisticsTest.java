@@ -0,0 +1,60 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+import com.unboundid.ldap.sdk.ResultCode;
+
+public class LdapOperationStatisticsTest {
+
+    @Test
+    public void testRecordOperation(){
+        LdapOperationStatistics statistics = new LdapOperationStatistics();
+        statistics.recordOperation(CrudOperation.FIND, 1000000, 10, false);
+        statistics.recordOperation(CrudOperation.FIND, 3000000, 0, true);
+        statistics.recordOperation(CrudOperation.INSERT, 1000000, 1, false);
+
+        assertEquals(2, statistics.getCount(CrudOperation.FIND));
+        assertEquals(1, statistics.getFailures(CrudOperation.FIND));
+        assertEquals(10, statistics.getEntries(CrudOperation.FIND));
+        assertEquals(2, statistics.getLatency(CrudOperation.FIND).getMeanMillis(), 0.0001);
+        assertEquals(1, statistics.getCount(CrudOperation.INSERT));
+        assertEquals(0, statistics.getCount(CrudOperation.DELETE));
+    }
+
+    @Test
+    public void testRecordError(){
+        LdapOperationStatistics statistics = new LdapOperationStatistics();
+        statistics.recordError(ResultCode.TIMEOUT);
+        statistics.recordError(ResultCode.TIMEOUT);
+        statistics.recordError(null);
+
+        assertEquals(1, statistics.getErrorsByResultCode().size());
+        assertEquals(Long.valueOf(2), statistics.getErrorsByResultCode().get(ResultCode.TIMEOUT.getName()));
+
+        statistics.reset();
+        assertTrue(statistics.getErrorsByResultCode().isEmpty());
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.sdk.BindRequest;
+import com.unboundid.ldap.sdk.BindResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolStatistics;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ServerSet;
+
+/**
+ * Brings a {@link LDAPConnectionPool} up to its initial size in the background.<br>
+ * The missing connections are opened in parallel, outside of the pool, and each is released
+ * into the pool as soon as it is ready. Nothing is ever checked out of the pool, so requests
+ * arriving during the warm-up are never made to wait on it. Should any of the connections
+ * fail to open, ie. because a server is down, then another attempt is made after the
+ * retry interval, until either the pool reaches its initial size or is closed.<br>
+ * The pool does not count connections released into it as created, so the warm-up keeps its own
+ * count, see {@link #getConnectionsOpened()} and {@link #countOpenConnections(LDAPConnectionPoolStatistics, long)}.
+ *
+ * @author dcrissman
+ */
+class ConnectionPoolWarmUp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPoolWarmUp.class);
+
+    public static final long DEFAULT_RETRY_INTERVAL_MILLIS = 5000;
+
+    private final String name;
+    private final LDAPConnectionPool pool;
+    private final ServerSet serverSet;
+    private final BindRequest bindRequest;
+    private final int targetConnections;
+    private final int connectThreads;
+    private final long retryIntervalMillis;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    /**
+     * @param name - name used for the warm-up threads and logging.
+     * @param pool - {@link LDAPConnectionPool} to warm up.
+     * @param serverSet - {@link ServerSet} the pool opens its connections from.
+     * @param bindRequest - {@link BindRequest} the pool authenticates its connections with, may be <code>null</code>.
+     * @param targetConnections - number of connections the pool should hold before it is ready.
+     * @param connectThreads - number of connections to open in parallel.
+     * @param retryIntervalMillis - time to wait before trying again after connections fail to open.
+     */
+    ConnectionPoolWarmUp(String name, LDAPConnectionPool pool, ServerSet serverSet, BindRequest bindRequest, int targetConnections, int connectThreads, long retryIntervalMillis) {
+        if (connectThreads < 1) {
+            throw new IllegalArgumentException("connectThreads must be at least 1: " + connectThreads);
+        }
+        this.name = name;
+        this.pool = pool;
+        this.serverSet = serverSet;
+        this.bindRequest = bindRequest;
+        this.targetConnections = targetConnections;
+        this.connectThreads = connectThreads;
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    /**
+     * Starts warming up the pool, unless it already holds the target number of connections.
+     */
+    void start() {
+        if (isPoolWarm()) {
+            ready.countDown();
+            return;
+        }
+
+        Thread thread = new Thread(this::warmUp, "ldap-warmup-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return <code>true</code> once the pool has held the target number of connections,
+     * otherwise <code>false</code>.
+     */
+    boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * Blocks until the pool is ready or the timeout elapses.
+     * @return <code>true</code> if the pool is ready, otherwise <code>false</code>.
+     */
+    boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * @return the number of connections the warm-up has opened and released into the pool.
+     */
+    long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @param statistics - {@link LDAPConnectionPoolStatistics} of the pool.
+     * @param openedOutsideOfPool - connections opened outside of the pool and released into it,
+     * see {@link #getConnectionsOpened()}.
+     * @return the number of connections the pool has open, whether available or checked out.
+     */
+    static long countOpenConnections(LDAPConnectionPoolStatistics statistics, long openedOutsideOfPool) {
+        return statistics.getNumSuccessfulConnectionAttempts()
+                + openedOutsideOfPool
+                - statistics.getNumConnectionsClosedDefunct()
+                - statistics.getNumConnectionsClosedExpired()
+                - statistics.getNumConnectionsClosedUnneeded();
+    }
+
+    private long countOpenConnections() {
+        return countOpenConnections(pool.getConnectionPoolStatistics(), connectionsOpened.get());
+    }
+
+    private boolean isPoolWarm() {
+        return countOpenConnections() >= targetConnections;
+    }
+
+    private void warmUp() {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(connectThreads, targetConnections), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ldap-warmup-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            while (!pool.isClosed()) {
+                if (openMissingConnections(executor)) {
+                    LOGGER.info("LDAP connection pool " + name + " is ready with " + countOpenConnections() + " connections.");
+                    ready.countDown();
+                    return;
+                }
+                Thread.sleep(retryIntervalMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens, in parallel, the connections the pool is missing and releases each of them into the pool.
+     * Connections that are checked out are still open, so are not missing.
+     * @return <code>true</code> if every connection could be opened, otherwise <code>false</code>.
+     */
+    private boolean openMissingConnections(ExecutorService executor) throws InterruptedException {
+        List<Future<LDAPConnection>> opens = new ArrayList<>();
+        for (long x = countOpenConnections(); x < targetConnections; x++) {
+            opens.add(executor.submit((Callable<LDAPConnection>) this::openConnection));
+        }
+
+        boolean allConnected = true;
+        for (Future<LDAPConnection> open : opens) {
+            try {
+                LDAPConnection connection = open.get();
+                //Counted before the release, in case the pool closes it as unneeded.
+                connectionsOpened.incrementAndGet();
+                pool.releaseConnection(connection);
+            } catch (ExecutionException e) {
+                LOGGER.warn("Unable to open connection for LDAP connection pool " + name + ", will retry.", e.getCause());
+                allConnected = false;
+            }
+        }
+        return allConnected;
+    }
+
+    /**
+     * Opens and authenticates a connection the same way the pool would, including its health checks.
+     */
+    private LDAPConnection openConnection() throws LDAPException {
+        LDAPConnectionPoolHealthCheck healthCheck = pool.getHealthCheck();
+        LDAPConnection connection = serverSet.getConnection(healthCheck);
+        if (bindRequest != null) {
+            try {
+                BindResult result = connection.bind(bindRequest.duplicate());
+                healthCheck.ensureConnectionValidAfterAuthentication(connection, result);
+            } catch (LDAPException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+}
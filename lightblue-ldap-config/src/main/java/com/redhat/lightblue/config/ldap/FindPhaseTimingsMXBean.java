@@ -0,0 +1,67 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of the {@link com.redhat.lightblue.crud.ldap.instrumentation.InMemoryFindPhaseTimings}
+ * enabled with <code>"findPhaseTiming": true</code>. Registered by {@link LdapControllerFactory}
+ * under <code>com.redhat.lightblue.ldap:type=FindPhaseTimings</code>.
+ *
+ * @author dcrissman
+ */
+public interface FindPhaseTimingsMXBean {
+
+    /**
+     * @return the number of times each find phase has been timed, across all entities.
+     */
+    Map<String, Long> getPhaseCounts();
+
+    /**
+     * @return the mean time, in milliseconds, spent in each find phase, across all entities.
+     */
+    Map<String, Double> getPhaseMeanLatencyMillis();
+
+    /**
+     * @param phase - name of the find phase, ie. <code>search</code>.
+     * @return the 50th, 90th, 99th and 99.9th percentile and maximum times, in milliseconds,
+     * across all entities.
+     */
+    Map<String, Double> getPhaseLatencyPercentilesMillis(String phase);
+
+    /**
+     * @return the names of the entities that timings have been recorded for.
+     */
+    List<String> getEntityNames();
+
+    /**
+     * @param entityName - name of the entity.
+     * @return the mean time, in milliseconds, spent in each find phase for the entity. Empty if
+     * nothing has been recorded for the entity.
+     */
+    Map<String, Double> getEntityPhaseMeanLatencyMillis(String entityName);
+
+    /**
+     * Clears everything that has been recorded.
+     */
+    void reset();
+
+}
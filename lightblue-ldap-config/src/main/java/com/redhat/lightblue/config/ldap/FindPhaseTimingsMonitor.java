@@ -0,0 +1,142 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.common.ldap.LatencyHistogram;
+import com.redhat.lightblue.crud.ldap.instrumentation.FindPhase;
+import com.redhat.lightblue.crud.ldap.instrumentation.InMemoryFindPhaseTimings;
+
+/**
+ * {@link FindPhaseTimingsMXBean} backed by an {@link InMemoryFindPhaseTimings}.
+ *
+ * @author dcrissman
+ */
+class FindPhaseTimingsMonitor implements FindPhaseTimingsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FindPhaseTimingsMonitor.class);
+
+    static final String OBJECT_NAME = "com.redhat.lightblue.ldap:type=FindPhaseTimings";
+
+    private final InMemoryFindPhaseTimings timings;
+
+    FindPhaseTimingsMonitor(InMemoryFindPhaseTimings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Registers a {@link FindPhaseTimingsMonitor} with the platform {@link MBeanServer}, replacing
+     * any previously registered. Failures are logged rather than thrown, as monitoring should never
+     * prevent the controller from being used.
+     */
+    static void register(InMemoryFindPhaseTimings timings) {
+        try {
+            ObjectName name = createObjectName();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new FindPhaseTimingsMonitor(timings), name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register MBean for LDAP find phase timings", e);
+        }
+    }
+
+    static ObjectName createObjectName() throws JMException {
+        return new ObjectName(OBJECT_NAME);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (FindPhase phase : FindPhase.values()) {
+            values.put(toName(phase), timings.getHistogram(phase).getCount());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanLatencyMillis() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (FindPhase phase : FindPhase.values()) {
+            values.put(toName(phase), timings.getHistogram(phase).getMeanMillis());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseLatencyPercentilesMillis(String phase) {
+        LatencyHistogram histogram = timings.getHistogram(toPhase(phase));
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("p50", histogram.getPercentileMillis(50));
+        values.put("p90", histogram.getPercentileMillis(90));
+        values.put("p99", histogram.getPercentileMillis(99));
+        values.put("p999", histogram.getPercentileMillis(99.9));
+        values.put("max", histogram.getMaxMillis());
+        return values;
+    }
+
+    @Override
+    public List<String> getEntityNames() {
+        return new ArrayList<>(timings.getEntityNames());
+    }
+
+    @Override
+    public Map<String, Double> getEntityPhaseMeanLatencyMillis(String entityName) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (FindPhase phase : FindPhase.values()) {
+            LatencyHistogram histogram = timings.getHistogram(entityName, phase);
+            if (histogram != null) {
+                values.put(toName(phase), histogram.getMeanMillis());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        timings.reset();
+    }
+
+    private static String toName(FindPhase phase) {
+        return phase.name().toLowerCase();
+    }
+
+    private static FindPhase toPhase(String name) {
+        for (FindPhase phase : FindPhase.values()) {
+            if (phase.name().equalsIgnoreCase(name)) {
+                return phase;
+            }
+        }
+        throw new IllegalArgumentException("Unknown find phase: " + name);
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * {@link LDAPConnectionPoolHealthCheck} that rejects connections which have not communicated
+ * with the server for longer than the allowed idle time, both when they are checked out and
+ * during background health checks. The pool will close any rejected connection, so that a
+ * socket silently dropped by a firewall is never handed out.
+ *
+ * @author dcrissman
+ */
+class IdleConnectionHealthCheck extends LDAPConnectionPoolHealthCheck {
+
+    private final long maxIdleTimeMillis;
+
+    IdleConnectionHealthCheck(long maxIdleTimeMillis) {
+        if (maxIdleTimeMillis <= 0) {
+            throw new IllegalArgumentException("maxIdleTimeMillis must be greater than 0: " + maxIdleTimeMillis);
+        }
+        this.maxIdleTimeMillis = maxIdleTimeMillis;
+    }
+
+    long getMaxIdleTimeMillis() {
+        return maxIdleTimeMillis;
+    }
+
+    @Override
+    public void ensureConnectionValidForCheckout(LDAPConnection connection) throws LDAPException {
+        ensureNotIdle(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidForContinuedUse(LDAPConnection connection) throws LDAPException {
+        ensureNotIdle(connection);
+    }
+
+    private void ensureNotIdle(LDAPConnection connection) throws LDAPException {
+        long lastCommunication = connection.getLastCommunicationTime();
+        if ((lastCommunication > 0) && ((System.currentTimeMillis() - lastCommunication) > maxIdleTimeMillis)) {
+            throw new LDAPException(ResultCode.SERVER_DOWN,
+                    "Connection has been idle for longer than " + maxIdleTimeMillis + "ms.");
+        }
+    }
+
+    @Override
+    public void toString(StringBuilder buffer) {
+        buffer.append("IdleConnectionHealthCheck(maxIdleTimeMillis=").append(maxIdleTimeMillis).append(')');
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.net.SocketFactory;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.ServerSet;
+
+/**
+ * {@link ServerSet} that keeps an exponentially weighted moving average (EWMA) of the
+ * response times of each server, and sends new connections to the fastest servers.<br>
+ * A server is chosen at random, weighted by the inverse of its average response time, so
+ * that connections are spread over the fast replicas rather than all landing on one. Servers
+ * without any measurements yet are preferred, so that every server gets measured. A server
+ * that cannot be connected to is considered unhealthy, and is only tried again once every
+ * healthy server has failed or the retry interval has passed.<br>
+ * Connect times are recorded as connections are established. Response times of the operations
+ * performed on pooled connections can be fed in through {@link #recordResponseTime(String, int, double)}.
+ *
+ * @author dcrissman
+ */
+public class LatencyWeightedServerSet extends ServerSet {
+
+    public static final double DEFAULT_SMOOTHING_FACTOR = 0.2;
+    public static final long DEFAULT_RETRY_INTERVAL_MILLIS = 30000;
+
+    private final List<Server> servers = new ArrayList<>();
+    private final SocketFactory socketFactory;
+    private final LDAPConnectionOptions connectionOptions;
+    private final double smoothingFactor;
+    private final long retryIntervalMillis;
+    private final Random random = new Random();
+
+    public LatencyWeightedServerSet(String[] addresses, int[] ports) {
+        this(addresses, ports, null, null, DEFAULT_SMOOTHING_FACTOR, DEFAULT_RETRY_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param addresses - addresses of the servers.
+     * @param ports - ports of the servers, in the same order as the addresses.
+     * @param socketFactory - {@link SocketFactory} to connect with, may be null.
+     * @param connectionOptions - {@link LDAPConnectionOptions} to connect with, may be null.
+     * @param smoothingFactor - weight given to each new measurement, between 0 (exclusive) and 1 (inclusive).
+     * @param retryIntervalMillis - time to wait before trying a failed server again.
+     */
+    public LatencyWeightedServerSet(String[] addresses, int[] ports, SocketFactory socketFactory,
+            LDAPConnectionOptions connectionOptions, double smoothingFactor, long retryIntervalMillis) {
+        if ((addresses == null) || (ports == null) || (addresses.length == 0) || (addresses.length != ports.length)) {
+            throw new IllegalArgumentException("An equal number of addresses and ports must be provided.");
+        }
+        if ((smoothingFactor <= 0) || (smoothingFactor > 1)) {
+            throw new IllegalArgumentException("smoothingFactor must be greater than 0 and no more than 1: " + smoothingFactor);
+        }
+        if (retryIntervalMillis < 0) {
+            throw new IllegalArgumentException("retryIntervalMillis cannot be negative: " + retryIntervalMillis);
+        }
+
+        for (int x = 0; x < addresses.length; x++) {
+            servers.add(new Server(addresses[x], ports[x]));
+        }
+        this.socketFactory = (socketFactory == null) ? SocketFactory.getDefault() : socketFactory;
+        this.connectionOptions = (connectionOptions == null) ? new LDAPConnectionOptions() : connectionOptions;
+        this.smoothingFactor = smoothingFactor;
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    @Override
+    public LDAPConnection getConnection() throws LDAPException {
+        return getConnection(null);
+    }
+
+    @Override
+    public LDAPConnection getConnection(LDAPConnectionPoolHealthCheck healthCheck) throws LDAPException {
+        LDAPException failure = null;
+        for (Server server : orderServers()) {
+            long start = System.nanoTime();
+            LDAPConnection connection = null;
+            try {
+                connection = new LDAPConnection(socketFactory, connectionOptions, server.address, server.port);
+                if (healthCheck != null) {
+                    healthCheck.ensureNewConnectionValid(connection);
+                }
+                server.record((System.nanoTime() - start) / 1000000.0, smoothingFactor);
+                return connection;
+            } catch (LDAPException e) {
+                if (connection != null) {
+                    connection.close();
+                }
+                server.fail(System.currentTimeMillis() + retryIntervalMillis);
+                failure = e;
+            }
+        }
+
+        throw (failure != null) ? failure : new LDAPException(ResultCode.CONNECT_ERROR, "No servers available.");
+    }
+
+    /**
+     * Records the response time of an operation performed against a server in the set.
+     * Measurements for servers that are not in the set are ignored.
+     * @param address - address of the server.
+     * @param port - port of the server.
+     * @param responseTimeMillis - response time in milliseconds.
+     */
+    public void recordResponseTime(String address, int port, double responseTimeMillis) {
+        for (Server server : servers) {
+            if (server.port == port && server.address.equalsIgnoreCase(address)) {
+                server.record(responseTimeMillis, smoothingFactor);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the average response time, in milliseconds, of each server keyed by
+     * <code>address:port</code>. Servers that have not yet been measured are not included.
+     */
+    public Map<String, Double> getServerLatencies() {
+        Map<String, Double> latencies = new LinkedHashMap<>();
+        for (Server server : servers) {
+            double latency = server.latency;
+            if (latency >= 0) {
+                latencies.put(server.address + ":" + server.port, latency);
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Orders the servers in which they should be tried. The first healthy server is chosen
+     * at random, weighted by the inverse of its latency, followed by the remaining healthy
+     * servers from fastest to slowest, and finally the unhealthy servers.
+     */
+    private List<Server> orderServers() {
+        long now = System.currentTimeMillis();
+        List<Server> healthy = new ArrayList<>();
+        List<Server> unhealthy = new ArrayList<>();
+        for (Server server : servers) {
+            if (server.retryAfter <= now) {
+                healthy.add(server);
+            }
+            else {
+                unhealthy.add(server);
+            }
+        }
+
+        Comparator<Server> byLatency = (Server a, Server b) -> Double.compare(a.latency, b.latency);
+        Collections.sort(healthy, byLatency);
+        Collections.sort(unhealthy, byLatency);
+
+        if (healthy.size() > 1 && healthy.get(0).latency >= 0) {
+            //Every healthy server has been measured, choose one by weight.
+            double totalWeight = 0;
+            for (Server server : healthy) {
+                totalWeight += server.weight();
+            }
+            double choice = random.nextDouble() * totalWeight;
+            for (int x = 0; x < healthy.size(); x++) {
+                choice -= healthy.get(x).weight();
+                if (choice <= 0) {
+                    healthy.add(0, healthy.remove(x));
+                    break;
+                }
+            }
+        }
+
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    @Override
+    public void toString(StringBuilder buffer) {
+        buffer.append("LatencyWeightedServerSet(servers={");
+        for (int x = 0; x < servers.size(); x++) {
+            if (x > 0) {
+                buffer.append(", ");
+            }
+            Server server = servers.get(x);
+            buffer.append(server.address).append(':').append(server.port);
+        }
+        buffer.append("}, smoothingFactor=").append(smoothingFactor).append(')');
+    }
+
+    private static class Server {
+
+        /** Lowest latency used when weighting, so a server measured at 0ms does not take every connection. */
+        private static final double MIN_WEIGHTED_LATENCY_MILLIS = 0.1;
+
+        private final String address;
+        private final int port;
+
+        /** Moving average in milliseconds, or -1 if not yet measured. */
+        private volatile double latency = -1;
+        private volatile long retryAfter = 0;
+
+        Server(String address, int port) {
+            this.address = address;
+            this.port = port;
+        }
+
+        synchronized void record(double latencyMillis, double smoothingFactor) {
+            latency = (latency < 0)
+                    ? latencyMillis
+                    : (smoothingFactor * latencyMillis) + ((1 - smoothingFactor) * latency);
+            retryAfter = 0;
+        }
+
+        void fail(long retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+
+        double weight() {
+            return 1 / Math.max(latency, MIN_WEIGHTED_LATENCY_MILLIS);
+        }
+
+    }
+
+}
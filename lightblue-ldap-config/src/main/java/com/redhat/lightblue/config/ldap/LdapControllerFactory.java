@@ -20,22 +20,82 @@ package com.redhat.lightblue.config.ldap;
 
 import java.util.HashSet;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.redhat.lightblue.config.ControllerConfiguration;
 import com.redhat.lightblue.config.ControllerFactory;
 import com.redhat.lightblue.config.DataSourcesConfiguration;
 import com.redhat.lightblue.crud.CRUDController;
 import com.redhat.lightblue.crud.ldap.LdapCRUDController;
+import com.redhat.lightblue.crud.ldap.instrumentation.FindPhaseTimingSink;
+import com.redhat.lightblue.crud.ldap.instrumentation.InMemoryFindPhaseTimings;
+import com.redhat.lightblue.crud.ldap.instrumentation.SlowOperationLog;
 
 /**
- * {@link ControllerFactory} for LDAP.
+ * {@link ControllerFactory} for LDAP.<br>
+ * Timing of the phases of each find can be enabled through the controller options, either with
+ * <code>"findPhaseTiming": true</code> for an {@link InMemoryFindPhaseTimings}, which is exposed
+ * through a {@link FindPhaseTimingsMXBean}, or with
+ * <code>"findPhaseTimingSink"</code> set to the class name of a {@link FindPhaseTimingSink}
+ * that has a no-arg constructor.<br>
+ * Searches and writes that take longer than <code>"slowOperationThresholdMillis"</code> are logged by a
+ * {@link SlowOperationLog}, at most <code>"slowOperationMaxRecordsPerSecond"</code> times a second.
  *
  * @author dcrissman
  */
 public class LdapControllerFactory implements ControllerFactory{
 
     public CRUDController createController(ControllerConfiguration cfg, DataSourcesConfiguration ds) {
+        FindPhaseTimingSink findPhaseTimings = createFindPhaseTimingSink(cfg);
+        if (findPhaseTimings instanceof InMemoryFindPhaseTimings) {
+            FindPhaseTimingsMonitor.register((InMemoryFindPhaseTimings) findPhaseTimings);
+        }
+
         return new LdapCRUDController(new LdapDBResolver(
-                new HashSet<LdapDataSourceConfiguration>(ds.getDataSourcesByType(LdapDataSourceConfiguration.class).values())));
+                new HashSet<LdapDataSourceConfiguration>(ds.getDataSourcesByType(LdapDataSourceConfiguration.class).values())),
+                findPhaseTimings,
+                createSlowOperationLog(cfg));
+    }
+
+    /**
+     * @return the {@link SlowOperationLog} configured in the controller options, or
+     * <code>null</code> if slow searches are not logged.
+     */
+    static SlowOperationLog createSlowOperationLog(ControllerConfiguration cfg) {
+        JsonNode options = (cfg == null) ? null : cfg.getOptions();
+        JsonNode thresholdNode = (options == null) ? null : options.get("slowOperationThresholdMillis");
+        if (thresholdNode == null) {
+            return null;
+        }
+
+        JsonNode maxRecordsNode = options.get("slowOperationMaxRecordsPerSecond");
+        return new SlowOperationLog(thresholdNode.asLong(),
+                (maxRecordsNode == null) ? SlowOperationLog.DEFAULT_MAX_RECORDS_PER_SECOND : maxRecordsNode.asInt());
+    }
+
+    /**
+     * @return the {@link FindPhaseTimingSink} configured in the controller options, or
+     * <code>null</code> if timing is not enabled.
+     */
+    static FindPhaseTimingSink createFindPhaseTimingSink(ControllerConfiguration cfg) {
+        JsonNode options = (cfg == null) ? null : cfg.getOptions();
+        if (options == null) {
+            return null;
+        }
+
+        JsonNode sinkNode = options.get("findPhaseTimingSink");
+        if (sinkNode != null) {
+            try {
+                return Class.forName(sinkNode.asText()).asSubclass(FindPhaseTimingSink.class).newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new LdapConfigException("Unable to create FindPhaseTimingSink: " + sinkNode.asText(), e);
+            }
+        }
+
+        JsonNode timingNode = options.get("findPhaseTiming");
+        if ((timingNode != null) && timingNode.asBoolean()) {
+            return new InMemoryFindPhaseTimings();
+        }
+        return null;
     }
 
 }
@@ -18,54 +18,124 @@
  */
 package com.redhat.lightblue.config.ldap;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConnectionLease;
+import com.redhat.lightblue.common.ldap.LdapCrudSettings;
 import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics;
+import com.redhat.lightblue.common.ldap.LdapOperationType;
 import com.redhat.lightblue.metadata.DataStore;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 
 /**
- * {@link DBResolver} that contains the implementation.
+ * {@link DBResolver} that contains the implementation.<br>
+ * Datasources are indexed by database name when the resolver is created, so that finding
+ * the pool for a request does not depend on the number of datasources.
  *
  * @author dcrissman
  */
 public class LdapDBResolver implements DBResolver{
 
-    private final Set<LdapDataSourceConfiguration> ldapDataSources;
+    private final Map<String, LdapDataSourceConfiguration> ldapDataSources;
 
     public LdapDBResolver(Set<LdapDataSourceConfiguration> ldapDataSources){
-        this.ldapDataSources = ldapDataSources;
+        Map<String, LdapDataSourceConfiguration> index = new HashMap<>();
+        for(LdapDataSourceConfiguration cnf : ldapDataSources){
+            if(cnf.getDatabaseName() != null && !index.containsKey(cnf.getDatabaseName())){
+                index.put(cnf.getDatabaseName(), cnf);
+            }
+        }
+        this.ldapDataSources = Collections.unmodifiableMap(index);
     }
 
+    @Override
+    @Deprecated
     public LDAPConnection get(DataStore store) throws LDAPException {
+        return getDataSource(store).getLdapConnection();
+    }
+
+    @Deprecated
+    public LDAPConnection get(String database) throws LDAPException{
+        return getDataSource(database).getLdapConnection();
+    }
+
+    @Override
+    public LdapConnectionLease lease(DataStore store) throws LDAPException {
+        return lease(store, LdapOperationType.WRITE);
+    }
+
+    public LdapConnectionLease lease(String database) throws LDAPException{
+        return lease(database, LdapOperationType.WRITE);
+    }
+
+    @Override
+    public LdapConnectionLease lease(DataStore store, LdapOperationType operationType) throws LDAPException {
+        return getDataSource(store).leaseLdapConnection(operationType);
+    }
+
+    public LdapConnectionLease lease(String database, LdapOperationType operationType) throws LDAPException{
+        return getDataSource(database).leaseLdapConnection(operationType);
+    }
+
+    @Override
+    public LdapCrudSettings getSettings(DataStore store) {
+        return getDataSource(store).getCrudSettings();
+    }
+
+    public LdapCrudSettings getSettings(String database){
+        return getDataSource(database).getCrudSettings();
+    }
+
+    /**
+     * @return <code>true</code> once the connection pools of every datasource have opened
+     * their initial number of connections, otherwise <code>false</code>.
+     */
+    public boolean isReady(){
+        for(LdapDataSourceConfiguration cnf : ldapDataSources.values()){
+            if(!cnf.isReady()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public LdapOperationStatistics getStatistics(DataStore store) {
+        return getDataSource(store).getOperationStatistics();
+    }
+
+    private String toDatabaseName(DataStore store){
         if(!(store instanceof LdapDataStore)){
             throw new IllegalArgumentException("DataStore of type " + store.getClass() + " is not supported.");
         }
 
-        return get(((LdapDataStore)store).getDatabase());
+        return ((LdapDataStore)store).getDatabase();
     }
 
-    public LDAPConnection get(String database) throws LDAPException{
+    private LdapDataSourceConfiguration getDataSource(DataStore store){
+        //LdapDataStore is mutable, so only its database name is a safe key.
+        return getDataSource(toDatabaseName(store));
+    }
+
+    private LdapDataSourceConfiguration getDataSource(String database){
         LdapDataSourceConfiguration cnf = findByDatabase(database);
         if(cnf == null){
             throw new IllegalArgumentException("No database for " + database);
         }
-        return cnf.getLdapConnection();
+        return cnf;
     }
 
     private LdapDataSourceConfiguration findByDatabase(String database){
         if(database == null){
             return null;
         }
-
-        for(LdapDataSourceConfiguration cnf : ldapDataSources){
-            if(database.equals(cnf.getDatabaseName())){
-                return cnf;
-            }
-        }
-        return null;
+        return ldapDataSources.get(database);
     }
 
 }
@@ -18,20 +18,38 @@
  */
 package com.redhat.lightblue.config.ldap;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.common.ldap.LdapConnectionLease;
+import com.redhat.lightblue.common.ldap.LdapCrudSettings;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics;
+import com.redhat.lightblue.common.ldap.LdapOperationType;
 import com.redhat.lightblue.config.DataSourceConfiguration;
 import com.redhat.lightblue.metadata.ldap.parser.LdapDataStoreParser;
+import com.unboundid.ldap.sdk.AggregateLDAPConnectionPoolHealthCheck;
 import com.unboundid.ldap.sdk.BindRequest;
+import com.unboundid.ldap.sdk.FailoverServerSet;
+import com.unboundid.ldap.sdk.FastestConnectServerSet;
+import com.unboundid.ldap.sdk.FewestConnectionsServerSet;
+import com.unboundid.ldap.sdk.GetEntryLDAPConnectionPoolHealthCheck;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
 import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolStatistics;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.RoundRobinServerSet;
 import com.unboundid.ldap.sdk.ServerSet;
 import com.unboundid.ldap.sdk.SimpleBindRequest;
@@ -52,19 +70,85 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
     private static final String LDAP_CONFIG_PASSWORD = "password";
     private static final String LDAP_CONFIG_NUMBER_OF_INITIAL_CONNECTIONS = "numberOfInitialConnections";
     private static final String LDAP_CONFIG_MAX_NUMBER_OF_CONNECTIONS = "maxNumberOfConnections";
+    private static final String LDAP_CONFIG_NUMBER_OF_INITIAL_READ_CONNECTIONS = "numberOfInitialReadConnections";
+    private static final String LDAP_CONFIG_MAX_NUMBER_OF_READ_CONNECTIONS = "maxNumberOfReadConnections";
+    private static final String LDAP_CONFIG_INITIAL_CONNECT_THREADS = "initialConnectThreads";
+    private static final String LDAP_CONFIG_ASYNC_INITIALIZATION = "asyncInitialization";
+    private static final String LDAP_CONFIG_WARM_UP_RETRY_INTERVAL = "warmUpRetryIntervalMillis";
+    private static final String LDAP_CONFIG_REGISTER_MBEAN = "registerMBean";
+    private static final String LDAP_CONFIG_SERVERS = "servers";
+    private static final String LDAP_CONFIG_READ_SERVERS = "readServers";
+    private static final String LDAP_CONFIG_SERVER_SELECTION = "serverSelection";
+    private static final String LDAP_CONFIG_LATENCY_SMOOTHING_FACTOR = "latencySmoothingFactor";
+    private static final String LDAP_CONFIG_CONNECTION_OPTIONS = "connectionOptions";
+    private static final String LDAP_CONFIG_READ_CONNECTION_OPTIONS = "readConnectionOptions";
+    private static final String LDAP_CONFIG_HEALTH_CHECK = "healthCheck";
+    private static final String LDAP_CONFIG_MAX_IDLE_TIME = "maxIdleTimeMillis";
+    private static final String LDAP_CONFIG_MAX_CONNECTION_AGE = "maxConnectionAgeMillis";
+    private static final String LDAP_CONFIG_CONNECTION_RENEWAL_INTERVAL = "connectionRenewalIntervalMillis";
+    private static final String LDAP_CONFIG_MINIMUM_AVAILABLE_CONNECTIONS = "minimumAvailableConnections";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_CONNECT_TIMEOUT = "connectTimeoutMillis";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_RESPONSE_TIMEOUT = "responseTimeoutMillis";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_RESPONSE_TIMEOUTS = "responseTimeouts";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_ABANDON_ON_TIMEOUT = "abandonOnTimeout";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_TCP_NODELAY = "useTcpNoDelay";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_KEEPALIVE = "useKeepAlive";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_SEND_BUFFER_SIZE = "sendBufferSize";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_RECEIVE_BUFFER_SIZE = "receiveBufferSize";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_SYNCHRONOUS_MODE = "useSynchronousMode";
+    private static final String LDAP_CONNECTION_OPTIONS_CONFIG_MAX_MESSAGE_SIZE = "maxMessageSize";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_INTERVAL = "intervalMillis";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_ENTRY_DN = "entryDN";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_MAX_RESPONSE_TIME = "maxResponseTimeMillis";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_ON_CREATE = "checkOnCreate";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_ON_CHECKOUT = "checkOnCheckout";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_ON_RELEASE = "checkOnRelease";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_IN_BACKGROUND = "checkInBackground";
+    private static final String LDAP_HEALTH_CHECK_CONFIG_ON_EXCEPTION = "checkOnException";
+    private static final String LDAP_CONFIG_SEARCH_WINDOW_SIZE = "searchWindowSize";
+    private static final String LDAP_CONFIG_PAGE_SIZE = "pageSize";
+    private static final String LDAP_CONFIG_MAX_OPERATIONS_IN_FLIGHT = "maxOperationsInFlight";
+    private static final String LDAP_CONFIG_OPERATION_TIMEOUT = "operationTimeoutMillis";
+    private static final String LDAP_CONFIG_LOOKUP_BATCH_SIZE = "lookupBatchSize";
+    private static final String LDAP_CONFIG_DIFF_MODIFICATIONS = "diffModifications";
+    private static final String LDAP_CONFIG_DELETE_CONNECTIONS = "deleteConnections";
+    private static final String LDAP_CONFIG_SUBTREE_DELETE = "subtreeDelete";
     private static final String LDAP_SERVER_CONFIG_HOST = "host";
     private static final String LDAP_SERVER_CONFIG_PORT = "port";
 
     private static final int DEFAULT_NUMBER_OF_INITIAL_CONNECTIONS = 5;
     private static final int DEFAULT_MAX_NUMBER_OF_CONNECTIONS = 10;
+    private static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = 60000;
+    private static final long DEFAULT_HEALTH_CHECK_MAX_RESPONSE_TIME_MILLIS = 5000;
 
     private String databaseName;
     private transient LDAPConnectionPool connectionPool;
+    private transient LDAPConnectionPool readConnectionPool;
+    private transient LatencyWeightedServerSet latencyServerSet;
+    private transient LatencyWeightedServerSet readLatencyServerSet;
+    private transient ConnectionPoolWarmUp warmUp;
+    private transient ConnectionPoolWarmUp readWarmUp;
+    private transient LdapOperationStatistics operationStatistics = new LdapOperationStatistics();
+    private LdapCrudSettings crudSettings = new LdapCrudSettings();
 
     public String getDatabaseName(){
         return databaseName;
     }
 
+    /**
+     * @return the {@link LdapCrudSettings} for this database.
+     */
+    public LdapCrudSettings getCrudSettings(){
+        return crudSettings;
+    }
+
+    /**
+     * @return the {@link LdapOperationStatistics} recorded for this database.
+     */
+    public LdapOperationStatistics getOperationStatistics(){
+        return operationStatistics;
+    }
+
     @Override
     @SuppressWarnings("rawtypes")
     public Class<LdapDataStoreParser> getMetadataDataStoreParser() {
@@ -85,6 +169,139 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
         return connectionPool.getConnection();
     }
 
+    /**
+     * Checks a {@link LDAPConnection} out of the connection pool. The returned
+     * {@link LdapConnectionLease} must be closed in order to return the connection
+     * to the pool.
+     * @return a {@link LdapConnectionLease} instance.
+     * @throws LDAPException
+     */
+    public LdapConnectionLease leaseLdapConnection() throws LDAPException{
+        return leaseLdapConnection(LdapOperationType.WRITE);
+    }
+
+    /**
+     * Checks a {@link LDAPConnection} out of the connection pool for the {@link LdapOperationType}.
+     * If no read servers have been configured, then reads share the pool with writes. The returned
+     * {@link LdapConnectionLease} must be closed in order to return the connection to the pool.
+     * @param operationType - {@link LdapOperationType}
+     * @return a {@link LdapConnectionLease} instance.
+     * @throws LDAPException
+     */
+    public LdapConnectionLease leaseLdapConnection(LdapOperationType operationType) throws LDAPException{
+        LDAPConnectionPool pool = getConnectionPool(operationType);
+        return new LdapConnectionLease(pool.getConnection(), pool, operationStatistics);
+    }
+
+    /**
+     * @return the {@link LDAPConnectionPoolStatistics} for the underlying (write) connection pool.
+     */
+    public LDAPConnectionPoolStatistics getConnectionPoolStatistics(){
+        return getConnectionPool(LdapOperationType.WRITE).getConnectionPoolStatistics();
+    }
+
+    /**
+     * @return the {@link LDAPConnectionPoolStatistics} for the connection pool used for reads, which
+     * is the same pool as for writes if no read servers have been configured.
+     */
+    public LDAPConnectionPoolStatistics getReadConnectionPoolStatistics(){
+        return getConnectionPool(LdapOperationType.READ).getConnectionPoolStatistics();
+    }
+
+    /**
+     * @return <code>true</code> if reads are sent to a separate set of servers, otherwise <code>false</code>.
+     */
+    public boolean hasReadServers(){
+        return (readConnectionPool != null) && (readConnectionPool != connectionPool);
+    }
+
+    /**
+     * @param operationType - {@link LdapOperationType}
+     * @return the recent average response time, in milliseconds, of each server keyed by
+     * <code>address:port</code>. Only available when the <code>latencyWeighted</code> server
+     * selection is in use, otherwise the returned map is empty.
+     */
+    public Map<String, Double> getServerLatencies(LdapOperationType operationType){
+        getConnectionPool(operationType);
+        LatencyWeightedServerSet serverSet = ((operationType == LdapOperationType.READ) && hasReadServers())
+                ? readLatencyServerSet : latencyServerSet;
+        if(serverSet == null){
+            return new HashMap<>();
+        }
+        return serverSet.getServerLatencies();
+    }
+
+    /**
+     * @return <code>true</code> once every connection pool has opened its initial number of
+     * connections, otherwise <code>false</code>. Connections can be leased before then, but
+     * may have to be opened on demand.
+     */
+    public boolean isReady(){
+        getConnectionPool(LdapOperationType.WRITE);
+        return warmUp.isReady() && ((readWarmUp == null) || readWarmUp.isReady());
+    }
+
+    /**
+     * Blocks until every connection pool has opened its initial number of connections, or
+     * the timeout elapses.
+     * @return <code>true</code> if the connection pools are ready, otherwise <code>false</code>.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException{
+        getConnectionPool(LdapOperationType.WRITE);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return warmUp.awaitReady(timeout, unit)
+                && ((readWarmUp == null) || readWarmUp.awaitReady(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+    }
+
+    LDAPConnectionPool getConnectionPool(LdapOperationType operationType){
+        if(connectionPool == null){
+            throw new IllegalStateException("Class has not yet been initialized");
+        }
+        return (operationType == LdapOperationType.READ) ? readConnectionPool : connectionPool;
+    }
+
+    /**
+     * @return the number of checkouts from the write pool that were satisfied by a connection
+     * already in the pool.
+     */
+    /**
+     * @return the number of connections opened in the background, outside of the pool used for
+     * the {@link LdapOperationType}, and released into it. The pool does not count these itself.
+     */
+    public long getWarmUpConnectionsOpened(LdapOperationType operationType){
+        ConnectionPoolWarmUp poolWarmUp = ((operationType == LdapOperationType.READ) && (readWarmUp != null)) ? readWarmUp : warmUp;
+        return (poolWarmUp == null) ? 0 : poolWarmUp.getConnectionsOpened();
+    }
+
+    public long getConnectionPoolHits(){
+        return getConnectionPoolHits(LdapOperationType.WRITE);
+    }
+
+    /**
+     * @param operationType - {@link LdapOperationType}
+     * @return the number of checkouts that were satisfied by a connection already in the pool.
+     */
+    public long getConnectionPoolHits(LdapOperationType operationType){
+        LDAPConnectionPoolStatistics statistics = getConnectionPool(operationType).getConnectionPoolStatistics();
+        return statistics.getNumSuccessfulCheckoutsWithoutWaiting()
+                + statistics.getNumSuccessfulCheckoutsAfterWaiting();
+    }
+
+    /**
+     * @return the number of checkouts from the write pool that required a new connection to be established.
+     */
+    public long getConnectionPoolMisses(){
+        return getConnectionPoolMisses(LdapOperationType.WRITE);
+    }
+
+    /**
+     * @param operationType - {@link LdapOperationType}
+     * @return the number of checkouts that required a new connection to be established.
+     */
+    public long getConnectionPoolMisses(LdapOperationType operationType){
+        return getConnectionPool(operationType).getConnectionPoolStatistics().getNumSuccessfulCheckoutsNewConnection();
+    }
+
     @Override
     public void initializeFromJson(JsonNode node) {
         if(node == null){
@@ -93,6 +310,7 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
         }
 
         databaseName = parseJsonNode(node, LDAP_CONFIG_DATABASE, true).asText();
+        operationStatistics = new LdapOperationStatistics();
 
         //TODO Add functionality for other BindRequest Types
         BindRequest bindRequest = new SimpleBindRequest(
@@ -101,35 +319,202 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
 
         int initialConnections = parseInitialConnections(node);
         int maxConnections = parseMaxConnections(node);
-        Map<String, Integer> hostPortMap = parseServers(node);
+        ServerSelection serverSelection = ServerSelection.fromConfig(
+                parseText(node, LDAP_CONFIG_SERVER_SELECTION, ServerSelection.ROUND_ROBIN.getConfigValue()));
+        double smoothingFactor = parseDouble(node, LDAP_CONFIG_LATENCY_SMOOTHING_FACTOR, LatencyWeightedServerSet.DEFAULT_SMOOTHING_FACTOR);
+
+        LDAPConnectionOptions connectionOptions = parseConnectionOptions(
+                parseJsonNode(node, LDAP_CONFIG_CONNECTION_OPTIONS, false), new LDAPConnectionOptions());
+
+        ServerSet serverSet = createServerSet(parseServers(node, LDAP_CONFIG_SERVERS), connectionOptions, serverSelection, smoothingFactor);
+
+        //Reads may optionally be sent to their own servers, ie. read-only replicas.
+        ServerSet readServerSet = null;
+        if(parseJsonNode(node, LDAP_CONFIG_READ_SERVERS, false) != null){
+            //Read connections may override any of the connection options.
+            LDAPConnectionOptions readConnectionOptions = parseConnectionOptions(
+                    parseJsonNode(node, LDAP_CONFIG_READ_CONNECTION_OPTIONS, false), connectionOptions.duplicate());
+            readServerSet = createServerSet(parseServers(node, LDAP_CONFIG_READ_SERVERS), readConnectionOptions, serverSelection, smoothingFactor);
+        }
 
-        String[] hosts = hostPortMap.keySet().toArray(new String[0]);
+        crudSettings = parseCrudSettings(node);
 
-        ServerSet serverSet;
-        if(hostPortMap.size() == 1){
-            serverSet = new SingleServerSet(hosts[0], hostPortMap.get(hosts[0]));
+        try{
+            connectionPool = createConnectionPool(node, serverSet, bindRequest, initialConnections, maxConnections);
+        }
+        catch(LDAPException e) {
+            throw new LdapConfigException("Unable to connect to ldap server(s).", e);
+        }
+        latencyServerSet = (serverSet instanceof LatencyWeightedServerSet) ? (LatencyWeightedServerSet) serverSet : null;
+
+        if(readServerSet == null){
+            readConnectionPool = connectionPool;
         }
         else{
-            int[] ports = new int[hosts.length];
-            for(int x = 0; x < ports.length; x++){
-                ports[x] = hostPortMap.get(hosts[x]);
+            int initialReadConnections = parseInt(node, LDAP_CONFIG_NUMBER_OF_INITIAL_READ_CONNECTIONS, initialConnections);
+            try{
+                readConnectionPool = createConnectionPool(node, readServerSet, bindRequest,
+                        initialReadConnections,
+                        parseInt(node, LDAP_CONFIG_MAX_NUMBER_OF_READ_CONNECTIONS, maxConnections));
             }
+            catch(LDAPException e) {
+                connectionPool.close();
+                throw new LdapConfigException("Unable to connect to ldap read server(s).", e);
+            }
+            readLatencyServerSet = (readServerSet instanceof LatencyWeightedServerSet) ? (LatencyWeightedServerSet) readServerSet : null;
+            readWarmUp = startWarmUp(node, databaseName + "-read", readConnectionPool, readServerSet, bindRequest, initialReadConnections);
+        }
+        warmUp = startWarmUp(node, databaseName, connectionPool, serverSet, bindRequest, initialConnections);
 
-            //TODO Add support for other ServerSet types.
-            serverSet = new RoundRobinServerSet(hosts, ports);
+        if(parseBoolean(node, LDAP_CONFIG_REGISTER_MBEAN, true)){
+            LdapDataSourceMonitor.register(this);
         }
+    }
 
-        try{
-            connectionPool = new LDAPConnectionPool(serverSet, bindRequest, initialConnections, maxConnections);
+    /**
+     * Opens, in the background, any of the initial connections that the pool does not yet hold.
+     */
+    private ConnectionPoolWarmUp startWarmUp(JsonNode node, String name, LDAPConnectionPool pool,
+            ServerSet serverSet, BindRequest bindRequest, int initialConnections){
+        ConnectionPoolWarmUp poolWarmUp = new ConnectionPoolWarmUp(name, pool, serverSet, bindRequest, initialConnections,
+                parseInitialConnectThreads(node, initialConnections),
+                parseLong(node, LDAP_CONFIG_WARM_UP_RETRY_INTERVAL, ConnectionPoolWarmUp.DEFAULT_RETRY_INTERVAL_MILLIS));
+        poolWarmUp.start();
+        return poolWarmUp;
+    }
+
+    private LDAPConnectionPool createConnectionPool(JsonNode node, ServerSet serverSet, BindRequest bindRequest,
+            int initialConnections, int maxConnections) throws LDAPException {
+        LDAPConnectionPool pool;
+        if(parseBoolean(node, LDAP_CONFIG_ASYNC_INITIALIZATION, false)){
+            //Every connection is opened in the background, see startWarmUp.
+            pool = new LDAPConnectionPool(serverSet, bindRequest, 0, maxConnections, 1, null, false);
         }
-        catch(LDAPException e) {
-            throw new LdapConfigException("Unable to connect to ldap server(s).", e);
+        else{
+            //Initial connections are opened in parallel, and the pool is still created if only some could be opened.
+            pool = new LDAPConnectionPool(serverSet, bindRequest, initialConnections, maxConnections,
+                    parseInitialConnectThreads(node, initialConnections), null, false);
+            if((initialConnections > 0) && (pool.getCurrentAvailableConnections() == 0)){
+                pool.close();
+                throw new LDAPException(ResultCode.CONNECT_ERROR, "Unable to open any of the initial connections.");
+            }
         }
+        configurePoolMaintenance(node, pool, maxConnections);
+        if(serverSet instanceof LatencyWeightedServerSet){
+            //Feed the response times of pooled connections back into the server selection.
+            pool.setHealthCheck(new ResponseTimeRecordingHealthCheck(pool.getHealthCheck(), (LatencyWeightedServerSet) serverSet));
+        }
+        return pool;
     }
 
-    private Map<String, Integer> parseServers(JsonNode node) {
-        JsonNode serversNode = parseJsonNode(node, "servers", true);
-        Map<String, Integer> hostPortMap = new HashMap<String, Integer>();
+    /**
+     * Applies the health checking, idle connection renewal, connection aging and warm
+     * connection settings to the pool.
+     */
+    private void configurePoolMaintenance(JsonNode node, LDAPConnectionPool pool, int maxConnections) {
+        List<LDAPConnectionPoolHealthCheck> healthChecks = new ArrayList<>();
+
+        //Keepalive search against each connection.
+        JsonNode healthCheckNode = parseJsonNode(node, LDAP_CONFIG_HEALTH_CHECK, false);
+        if(healthCheckNode != null){
+            healthChecks.add(new GetEntryLDAPConnectionPoolHealthCheck(
+                    parseText(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_ENTRY_DN, ""),
+                    parseLong(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_MAX_RESPONSE_TIME, DEFAULT_HEALTH_CHECK_MAX_RESPONSE_TIME_MILLIS),
+                    parseBoolean(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_ON_CREATE, false),
+                    parseBoolean(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_ON_CHECKOUT, false),
+                    parseBoolean(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_ON_RELEASE, false),
+                    parseBoolean(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_IN_BACKGROUND, true),
+                    parseBoolean(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_ON_EXCEPTION, true)));
+            pool.setHealthCheckIntervalMillis(
+                    parseLong(healthCheckNode, LDAP_HEALTH_CHECK_CONFIG_INTERVAL, DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS));
+        }
+
+        long maxIdleTimeMillis = parseLong(node, LDAP_CONFIG_MAX_IDLE_TIME, 0);
+        if(maxIdleTimeMillis > 0){
+            healthChecks.add(new IdleConnectionHealthCheck(maxIdleTimeMillis));
+            if(healthCheckNode == null){
+                //Idle connections need to be found in the background.
+                pool.setHealthCheckIntervalMillis(Math.min(maxIdleTimeMillis, DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS));
+            }
+        }
+
+        if(healthChecks.size() == 1){
+            pool.setHealthCheck(healthChecks.get(0));
+        }
+        else if(healthChecks.size() > 1){
+            pool.setHealthCheck(new AggregateLDAPConnectionPoolHealthCheck(healthChecks));
+        }
+
+        long maxConnectionAgeMillis = parseLong(node, LDAP_CONFIG_MAX_CONNECTION_AGE, 0);
+        if(maxConnectionAgeMillis > 0){
+            pool.setMaxConnectionAgeMillis(maxConnectionAgeMillis);
+            pool.setCheckConnectionAgeOnRelease(true);
+            //Stagger renewal, so that connections created together do not all expire together.
+            pool.setMinDisconnectIntervalMillis(parseLong(node, LDAP_CONFIG_CONNECTION_RENEWAL_INTERVAL,
+                    maxConnectionAgeMillis / Math.max(1, maxConnections)));
+        }
+
+        int minimumAvailableConnections = parseInt(node, LDAP_CONFIG_MINIMUM_AVAILABLE_CONNECTIONS, 0);
+        if(minimumAvailableConnections > 0){
+            pool.setMinimumAvailableConnectionGoal(Math.min(minimumAvailableConnections, maxConnections));
+        }
+    }
+
+    /**
+     * Applies the settings from the connectionOptions node, if there is one, to the
+     * {@link LDAPConnectionOptions}.
+     */
+    private LDAPConnectionOptions parseConnectionOptions(JsonNode node, LDAPConnectionOptions options) {
+        if(node == null){
+            return options;
+        }
+
+        options.setConnectTimeoutMillis(parseInt(node, LDAP_CONNECTION_OPTIONS_CONFIG_CONNECT_TIMEOUT, options.getConnectTimeoutMillis()));
+        options.setResponseTimeoutMillis(parseLong(node, LDAP_CONNECTION_OPTIONS_CONFIG_RESPONSE_TIMEOUT, options.getResponseTimeoutMillis()));
+        options.setAbandonOnTimeout(parseBoolean(node, LDAP_CONNECTION_OPTIONS_CONFIG_ABANDON_ON_TIMEOUT, options.abandonOnTimeout()));
+        options.setUseTCPNoDelay(parseBoolean(node, LDAP_CONNECTION_OPTIONS_CONFIG_TCP_NODELAY, options.useTCPNoDelay()));
+        options.setUseKeepAlive(parseBoolean(node, LDAP_CONNECTION_OPTIONS_CONFIG_KEEPALIVE, options.useKeepAlive()));
+        options.setSendBufferSize(parseInt(node, LDAP_CONNECTION_OPTIONS_CONFIG_SEND_BUFFER_SIZE, options.getSendBufferSize()));
+        options.setReceiveBufferSize(parseInt(node, LDAP_CONNECTION_OPTIONS_CONFIG_RECEIVE_BUFFER_SIZE, options.getReceiveBufferSize()));
+        //Synchronous mode avoids a reader thread per connection, pipelined operations then run one at a time.
+        options.setUseSynchronousMode(parseBoolean(node, LDAP_CONNECTION_OPTIONS_CONFIG_SYNCHRONOUS_MODE, options.useSynchronousMode()));
+        options.setMaxMessageSize(parseInt(node, LDAP_CONNECTION_OPTIONS_CONFIG_MAX_MESSAGE_SIZE, options.getMaxMessageSize()));
+        return options;
+    }
+
+    private ServerSet createServerSet(Map<String, Integer> hostPortMap, LDAPConnectionOptions connectionOptions,
+            ServerSelection serverSelection, double smoothingFactor) {
+        String[] hosts = hostPortMap.keySet().toArray(new String[0]);
+
+        if(hostPortMap.size() == 1){
+            return new SingleServerSet(hosts[0], hostPortMap.get(hosts[0]), connectionOptions);
+        }
+
+        int[] ports = new int[hosts.length];
+        for(int x = 0; x < ports.length; x++){
+            ports[x] = hostPortMap.get(hosts[x]);
+        }
+
+        switch(serverSelection){
+            case FEWEST_CONNECTIONS:
+                return new FewestConnectionsServerSet(hosts, ports, connectionOptions);
+            case FASTEST_CONNECT:
+                return new FastestConnectServerSet(hosts, ports, connectionOptions);
+            case FAILOVER:
+                //Servers are tried in the order they are configured.
+                return new FailoverServerSet(hosts, ports, connectionOptions);
+            case LATENCY_WEIGHTED:
+                return new LatencyWeightedServerSet(hosts, ports, null, connectionOptions, smoothingFactor,
+                        LatencyWeightedServerSet.DEFAULT_RETRY_INTERVAL_MILLIS);
+            case ROUND_ROBIN:
+            default:
+                return new RoundRobinServerSet(hosts, ports, connectionOptions);
+        }
+    }
+
+    private Map<String, Integer> parseServers(JsonNode node, String key) {
+        JsonNode serversNode = parseJsonNode(node, key, true);
+        Map<String, Integer> hostPortMap = new LinkedHashMap<String, Integer>();
         if(serversNode.isArray()){
             Iterator<JsonNode> serversIterator = serversNode.elements();
             while(serversIterator.hasNext()){
@@ -140,7 +525,7 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
             }
         }
         else{
-            throw new IllegalArgumentException("Unable to parse 'servers' for ldap database " + databaseName
+            throw new IllegalArgumentException("Unable to parse '" + key + "' for ldap database " + databaseName
                     + ". Must be an instance of an array and must contain at least one entry with a host and port.");
         }
 
@@ -151,6 +536,10 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
         return hostPortMap;
     }
 
+    private int parseInitialConnectThreads(JsonNode node, int initialConnections) {
+        return Math.max(1, parseInt(node, LDAP_CONFIG_INITIAL_CONNECT_THREADS, initialConnections));
+    }
+
     private int parseMaxConnections(JsonNode node) {
         int maxConnections = DEFAULT_MAX_NUMBER_OF_CONNECTIONS;
         JsonNode maxConnectionsNode = parseJsonNode(node, LDAP_CONFIG_MAX_NUMBER_OF_CONNECTIONS, false);
@@ -169,6 +558,81 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
         return initialConnections;
     }
 
+    private LdapCrudSettings parseCrudSettings(JsonNode node) {
+        LdapCrudSettings settings = new LdapCrudSettings();
+        settings.setSearchWindowSize(parseInt(node, LDAP_CONFIG_SEARCH_WINDOW_SIZE, LdapCrudSettings.DEFAULT_SEARCH_WINDOW_SIZE));
+        settings.setPageSize(parseInt(node, LDAP_CONFIG_PAGE_SIZE, LdapCrudSettings.DEFAULT_PAGE_SIZE));
+        settings.setMaxOperationsInFlight(parseInt(node, LDAP_CONFIG_MAX_OPERATIONS_IN_FLIGHT, LdapCrudSettings.DEFAULT_MAX_OPERATIONS_IN_FLIGHT));
+        settings.setOperationTimeoutMillis(parseLong(node, LDAP_CONFIG_OPERATION_TIMEOUT, LdapCrudSettings.DEFAULT_OPERATION_TIMEOUT_MILLIS));
+        settings.setLookupBatchSize(parseInt(node, LDAP_CONFIG_LOOKUP_BATCH_SIZE, LdapCrudSettings.DEFAULT_LOOKUP_BATCH_SIZE));
+        settings.setDiffModifications(parseBoolean(node, LDAP_CONFIG_DIFF_MODIFICATIONS, LdapCrudSettings.DEFAULT_DIFF_MODIFICATIONS));
+        settings.setDeleteConnections(parseInt(node, LDAP_CONFIG_DELETE_CONNECTIONS, LdapCrudSettings.DEFAULT_DELETE_CONNECTIONS));
+        settings.setSubtreeDelete(parseBoolean(node, LDAP_CONFIG_SUBTREE_DELETE, LdapCrudSettings.DEFAULT_SUBTREE_DELETE));
+
+        //Response timeouts per operation type, ie. {"search": 2000, "modify": 10000}
+        JsonNode connectionOptionsNode = parseJsonNode(node, LDAP_CONFIG_CONNECTION_OPTIONS, false);
+        JsonNode responseTimeoutsNode = (connectionOptionsNode == null)
+                ? null
+                : parseJsonNode(connectionOptionsNode, LDAP_CONNECTION_OPTIONS_CONFIG_RESPONSE_TIMEOUTS, false);
+        if(responseTimeoutsNode != null){
+            Iterator<Map.Entry<String, JsonNode>> timeouts = responseTimeoutsNode.fields();
+            while(timeouts.hasNext()){
+                Map.Entry<String, JsonNode> timeout = timeouts.next();
+                settings.setResponseTimeoutMillis(parseOperationType(timeout.getKey()), timeout.getValue().asLong());
+            }
+        }
+        return settings;
+    }
+
+    private OperationType parseOperationType(String value){
+        for(OperationType operationType : OperationType.values()){
+            if(operationType.name().equalsIgnoreCase(value)){
+                return operationType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation type for response timeout: " + value);
+    }
+
+    private int parseInt(JsonNode node, String key, int defaultValue){
+        JsonNode parsedNode = parseJsonNode(node, key, false);
+        if(parsedNode == null){
+            return defaultValue;
+        }
+        return parsedNode.asInt(defaultValue);
+    }
+
+    private double parseDouble(JsonNode node, String key, double defaultValue){
+        JsonNode parsedNode = parseJsonNode(node, key, false);
+        if(parsedNode == null){
+            return defaultValue;
+        }
+        return parsedNode.asDouble(defaultValue);
+    }
+
+    private String parseText(JsonNode node, String key, String defaultValue){
+        JsonNode parsedNode = parseJsonNode(node, key, false);
+        if(parsedNode == null){
+            return defaultValue;
+        }
+        return parsedNode.asText();
+    }
+
+    private long parseLong(JsonNode node, String key, long defaultValue){
+        JsonNode parsedNode = parseJsonNode(node, key, false);
+        if(parsedNode == null){
+            return defaultValue;
+        }
+        return parsedNode.asLong(defaultValue);
+    }
+
+    private boolean parseBoolean(JsonNode node, String key, boolean defaultValue){
+        JsonNode parsedNode = parseJsonNode(node, key, false);
+        if(parsedNode == null){
+            return defaultValue;
+        }
+        return parsedNode.asBoolean(defaultValue);
+    }
+
     private JsonNode parseJsonNode(JsonNode node, String key, boolean required){
         JsonNode parsedNode = node.get(key);
         if(required && (parsedNode == null)){
@@ -0,0 +1,126 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import java.util.Map;
+
+/**
+ * JMX view of a single LDAP datasource: the state of its connection pools and the
+ * operations performed against it. Registered by {@link LdapDataSourceConfiguration}
+ * under <code>com.redhat.lightblue.ldap:type=LdapDataSource,name=&lt;database&gt;</code>.
+ *
+ * @author dcrissman
+ */
+public interface LdapDataSourceMXBean {
+
+    String getDatabaseName();
+
+    /**
+     * @see LdapDataSourceConfiguration#isReady()
+     */
+    boolean isReady();
+
+    /**
+     * @return the statistics of the pool used for writes, which is also used for reads
+     * unless read servers are configured.
+     */
+    Map<String, Long> getConnectionPoolStatistics();
+
+    /**
+     * @return the statistics of the pool used for reads.
+     */
+    Map<String, Long> getReadConnectionPoolStatistics();
+
+    /**
+     * @see LdapDataSourceConfiguration#getConnectionPoolHits(com.redhat.lightblue.common.ldap.LdapOperationType)
+     */
+    long getConnectionPoolHits();
+
+    /**
+     * @see LdapDataSourceConfiguration#getConnectionPoolMisses(com.redhat.lightblue.common.ldap.LdapOperationType)
+     */
+    long getConnectionPoolMisses();
+
+    /**
+     * @see LdapDataSourceConfiguration#getConnectionPoolHits(com.redhat.lightblue.common.ldap.LdapOperationType)
+     */
+    long getReadConnectionPoolHits();
+
+    /**
+     * @see LdapDataSourceConfiguration#getConnectionPoolMisses(com.redhat.lightblue.common.ldap.LdapOperationType)
+     */
+    long getReadConnectionPoolMisses();
+
+    /**
+     * @return the recent average response time, in milliseconds, of each server used for writes,
+     * keyed by <code>address:port</code>. Empty unless the <code>latencyWeighted</code> server
+     * selection is in use.
+     */
+    Map<String, Double> getServerLatenciesMillis();
+
+    /**
+     * @return the recent average response time, in milliseconds, of each server used for reads,
+     * keyed by <code>address:port</code>. Empty unless the <code>latencyWeighted</code> server
+     * selection is in use.
+     */
+    Map<String, Double> getReadServerLatenciesMillis();
+
+    /**
+     * @return the number of times each CRUD operation has been performed.
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * @return the number of times each CRUD operation has reported errors.
+     */
+    Map<String, Long> getOperationFailures();
+
+    /**
+     * @return the number of entries returned or changed by each CRUD operation.
+     */
+    Map<String, Long> getOperationEntries();
+
+    /**
+     * @return the mean latency, in milliseconds, of each CRUD operation.
+     */
+    Map<String, Double> getOperationMeanLatencyMillis();
+
+    /**
+     * @return the number of failed LDAP requests, keyed by result code.
+     */
+    Map<String, Long> getErrorsByResultCode();
+
+    /**
+     * @param operation - name of the CRUD operation, ie. <code>find</code>.
+     * @return the 50th, 90th, 99th and 99.9th percentile and maximum latencies, in milliseconds.
+     */
+    Map<String, Double> getLatencyPercentilesMillis(String operation);
+
+    /**
+     * @param operation - name of the CRUD operation, ie. <code>find</code>.
+     * @return the number of latencies in each bucket of the latency histogram.
+     */
+    Map<String, Long> getLatencyHistogram(String operation);
+
+    /**
+     * Clears the CRUD operation statistics. Connection pool statistics are not affected.
+     */
+    void resetOperationStatistics();
+
+}
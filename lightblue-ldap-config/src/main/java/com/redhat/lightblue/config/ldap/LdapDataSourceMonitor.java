@@ -0,0 +1,234 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.common.ldap.LatencyHistogram;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+import com.redhat.lightblue.common.ldap.LdapOperationType;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolStatistics;
+
+/**
+ * {@link LdapDataSourceMXBean} backed by a {@link LdapDataSourceConfiguration}.
+ *
+ * @author dcrissman
+ */
+class LdapDataSourceMonitor implements LdapDataSourceMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LdapDataSourceMonitor.class);
+
+    static final String OBJECT_NAME_PREFIX = "com.redhat.lightblue.ldap:type=LdapDataSource,name=";
+
+    private final LdapDataSourceConfiguration configuration;
+
+    LdapDataSourceMonitor(LdapDataSourceConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Registers a {@link LdapDataSourceMonitor} for the datasource with the platform
+     * {@link MBeanServer}, replacing any previously registered for the same database. Failures
+     * are logged rather than thrown, as monitoring should never prevent the datasource from
+     * being used.
+     */
+    static void register(LdapDataSourceConfiguration configuration) {
+        try {
+            ObjectName name = createObjectName(configuration.getDatabaseName());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new LdapDataSourceMonitor(configuration), name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register MBean for LDAP datasource " + configuration.getDatabaseName(), e);
+        }
+    }
+
+    static ObjectName createObjectName(String databaseName) throws JMException {
+        return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(databaseName));
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return configuration.getDatabaseName();
+    }
+
+    @Override
+    public boolean isReady() {
+        return configuration.isReady();
+    }
+
+    @Override
+    public Map<String, Long> getConnectionPoolStatistics() {
+        return toMap(configuration.getConnectionPoolStatistics(),
+                configuration.getWarmUpConnectionsOpened(LdapOperationType.WRITE));
+    }
+
+    @Override
+    public Map<String, Long> getReadConnectionPoolStatistics() {
+        return toMap(configuration.getReadConnectionPoolStatistics(),
+                configuration.getWarmUpConnectionsOpened(LdapOperationType.READ));
+    }
+
+    /**
+     * @param warmUpConnectionsOpened - connections released into the pool by the warm-up, which
+     * the pool does not count as created.
+     */
+    private static Map<String, Long> toMap(LDAPConnectionPoolStatistics statistics, long warmUpConnectionsOpened) {
+        long open = ConnectionPoolWarmUp.countOpenConnections(statistics, warmUpConnectionsOpened);
+
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("availableConnections", (long) statistics.getNumAvailableConnections());
+        values.put("maximumAvailableConnections", (long) statistics.getMaximumAvailableConnections());
+        values.put("checkedOutConnections", Math.max(0, open - statistics.getNumAvailableConnections()));
+        values.put("connectionsCreated", statistics.getNumSuccessfulConnectionAttempts() + warmUpConnectionsOpened);
+        values.put("failedConnectionAttempts", statistics.getNumFailedConnectionAttempts());
+        values.put("connectionsClosedDefunct", statistics.getNumConnectionsClosedDefunct());
+        values.put("connectionsClosedExpired", statistics.getNumConnectionsClosedExpired());
+        values.put("connectionsClosedUnneeded", statistics.getNumConnectionsClosedUnneeded());
+        values.put("checkoutsWithoutWaiting", statistics.getNumSuccessfulCheckoutsWithoutWaiting());
+        values.put("checkoutsAfterWaiting", statistics.getNumSuccessfulCheckoutsAfterWaiting());
+        values.put("checkoutsNewConnection", statistics.getNumSuccessfulCheckoutsNewConnection());
+        values.put("failedCheckouts", statistics.getNumFailedCheckouts());
+        values.put("releasedValid", statistics.getNumReleasedValid());
+        return values;
+    }
+
+    @Override
+    public long getConnectionPoolHits() {
+        return configuration.getConnectionPoolHits(LdapOperationType.WRITE);
+    }
+
+    @Override
+    public long getConnectionPoolMisses() {
+        return configuration.getConnectionPoolMisses(LdapOperationType.WRITE);
+    }
+
+    @Override
+    public long getReadConnectionPoolHits() {
+        return configuration.getConnectionPoolHits(LdapOperationType.READ);
+    }
+
+    @Override
+    public long getReadConnectionPoolMisses() {
+        return configuration.getConnectionPoolMisses(LdapOperationType.READ);
+    }
+
+    @Override
+    public Map<String, Double> getServerLatenciesMillis() {
+        return configuration.getServerLatencies(LdapOperationType.WRITE);
+    }
+
+    @Override
+    public Map<String, Double> getReadServerLatenciesMillis() {
+        return configuration.getServerLatencies(LdapOperationType.READ);
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        LdapOperationStatistics statistics = configuration.getOperationStatistics();
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (CrudOperation operation : CrudOperation.values()) {
+            values.put(toName(operation), statistics.getCount(operation));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getOperationFailures() {
+        LdapOperationStatistics statistics = configuration.getOperationStatistics();
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (CrudOperation operation : CrudOperation.values()) {
+            values.put(toName(operation), statistics.getFailures(operation));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getOperationEntries() {
+        LdapOperationStatistics statistics = configuration.getOperationStatistics();
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (CrudOperation operation : CrudOperation.values()) {
+            values.put(toName(operation), statistics.getEntries(operation));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getOperationMeanLatencyMillis() {
+        LdapOperationStatistics statistics = configuration.getOperationStatistics();
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (CrudOperation operation : CrudOperation.values()) {
+            values.put(toName(operation), statistics.getLatency(operation).getMeanMillis());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByResultCode() {
+        return configuration.getOperationStatistics().getErrorsByResultCode();
+    }
+
+    @Override
+    public Map<String, Double> getLatencyPercentilesMillis(String operation) {
+        LatencyHistogram histogram = configuration.getOperationStatistics().getLatency(toOperation(operation));
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("p50", histogram.getPercentileMillis(50));
+        values.put("p90", histogram.getPercentileMillis(90));
+        values.put("p99", histogram.getPercentileMillis(99));
+        values.put("p999", histogram.getPercentileMillis(99.9));
+        values.put("max", histogram.getMaxMillis());
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyHistogram(String operation) {
+        return configuration.getOperationStatistics().getLatency(toOperation(operation)).getBuckets();
+    }
+
+    @Override
+    public void resetOperationStatistics() {
+        configuration.getOperationStatistics().reset();
+    }
+
+    private static String toName(CrudOperation operation) {
+        return operation.name().toLowerCase();
+    }
+
+    private static CrudOperation toOperation(String name) {
+        for (CrudOperation operation : CrudOperation.values()) {
+            if (operation.name().equalsIgnoreCase(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import com.unboundid.ldap.sdk.BindResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPConnectionStatistics;
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * {@link LDAPConnectionPoolHealthCheck} that, each time a connection is released back to
+ * the pool, reports the average response time of the operations performed on it to a
+ * {@link LatencyWeightedServerSet}. Every check is otherwise delegated.
+ *
+ * @author dcrissman
+ */
+class ResponseTimeRecordingHealthCheck extends LDAPConnectionPoolHealthCheck {
+
+    private final LDAPConnectionPoolHealthCheck delegate;
+    private final LatencyWeightedServerSet serverSet;
+
+    ResponseTimeRecordingHealthCheck(LDAPConnectionPoolHealthCheck delegate, LatencyWeightedServerSet serverSet) {
+        this.delegate = (delegate == null) ? new LDAPConnectionPoolHealthCheck() : delegate;
+        this.serverSet = serverSet;
+    }
+
+    LDAPConnectionPoolHealthCheck getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void ensureNewConnectionValid(LDAPConnection connection) throws LDAPException {
+        delegate.ensureNewConnectionValid(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidAfterAuthentication(LDAPConnection connection, BindResult bindResult) throws LDAPException {
+        delegate.ensureConnectionValidAfterAuthentication(connection, bindResult);
+    }
+
+    @Override
+    public void ensureConnectionValidForCheckout(LDAPConnection connection) throws LDAPException {
+        delegate.ensureConnectionValidForCheckout(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidForRelease(LDAPConnection connection) throws LDAPException {
+        record(connection);
+        delegate.ensureConnectionValidForRelease(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidForContinuedUse(LDAPConnection connection) throws LDAPException {
+        delegate.ensureConnectionValidForContinuedUse(connection);
+    }
+
+    @Override
+    public void ensureConnectionValidAfterException(LDAPConnection connection, LDAPException exception) throws LDAPException {
+        delegate.ensureConnectionValidAfterException(connection, exception);
+    }
+
+    @Override
+    public void toString(StringBuilder buffer) {
+        buffer.append("ResponseTimeRecordingHealthCheck(delegate=");
+        delegate.toString(buffer);
+        buffer.append(')');
+    }
+
+    private void record(LDAPConnection connection) {
+        LDAPConnectionStatistics statistics = connection.getConnectionStatistics();
+        if ((statistics == null) || (connection.getConnectedAddress() == null)) {
+            return;
+        }
+
+        long responses = statistics.getNumSearchDoneResponses()
+                + statistics.getNumAddResponses()
+                + statistics.getNumModifyResponses()
+                + statistics.getNumDeleteResponses();
+        if (responses == 0) {
+            return;
+        }
+
+        long totalNanos = statistics.getTotalSearchResponseTimeNanos()
+                + statistics.getTotalAddResponseTimeNanos()
+                + statistics.getTotalModifyResponseTimeNanos()
+                + statistics.getTotalDeleteResponseTimeNanos();
+        statistics.reset();
+
+        serverSet.recordResponseTime(connection.getConnectedAddress(), connection.getConnectedPort(),
+                (totalNanos / (double) responses) / 1000000.0);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+/**
+ * Strategies for choosing which server a new pooled connection is established to,
+ * when more than one server is configured.
+ *
+ * @author dcrissman
+ */
+public enum ServerSelection {
+
+    /** Each server in turn. */
+    ROUND_ROBIN("roundRobin"),
+    /** The server with the fewest connections established from the pool. */
+    FEWEST_CONNECTIONS("fewestConnections"),
+    /** The server that is the quickest to accept a connection. */
+    FASTEST_CONNECT("fastestConnect"),
+    /** The first available server, in the order they are configured. */
+    FAILOVER("failover"),
+    /** Weighted towards the servers with the lowest recent response times. */
+    LATENCY_WEIGHTED("latencyWeighted");
+
+    private final String configValue;
+
+    private ServerSelection(String configValue) {
+        this.configValue = configValue;
+    }
+
+    /**
+     * @return the value used to refer to this strategy in the datasource configuration.
+     */
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    /**
+     * @param configValue - value from the datasource configuration.
+     * @return the matching {@link ServerSelection}.
+     * @throws IllegalArgumentException if no strategy matches.
+     */
+    public static ServerSelection fromConfig(String configValue) {
+        for (ServerSelection serverSelection : values()) {
+            if (serverSelection.configValue.equalsIgnoreCase(configValue)) {
+                return serverSelection;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported serverSelection: " + configValue);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+
+@InMemoryLdapServer
+public class IdleConnectionHealthCheckTest {
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    @Test
+    public void testRecentlyUsedConnection() throws LDAPException {
+        LDAPConnection connection = new LDAPConnection("localhost", LdapServerExternalResource.DEFAULT_PORT);
+        try {
+            connection.getRootDSE();
+
+            IdleConnectionHealthCheck healthCheck = new IdleConnectionHealthCheck(60000);
+            healthCheck.ensureConnectionValidForCheckout(connection);
+            healthCheck.ensureConnectionValidForContinuedUse(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(expected = LDAPException.class)
+    public void testIdleConnection() throws LDAPException, InterruptedException {
+        LDAPConnection connection = new LDAPConnection("localhost", LdapServerExternalResource.DEFAULT_PORT);
+        try {
+            connection.getRootDSE();
+            Thread.sleep(20);
+
+            new IdleConnectionHealthCheck(10).ensureConnectionValidForContinuedUse(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxIdleTime() {
+        new IdleConnectionHealthCheck(0);
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.Map;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.LDAPConnection;
+
+@InMemoryLdapServer
+public class LatencyWeightedServerSetTest {
+
+    @ClassRule
+    public static LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedPorts() {
+        new LatencyWeightedServerSet(new String[]{"localhost", "127.0.0.1"}, new int[]{389});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSmoothingFactor() {
+        new LatencyWeightedServerSet(new String[]{"localhost"}, new int[]{389}, null, null, 0, 0);
+    }
+
+    @Test
+    public void testRecordResponseTime() {
+        LatencyWeightedServerSet serverSet = new LatencyWeightedServerSet(
+                new String[]{"localhost", "otherhost"}, new int[]{389, 389}, null, null, 0.5, 0);
+
+        serverSet.recordResponseTime("localhost", 389, 10);
+        serverSet.recordResponseTime("LOCALHOST", 389, 20);
+        serverSet.recordResponseTime("unknownhost", 389, 1000);
+
+        Map<String, Double> latencies = serverSet.getServerLatencies();
+        assertEquals(1, latencies.size());
+        assertEquals(15, latencies.get("localhost:389"), 0.001);
+    }
+
+    @Test
+    public void testGetConnection_SkipsUnavailableServer() throws Exception {
+        int unusedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unusedPort = socket.getLocalPort();
+        }
+
+        LatencyWeightedServerSet serverSet = new LatencyWeightedServerSet(
+                new String[]{"127.0.0.1", "localhost"}, new int[]{unusedPort, ldapServer.getPort()}, null, null, 0.2, 60000);
+
+        for (int i = 0; i < 5; i++) {
+            LDAPConnection connection = serverSet.getConnection();
+            try {
+                assertTrue(connection.isConnected());
+                assertEquals(ldapServer.getPort(), connection.getConnectedPort());
+            } finally {
+                connection.close();
+            }
+        }
+
+        Map<String, Double> latencies = serverSet.getServerLatencies();
+        assertEquals(1, latencies.size());
+        assertTrue(latencies.containsKey("localhost:" + ldapServer.getPort()));
+    }
+
+}
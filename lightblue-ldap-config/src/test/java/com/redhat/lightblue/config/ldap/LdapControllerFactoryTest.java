@@ -18,12 +18,28 @@
  */
 package com.redhat.lightblue.config.ldap;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMX;
+
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.config.ControllerConfiguration;
 import com.redhat.lightblue.config.DataSourcesConfiguration;
+import com.redhat.lightblue.crud.ldap.LdapCRUDController;
+import com.redhat.lightblue.crud.ldap.instrumentation.FindPhase;
+import com.redhat.lightblue.crud.ldap.instrumentation.InMemoryFindPhaseTimings;
+import com.redhat.lightblue.crud.ldap.instrumentation.SlowOperationLog;
 
 public class LdapControllerFactoryTest {
 
@@ -32,4 +48,77 @@ public class LdapControllerFactoryTest {
         assertNotNull(new LdapControllerFactory().createController(null, mock(DataSourcesConfiguration.class)));
     }
 
+    @Test
+    public void testCreateFindPhaseTimingSink_NotConfigured(){
+        assertNull(LdapControllerFactory.createFindPhaseTimingSink(null));
+        assertNull(LdapControllerFactory.createFindPhaseTimingSink(new ControllerConfiguration()));
+    }
+
+    @Test
+    public void testCreateFindPhaseTimingSink_InMemory(){
+        ObjectNode options = JsonNodeFactory.instance.objectNode();
+        options.put("findPhaseTiming", true);
+        ControllerConfiguration cfg = new ControllerConfiguration();
+        cfg.setOptions(options);
+
+        assertTrue(LdapControllerFactory.createFindPhaseTimingSink(cfg) instanceof InMemoryFindPhaseTimings);
+    }
+
+    @Test
+    public void testCreateController_RegistersFindPhaseTimingsMBean() throws Exception{
+        ObjectNode options = JsonNodeFactory.instance.objectNode();
+        options.put("findPhaseTiming", true);
+        ControllerConfiguration cfg = new ControllerConfiguration();
+        cfg.setOptions(options);
+
+        LdapCRUDController controller = (LdapCRUDController) new LdapControllerFactory().createController(cfg, mock(DataSourcesConfiguration.class));
+        InMemoryFindPhaseTimings timings = (InMemoryFindPhaseTimings) controller.getFindPhaseTimingSink();
+        timings.record("person", FindPhase.SEARCH, 5000000L);
+
+        FindPhaseTimingsMXBean monitor = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                FindPhaseTimingsMonitor.createObjectName(), FindPhaseTimingsMXBean.class);
+        assertEquals(Long.valueOf(1), monitor.getPhaseCounts().get("search"));
+        assertEquals(Long.valueOf(0), monitor.getPhaseCounts().get("translate"));
+        assertEquals(Arrays.asList("person"), monitor.getEntityNames());
+        assertEquals(5.0, monitor.getEntityPhaseMeanLatencyMillis("person").get("search"), 0.5);
+
+        monitor.reset();
+        assertEquals(Long.valueOf(0), monitor.getPhaseCounts().get("search"));
+    }
+
+    @Test
+    public void testCreateFindPhaseTimingSink_ClassName(){
+        ObjectNode options = JsonNodeFactory.instance.objectNode();
+        options.put("findPhaseTimingSink", InMemoryFindPhaseTimings.class.getName());
+        ControllerConfiguration cfg = new ControllerConfiguration();
+        cfg.setOptions(options);
+
+        assertTrue(LdapControllerFactory.createFindPhaseTimingSink(cfg) instanceof InMemoryFindPhaseTimings);
+    }
+
+    @Test(expected = LdapConfigException.class)
+    public void testCreateFindPhaseTimingSink_NotASink(){
+        ObjectNode options = JsonNodeFactory.instance.objectNode();
+        options.put("findPhaseTimingSink", String.class.getName());
+        ControllerConfiguration cfg = new ControllerConfiguration();
+        cfg.setOptions(options);
+
+        LdapControllerFactory.createFindPhaseTimingSink(cfg);
+    }
+
+    @Test
+    public void testCreateSlowOperationLog(){
+        assertNull(LdapControllerFactory.createSlowOperationLog(new ControllerConfiguration()));
+
+        ObjectNode options = JsonNodeFactory.instance.objectNode();
+        options.put("slowOperationThresholdMillis", 250);
+        ControllerConfiguration cfg = new ControllerConfiguration();
+        cfg.setOptions(options);
+
+        SlowOperationLog log = LdapControllerFactory.createSlowOperationLog(cfg);
+        assertNotNull(log);
+        assertTrue(log.isSlow(250000000L));
+        assertFalse(log.isSlow(249999999L));
+    }
+
 }
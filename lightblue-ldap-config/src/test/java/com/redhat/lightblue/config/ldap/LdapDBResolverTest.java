@@ -18,21 +18,78 @@
  */
 package com.redhat.lightblue.config.ldap;
 
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 import org.junit.Test;
 
+import com.redhat.lightblue.common.ldap.LdapCrudSettings;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
 import com.redhat.lightblue.metadata.DataStore;
 import com.unboundid.ldap.sdk.LDAPException;
 
 public class LdapDBResolverTest {
 
+    private static LdapDataSourceConfiguration createDataSource(String database){
+        LdapCrudSettings settings = new LdapCrudSettings();
+        return new LdapDataSourceConfiguration(){
+
+            private static final long serialVersionUID = -3553180484937522545L;
+
+            @Override
+            public String getDatabaseName(){
+                return database;
+            }
+
+            @Override
+            public LdapCrudSettings getCrudSettings(){
+                return settings;
+            }
+        };
+    }
+
+    @Test
+    public void testGetSettings() {
+        LdapDataSourceConfiguration first = createDataSource("first");
+        LdapDataSourceConfiguration second = createDataSource("second");
+        //Stubs do not have a databaseName field, so would be equal to each other.
+        Set<LdapDataSourceConfiguration> dataSources = Collections.newSetFromMap(new IdentityHashMap<>());
+        dataSources.add(first);
+        dataSources.add(second);
+        LdapDBResolver resolver = new LdapDBResolver(dataSources);
+
+        LdapDataStore store = new LdapDataStore("second", "dc=example,dc=com", "uid");
+        assertSame(second.getCrudSettings(), resolver.getSettings(store));
+        //Still resolved after the store is changed.
+        store.setPageSize(100);
+        assertSame(second.getCrudSettings(), resolver.getSettings(store));
+        assertSame(first.getCrudSettings(), resolver.getSettings("first"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetSettings_UnknownDatabase() {
+        LdapDBResolver resolver = new LdapDBResolver(Collections.singleton(createDataSource("first")));
+        resolver.getSettings(new LdapDataStore("Does Not Exist", "dc=example,dc=com", "uid"));
+    }
+
+    @SuppressWarnings("deprecation")
     @Test(expected = IllegalArgumentException.class)
     public void testGet_UnknownDatabase() throws LDAPException{
         LdapDBResolver resolver = new LdapDBResolver(new HashSet<LdapDataSourceConfiguration>());
         resolver.get("Does Not Exist");
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testLease_UnknownDatabase() throws LDAPException{
+        LdapDBResolver resolver = new LdapDBResolver(new HashSet<LdapDataSourceConfiguration>());
+        resolver.lease("Does Not Exist");
+    }
+
+    @SuppressWarnings("deprecation")
     @Test(expected = IllegalArgumentException.class)
     public void testGet_InvalidStoreType() throws LDAPException{
         new LdapDBResolver(new HashSet<LdapDataSourceConfiguration>()).get(new DataStore(){
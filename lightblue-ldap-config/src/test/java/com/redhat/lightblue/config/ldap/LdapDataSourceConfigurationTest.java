@@ -19,19 +19,39 @@
 package com.redhat.lightblue.config.ldap;
 
 import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
 
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.common.ldap.LdapConnectionLease;
+import com.redhat.lightblue.common.ldap.LdapCrudSettings;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+import com.redhat.lightblue.common.ldap.LdapOperationType;
 import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
 import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.AggregateLDAPConnectionPoolHealthCheck;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
 import com.unboundid.ldif.LDIFException;
 
 @InMemoryLdapServer
@@ -60,6 +80,295 @@ public class LdapDataSourceConfigurationTest {
 
         LDAPConnection conn = configuration.getLdapConnection();
         assertNotNull(conn);
+
+        assertEquals(50, configuration.getCrudSettings().getSearchWindowSize());
+        assertEquals(2, configuration.getCrudSettings().getDeleteConnections());
+        assertTrue(configuration.getCrudSettings().isSubtreeDelete());
+    }
+
+    @Test
+    public void testLeaseLdapConnection_ReusesPooledConnections() throws IOException, LDAPException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap"));
+
+        for (int i = 0; i < 20; i++) {
+            try (LdapConnectionLease lease = configuration.leaseLdapConnection()) {
+                assertNotNull(lease.getConnection());
+            }
+        }
+
+        assertEquals(20, configuration.getConnectionPoolHits());
+        assertEquals(0, configuration.getConnectionPoolMisses());
+        assertTrue(configuration.getConnectionPoolStatistics().getNumAvailableConnections() > 0);
+    }
+
+    @Test
+    public void testLeaseLdapConnection_ReadsShareWritePool() throws IOException, LDAPException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap"));
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection(LdapOperationType.READ)) {
+            assertNotNull(lease.getConnection());
+        }
+
+        assertFalse(configuration.hasReadServers());
+        assertEquals(1, configuration.getConnectionPoolHits());
+    }
+
+    @Test
+    public void testLeaseLdapConnection_ReadServers() throws IOException, LDAPException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.set("readServers", ldapNode.get("servers"));
+        ldapNode.put("numberOfInitialReadConnections", 2);
+        ldapNode.put("maxNumberOfReadConnections", 3);
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        assertTrue(configuration.hasReadServers());
+        for (int i = 0; i < 5; i++) {
+            try (LdapConnectionLease lease = configuration.leaseLdapConnection(LdapOperationType.READ)) {
+                assertNotNull(lease.getConnection());
+            }
+        }
+
+        assertEquals(5, configuration.getReadConnectionPoolStatistics().getNumSuccessfulCheckoutsWithoutWaiting());
+        assertEquals(3, configuration.getReadConnectionPoolStatistics().getMaximumAvailableConnections());
+        assertEquals(0, configuration.getConnectionPoolHits());
+    }
+
+    @Test
+    public void testInitializeFromJson_LatencyWeighted() throws Exception{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ArrayNode servers = (ArrayNode) ldapNode.get("servers");
+        servers.addObject()
+            .put("host", "127.0.0.1")
+            .put("port", LdapServerExternalResource.DEFAULT_PORT);
+        ldapNode.put("serverSelection", "latencyWeighted");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection()) {
+            lease.getConnection().getRootDSE();
+        }
+
+        assertFalse(configuration.getServerLatencies(LdapOperationType.WRITE).isEmpty());
+
+        LdapDataSourceMXBean monitor = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                LdapDataSourceMonitor.createObjectName(configuration.getDatabaseName()), LdapDataSourceMXBean.class);
+        assertEquals(configuration.getServerLatencies(LdapOperationType.WRITE).keySet(), monitor.getServerLatenciesMillis().keySet());
+        assertEquals(monitor.getServerLatenciesMillis(), monitor.getReadServerLatenciesMillis());
+    }
+
+    @Test
+    public void testInitializeFromJson_PoolMaintenance() throws IOException, LDAPException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.putObject("healthCheck")
+            .put("intervalMillis", 1000)
+            .put("maxResponseTimeMillis", 500)
+            .put("checkOnCheckout", true);
+        ldapNode.put("maxIdleTimeMillis", 30000);
+        ldapNode.put("maxConnectionAgeMillis", 60000);
+        ldapNode.put("minimumAvailableConnections", 2);
+        ldapNode.set("readServers", ldapNode.get("servers"));
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        for (LdapOperationType operationType : LdapOperationType.values()) {
+            LDAPConnectionPool pool = configuration.getConnectionPool(operationType);
+            assertTrue(pool.getHealthCheck() instanceof AggregateLDAPConnectionPoolHealthCheck);
+            assertEquals(1000, pool.getHealthCheckIntervalMillis());
+            assertEquals(60000, pool.getMaxConnectionAgeMillis());
+            assertTrue(pool.checkConnectionAgeOnRelease());
+            //Renewal is staggered across the pool by default.
+            assertEquals(60000 / 10, pool.getMinDisconnectIntervalMillis());
+            assertEquals(2, pool.getMinimumAvailableConnectionGoal());
+        }
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection(LdapOperationType.READ)) {
+            assertNotNull(lease.getConnection().getRootDSE());
+        }
+    }
+
+    @Test
+    public void testInitializeFromJson_IdleTimeoutOnly() throws IOException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.put("maxIdleTimeMillis", 5000);
+        ldapNode.put("connectionRenewalIntervalMillis", 100);
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        LDAPConnectionPool pool = configuration.getConnectionPool(LdapOperationType.WRITE);
+        assertTrue(pool.getHealthCheck() instanceof IdleConnectionHealthCheck);
+        assertEquals(5000, pool.getHealthCheckIntervalMillis());
+        assertEquals(0, pool.getMaxConnectionAgeMillis());
+    }
+
+    @Test
+    public void testInitializeFromJson_ConnectionOptions() throws IOException, LDAPException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ObjectNode connectionOptionsNode = ldapNode.putObject("connectionOptions")
+            .put("connectTimeoutMillis", 2000)
+            .put("responseTimeoutMillis", 10000)
+            .put("useTcpNoDelay", false)
+            .put("useKeepAlive", false)
+            .put("sendBufferSize", 65536)
+            .put("receiveBufferSize", 131072)
+            .put("maxMessageSize", 1048576);
+        connectionOptionsNode.putObject("responseTimeouts")
+            .put("search", 3000)
+            .put("modify", 5000);
+        ldapNode.set("readServers", ldapNode.get("servers"));
+        ldapNode.putObject("readConnectionOptions")
+            .put("useSynchronousMode", true);
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection(LdapOperationType.WRITE)) {
+            LDAPConnectionOptions options = lease.getConnection().getConnectionOptions();
+            assertEquals(2000, options.getConnectTimeoutMillis());
+            assertEquals(10000, options.getResponseTimeoutMillis());
+            assertFalse(options.useTCPNoDelay());
+            assertFalse(options.useKeepAlive());
+            assertEquals(65536, options.getSendBufferSize());
+            assertEquals(131072, options.getReceiveBufferSize());
+            assertEquals(1048576, options.getMaxMessageSize());
+            assertFalse(options.useSynchronousMode());
+        }
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection(LdapOperationType.READ)) {
+            LDAPConnectionOptions options = lease.getConnection().getConnectionOptions();
+            assertTrue(options.useSynchronousMode());
+            //Inherited from connectionOptions
+            assertEquals(2000, options.getConnectTimeoutMillis());
+            assertNotNull(lease.getConnection().getRootDSE());
+        }
+
+        LdapCrudSettings settings = configuration.getCrudSettings();
+        assertEquals(3000, settings.getResponseTimeoutMillis(OperationType.SEARCH));
+        assertEquals(5000, settings.getResponseTimeoutMillis(OperationType.MODIFY));
+        assertEquals(LdapCrudSettings.DEFAULT_OPERATION_TIMEOUT_MILLIS, settings.getResponseTimeoutMillis(OperationType.ADD));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitializeFromJson_UnknownResponseTimeoutOperation() throws IOException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.putObject("connectionOptions").putObject("responseTimeouts")
+            .put("fetch", 1000);
+
+        new LdapDataSourceConfiguration().initializeFromJson(ldapNode);
+    }
+
+    @Test
+    public void testInitializeFromJson_AsyncInitialization() throws Exception{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.put("asyncInitialization", true);
+        ldapNode.put("initialConnectThreads", 3);
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        assertTrue(configuration.awaitReady(10, TimeUnit.SECONDS));
+        assertTrue(configuration.isReady());
+        LDAPConnectionPool pool = configuration.getConnectionPool(LdapOperationType.WRITE);
+        assertEquals(5, pool.getCurrentAvailableConnections());
+        //The warm-up must never hold connections that requests could be waiting on.
+        assertEquals(0, pool.getConnectionPoolStatistics().getNumSuccessfulCheckouts());
+        assertEquals(5, configuration.getWarmUpConnectionsOpened(LdapOperationType.WRITE));
+
+        LdapDataSourceMXBean monitor = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                LdapDataSourceMonitor.createObjectName(configuration.getDatabaseName()), LdapDataSourceMXBean.class);
+        assertEquals(Long.valueOf(5), monitor.getConnectionPoolStatistics().get("connectionsCreated"));
+        assertEquals(Long.valueOf(5), monitor.getConnectionPoolStatistics().get("availableConnections"));
+        assertEquals(Long.valueOf(0), monitor.getConnectionPoolStatistics().get("checkedOutConnections"));
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection()) {
+            assertEquals(Long.valueOf(1), monitor.getConnectionPoolStatistics().get("checkedOutConnections"));
+        }
+        assertEquals(Long.valueOf(0), monitor.getConnectionPoolStatistics().get("checkedOutConnections"));
+        assertEquals(Long.valueOf(5), monitor.getConnectionPoolStatistics().get("connectionsCreated"));
+    }
+
+    @Test
+    public void testInitializeFromJson_AsyncInitialization_ServerDown() throws IOException, InterruptedException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.put("asyncInitialization", true);
+        ArrayNode readServers = ldapNode.putArray("readServers");
+        readServers.addObject()
+            .put("host", "localhost")
+            .put("port", 1);
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapNode);
+
+        assertFalse(configuration.awaitReady(500, TimeUnit.MILLISECONDS));
+        assertFalse(configuration.isReady());
+        configuration.getConnectionPool(LdapOperationType.READ).close();
+    }
+
+    @Test(expected = LdapConfigException.class)
+    public void testInitializeFromJson_ServerDown() throws IOException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ArrayNode servers = ldapNode.putArray("servers");
+        servers.addObject()
+            .put("host", "localhost")
+            .put("port", 1);
+
+        new LdapDataSourceConfiguration().initializeFromJson(ldapNode);
+    }
+
+    @Test
+    public void testInitializeFromJson_RegistersMBean() throws Exception{
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(loadJsonNode("./ldap-datasources.json").get("ldap"));
+        configuration.getOperationStatistics().recordOperation(CrudOperation.FIND, 1000000, 3, false);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = LdapDataSourceMonitor.createObjectName(configuration.getDatabaseName());
+        assertTrue(server.isRegistered(name));
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Ready"));
+
+        TabularData counts = (TabularData) server.getAttribute(name, "OperationCounts");
+        assertEquals(1L, counts.get(new Object[]{"find"}).get("value"));
+        TabularData pool = (TabularData) server.getAttribute(name, "ConnectionPoolStatistics");
+        assertEquals(5L, pool.get(new Object[]{"availableConnections"}).get("value"));
+
+        try (LdapConnectionLease lease = configuration.leaseLdapConnection(LdapOperationType.READ)) {
+            assertNotNull(lease.getConnection());
+        }
+
+        LdapDataSourceMXBean monitor = JMX.newMXBeanProxy(server, name, LdapDataSourceMXBean.class);
+        assertEquals(1, monitor.getConnectionPoolHits());
+        assertEquals(0, monitor.getConnectionPoolMisses());
+        //Reads share the write pool.
+        assertEquals(1, monitor.getReadConnectionPoolHits());
+        assertEquals(0, monitor.getReadConnectionPoolMisses());
+        assertTrue(monitor.getServerLatenciesMillis().isEmpty());
+        assertEquals(Long.valueOf(1), monitor.getOperationCounts().get("find"));
+        assertEquals(1, monitor.getLatencyPercentilesMillis("find").get("p50"), 0);
+        monitor.resetOperationStatistics();
+        assertEquals(0, configuration.getOperationStatistics().getCount(CrudOperation.FIND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitializeFromJson_UnknownServerSelection() throws IOException{
+        ObjectNode ldapNode = (ObjectNode) loadJsonNode("./ldap-datasources.json").get("ldap");
+        ldapNode.put("serverSelection", "random");
+
+        new LdapDataSourceConfiguration().initializeFromJson(ldapNode);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLeaseLdapConnection_NotInitialized() throws LDAPException{
+        new LdapDataSourceConfiguration().leaseLdapConnection();
     }
 
     @Test(expected = IllegalStateException.class)
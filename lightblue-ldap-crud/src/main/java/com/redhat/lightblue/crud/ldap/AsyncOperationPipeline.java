@@ -0,0 +1,375 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+
+/**
+ * Issues operations against a single {@link LDAPConnection} without waiting for
+ * each response before sending the next request, keeping at most a bounded number of
+ * operations in flight.<br>
+ * Every {@link ResultHandler} is invoked on the thread that submitted the operations,
+ * either while submitting further operations or from {@link #awaitCompletion()}, so
+ * handlers do not need to be thread safe.<br>
+ * If the connection is operating in synchronous mode, then each operation is executed
+ * in turn as it is submitted.
+ *
+ * @author dcrissman
+ */
+final class AsyncOperationPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncOperationPipeline.class);
+
+    /** Time allowed beyond the response timeout for the client library to report the timeout itself. */
+    private static final long TIMEOUT_GRACE_MILLIS = 1000;
+
+    private final LDAPConnection connection;
+    private final int maxInFlight;
+    private final Map<OperationType, Long> timeoutMillis;
+
+    private final BlockingQueue<PendingOperation> completed = new LinkedBlockingQueue<>();
+    private final Set<PendingOperation> inFlight = new LinkedHashSet<>();
+
+    private ResponseTimeListener responseTimeListener;
+
+    /**
+     * @param connection - {@link LDAPConnection} to issue operations on.
+     * @param maxInFlight - maximum number of operations awaiting a response at any one time.
+     * @param timeoutMillis - response timeout for each operation. If <code>0</code>, then the
+     * response timeout configured on the connection will be used.
+     */
+    AsyncOperationPipeline(LDAPConnection connection, int maxInFlight, long timeoutMillis) {
+        this(connection, maxInFlight, new EnumMap<OperationType, Long>(OperationType.class));
+        for (OperationType operationType : OperationType.values()) {
+            this.timeoutMillis.put(operationType, timeoutMillis);
+        }
+    }
+
+    /**
+     * @param connection - {@link LDAPConnection} to issue operations on.
+     * @param maxInFlight - maximum number of operations awaiting a response at any one time.
+     * @param timeoutMillis - response timeout for each {@link OperationType}. If a type is missing
+     * or <code>0</code>, then the response timeout configured on the connection will be used.
+     */
+    AsyncOperationPipeline(LDAPConnection connection, int maxInFlight, Map<OperationType, Long> timeoutMillis) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        this.connection = connection;
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = new EnumMap<>(OperationType.class);
+        this.timeoutMillis.putAll(timeoutMillis);
+    }
+
+    /**
+     * @param responseTimeListener - {@link ResponseTimeListener} to notify as each operation
+     * completes, or <code>null</code> for none.
+     */
+    void setResponseTimeListener(ResponseTimeListener responseTimeListener) {
+        this.responseTimeListener = responseTimeListener;
+    }
+
+    void add(AddRequest request, ResultHandler handler) {
+        submit(request, OperationType.ADD, request.getDN(), handler,
+                (AsyncResultListener listener) -> connection.asyncAdd(request, listener),
+                () -> connection.add(request));
+    }
+
+    void modify(ModifyRequest request, ResultHandler handler) {
+        submit(request, OperationType.MODIFY, request.getDN(), handler,
+                (AsyncResultListener listener) -> connection.asyncModify(request, listener),
+                () -> connection.modify(request));
+    }
+
+    void delete(DeleteRequest request, ResultHandler handler) {
+        submit(request, OperationType.DELETE, request.getDN(), handler,
+                (AsyncResultListener listener) -> connection.asyncDelete(request, listener),
+                () -> connection.delete(request));
+    }
+
+    /**
+     * Submits a search. Every entry is held until the search completes, so this is only
+     * intended for searches that return very few entries, such as base scoped reads. The
+     * entries are handed to the {@link SearchResultProcessor} before the {@link ResultHandler}
+     * is notified of success.
+     */
+    void search(SearchRequest request, SearchResultProcessor processor, ResultHandler handler) {
+        SearchEntryBuffer buffer = new SearchEntryBuffer();
+        SearchRequest bufferedRequest = SearchResultStreamer.copy(request, buffer);
+        submit(bufferedRequest, OperationType.SEARCH, request.getBaseDN(),
+                new ResultHandler() {
+
+                    @Override
+                    public void onSuccess(LDAPResult result) {
+                        for (SearchResultEntry entry : buffer.entries) {
+                            processor.process(entry);
+                        }
+                        handler.onSuccess(result);
+                    }
+
+                    @Override
+                    public void onFailure(LDAPException e) {
+                        handler.onFailure(e);
+                    }
+                },
+                (AsyncResultListener listener) -> {
+                    buffer.listener = listener;
+                    return connection.asyncSearch(bufferedRequest);
+                },
+                () -> connection.search(bufferedRequest));
+    }
+
+    /**
+     * @return the number of operations that have been submitted, but whose results have not
+     * yet been handed to their {@link ResultHandler}.
+     */
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Blocks until every submitted operation has been handed to its {@link ResultHandler}.
+     */
+    void awaitCompletion() {
+        while (!inFlight.isEmpty()) {
+            awaitOne();
+        }
+    }
+
+    private void submit(UpdatableLDAPRequest request, OperationType operationType, String dn, ResultHandler handler,
+            AsyncInvocation async, SyncInvocation sync) {
+        Long timeout = timeoutMillis.get(operationType);
+        if ((timeout != null) && (timeout > 0)) {
+            request.setResponseTimeoutMillis(timeout);
+        }
+
+        if (connection.synchronousMode()) {
+            long start = System.nanoTime();
+            LDAPResult result;
+            try {
+                result = sync.invoke();
+            } catch (LDAPException e) {
+                notifyResponseTime(operationType, dn, e.getResultCode(), System.nanoTime() - start);
+                handler.onFailure(e);
+                return;
+            }
+            notifyResponseTime(operationType, dn, result.getResultCode(), System.nanoTime() - start);
+            handler.onSuccess(result);
+            return;
+        }
+
+        while (inFlight.size() >= maxInFlight) {
+            awaitOne();
+        }
+
+        long responseTimeout = request.getResponseTimeoutMillis(connection);
+        PendingOperation operation = new PendingOperation(handler, operationType, dn,
+                (responseTimeout > 0) ? System.currentTimeMillis() + responseTimeout + TIMEOUT_GRACE_MILLIS : 0);
+        try {
+            operation.requestId = async.invoke(operation);
+        } catch (LDAPException e) {
+            handler.onFailure(e);
+            return;
+        }
+        inFlight.add(operation);
+
+        //Hand off anything that has already completed without blocking.
+        PendingOperation done;
+        while ((done = completed.poll()) != null) {
+            process(done);
+        }
+    }
+
+    private void awaitOne() {
+        PendingOperation oldest = inFlight.iterator().next();
+        try {
+            PendingOperation done;
+            if (oldest.deadline == 0) {
+                done = completed.take();
+            }
+            else {
+                done = completed.poll(Math.max(0, oldest.deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+
+            if (done == null) {
+                expire(oldest, new LDAPException(ResultCode.TIMEOUT, "No response received for request " + oldest.requestId));
+            }
+            else {
+                process(done);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (PendingOperation operation : new ArrayList<>(inFlight)) {
+                expire(operation, new LDAPException(ResultCode.CANCELED, "Interrupted while waiting for a response.", e));
+            }
+        }
+    }
+
+    private void process(PendingOperation operation) {
+        if (!inFlight.remove(operation)) {
+            //Already expired
+            return;
+        }
+
+        LDAPResult result = operation.result;
+        notifyResponseTime(operation.operationType, operation.dn, result.getResultCode(), operation.elapsedNanos);
+        if (ResultCode.SUCCESS.equals(result.getResultCode())) {
+            operation.handler.onSuccess(result);
+        }
+        else {
+            operation.handler.onFailure(new LDAPException(result));
+        }
+    }
+
+    private void expire(PendingOperation operation, LDAPException e) {
+        inFlight.remove(operation);
+        notifyResponseTime(operation.operationType, operation.dn, e.getResultCode(), System.nanoTime() - operation.startNanos);
+        try {
+            connection.abandon(operation.requestId);
+        } catch (LDAPException abandonException) {
+            LOGGER.debug("Unable to abandon request " + operation.requestId, abandonException);
+        }
+        operation.handler.onFailure(e);
+    }
+
+    private void notifyResponseTime(OperationType operationType, String dn, ResultCode resultCode, long elapsedNanos) {
+        if (responseTimeListener != null) {
+            responseTimeListener.responseReceived(operationType, dn, resultCode, elapsedNanos);
+        }
+    }
+
+    /**
+     * Receives the outcome of an operation submitted to the {@link AsyncOperationPipeline}.
+     */
+    interface ResultHandler {
+
+        void onSuccess(LDAPResult result);
+
+        /**
+         * @param e - {@link LDAPException} describing the failure. Unsuccessful results
+         * are also reported here, as they would be if the operation had been performed synchronously.
+         */
+        void onFailure(LDAPException e);
+
+    }
+
+    /**
+     * Receives the response time of each operation submitted to the {@link AsyncOperationPipeline},
+     * measured from when its request was sent until its result was received. Like the
+     * {@link ResultHandler}, it is invoked on the thread that submitted the operations.
+     */
+    interface ResponseTimeListener {
+
+        void responseReceived(OperationType operationType, String dn, ResultCode resultCode, long elapsedNanos);
+
+    }
+
+    private interface AsyncInvocation {
+        AsyncRequestID invoke(AsyncResultListener listener) throws LDAPException;
+    }
+
+    private interface SyncInvocation {
+        LDAPResult invoke() throws LDAPException;
+    }
+
+    /**
+     * Holds onto the entries returned by a search, handing the final result off to the
+     * {@link PendingOperation} once the search completes.
+     */
+    private static class SearchEntryBuffer implements AsyncSearchResultListener {
+
+        private static final long serialVersionUID = 4427046164962217085L;
+
+        private final List<SearchResultEntry> entries = new ArrayList<>();
+        private transient AsyncResultListener listener;
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            entries.add(searchEntry);
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+            //Search references are not followed.
+        }
+
+        @Override
+        public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+            listener.ldapResultReceived(requestID, searchResult);
+        }
+
+    }
+
+    private class PendingOperation implements AsyncResultListener {
+
+        private final ResultHandler handler;
+        private final OperationType operationType;
+        private final String dn;
+        private final long deadline;
+        private final long startNanos = System.nanoTime();
+        private AsyncRequestID requestId;
+        private volatile LDAPResult result;
+        private volatile long elapsedNanos;
+
+        PendingOperation(ResultHandler handler, OperationType operationType, String dn, long deadline) {
+            this.handler = handler;
+            this.operationType = operationType;
+            this.dn = dn;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void ldapResultReceived(AsyncRequestID requestID, LDAPResult ldapResult) {
+            //Timed here, on the connection reader, so that time waiting to be processed is not included.
+            elapsedNanos = System.nanoTime() - startNanos;
+            result = ldapResult;
+            completed.add(this);
+        }
+
+    }
+
+}
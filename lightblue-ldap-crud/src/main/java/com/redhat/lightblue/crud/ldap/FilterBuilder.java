@@ -19,15 +19,20 @@
 package com.redhat.lightblue.crud.ldap;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
 import com.redhat.lightblue.query.AllMatchExpression;
 import com.redhat.lightblue.query.ArrayContainsExpression;
 import com.redhat.lightblue.query.ArrayMatchExpression;
+import com.redhat.lightblue.query.BinaryComparisonOperator;
 import com.redhat.lightblue.query.FieldComparisonExpression;
 import com.redhat.lightblue.query.NaryFieldRelationalExpression;
 import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryRelationalOperator;
 import com.redhat.lightblue.query.NaryValueRelationalExpression;
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.QueryIteratorSkeleton;
@@ -55,6 +60,46 @@ public class FilterBuilder {
         return new FilterBuildingQueryIterator().iterate(query);
     }
 
+    /**
+     * Returns the values that the query pins the attribute to, when the query is nothing more
+     * than an <code>$eq</code> or <code>$in</code> comparison on that attribute.
+     * @param query - {@link QueryExpression}
+     * @param attributeName - name of the ldap attribute.
+     * @return the pinned values, or <code>null</code> if the query is of any other shape.
+     */
+    public List<String> getPinnedValues(QueryExpression query, String attributeName){
+        List<Value> values = null;
+        if(query instanceof ValueComparisonExpression){
+            ValueComparisonExpression comparison = (ValueComparisonExpression) query;
+            if(BinaryComparisonOperator._eq.equals(comparison.getOp()) && isAttribute(comparison.getField(), attributeName)){
+                values = Collections.singletonList(comparison.getRvalue());
+            }
+        }
+        else if(query instanceof NaryValueRelationalExpression){
+            NaryValueRelationalExpression comparison = (NaryValueRelationalExpression) query;
+            if(NaryRelationalOperator._in.equals(comparison.getOp()) && isAttribute(comparison.getField(), attributeName)){
+                values = comparison.getValues();
+            }
+        }
+
+        if(values == null){
+            return null;
+        }
+
+        Set<String> pinnedValues = new LinkedHashSet<>();
+        for(Value value : values){
+            if((value == null) || (value.getValue() == null)){
+                return null;
+            }
+            pinnedValues.add(value.getValue().toString());
+        }
+        return new ArrayList<>(pinnedValues);
+    }
+
+    private boolean isAttribute(Path field, String attributeName){
+        return fieldNameTranslator.translateFieldName(field).equalsIgnoreCase(attributeName);
+    }
+
     private class FilterBuildingQueryIterator extends QueryIteratorSkeleton<Filter> {
 
         @Override
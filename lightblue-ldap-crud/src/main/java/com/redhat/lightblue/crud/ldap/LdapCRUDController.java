@@ -20,20 +20,32 @@ package com.redhat.lightblue.crud.ldap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConnectionLease;
 import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapCrudSettings;
 import com.redhat.lightblue.common.ldap.LdapDataStore;
 import com.redhat.lightblue.common.ldap.LdapErrorCode;
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+import com.redhat.lightblue.common.ldap.LdapOperationType;
 import com.redhat.lightblue.common.ldap.LightblueUtil;
 import com.redhat.lightblue.crud.CRUDController;
 import com.redhat.lightblue.crud.CRUDDeleteResponse;
@@ -44,12 +56,19 @@ import com.redhat.lightblue.crud.CRUDSaveResponse;
 import com.redhat.lightblue.crud.CRUDUpdateResponse;
 import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.ldap.AsyncOperationPipeline.ResultHandler;
+import com.redhat.lightblue.crud.ldap.instrumentation.FindPhase;
+import com.redhat.lightblue.crud.ldap.instrumentation.FindPhaseTimingSink;
+import com.redhat.lightblue.crud.ldap.instrumentation.SlowOperationLog;
 import com.redhat.lightblue.crud.ldap.translator.EntryTranslatorFromJson;
 import com.redhat.lightblue.crud.ldap.translator.ModificationTranslatorFromJson;
+import com.redhat.lightblue.crud.ldap.translator.ResultTranslationPlan;
+import com.redhat.lightblue.crud.ldap.translator.ResultTranslationPlanCache;
 import com.redhat.lightblue.crud.ldap.translator.ResultTranslatorToJson;
 import com.redhat.lightblue.crud.ldap.translator.SortTranslator;
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
 import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.eval.Updater;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldCursor;
 import com.redhat.lightblue.metadata.MetadataConstants;
@@ -62,16 +81,27 @@ import com.redhat.lightblue.query.UpdateExpression;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.RDN;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
+import com.unboundid.ldap.sdk.controls.PostReadResponseControl;
 import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SubtreeDeleteRequestControl;
 import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
 
 /**
@@ -82,14 +112,49 @@ import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
 public class LdapCRUDController implements CRUDController {
 
     private final DBResolver dbResolver;
+    private final FindPhaseTimingSink findPhaseTimings;
+    private final SlowOperationLog slowOperationLog;
+    private final ResultTranslationPlanCache translationPlans = new ResultTranslationPlanCache();
 
     public LdapCRUDController(DBResolver dbResolver) {
+        this(dbResolver, null, null);
+    }
+
+    public LdapCRUDController(DBResolver dbResolver, FindPhaseTimingSink findPhaseTimings) {
+        this(dbResolver, findPhaseTimings, null);
+    }
+
+    /**
+     * @param dbResolver - {@link DBResolver}
+     * @param findPhaseTimings - {@link FindPhaseTimingSink} to report the time spent in each
+     * phase of a find to, or <code>null</code> to disable timing.
+     * @param slowOperationLog - {@link SlowOperationLog} to report slow searches and writes to, or
+     * <code>null</code> to disable logging them.
+     */
+    public LdapCRUDController(DBResolver dbResolver, FindPhaseTimingSink findPhaseTimings, SlowOperationLog slowOperationLog) {
         this.dbResolver = dbResolver;
+        this.findPhaseTimings = findPhaseTimings;
+        this.slowOperationLog = slowOperationLog;
+    }
+
+    /**
+     * @return the {@link FindPhaseTimingSink} that the phases of each find are reported to, or
+     * <code>null</code> if timing is disabled.
+     */
+    public FindPhaseTimingSink getFindPhaseTimingSink() {
+        return findPhaseTimings;
     }
 
     @Override
     public CRUDInsertionResponse insert(CRUDOperationContext ctx,
             Projection projection) {
+        return measure(ctx, CrudOperation.INSERT,
+                () -> doInsert(ctx, projection),
+                (CRUDInsertionResponse response) -> response.getNumInserted());
+    }
+
+    private CRUDInsertionResponse doInsert(CRUDOperationContext ctx,
+            Projection projection) {
         CRUDInsertionResponse response = new CRUDInsertionResponse();
         response.setNumInserted(0);
 
@@ -108,12 +173,23 @@ public class LdapCRUDController implements CRUDController {
         });
 
         //Persist each Entry.
-        LDAPConnection connection = getLdapConnection(store);
-        for (com.unboundid.ldap.sdk.Entry entry : entries) {
-            runInsert(connection, ctx, entry, (LDAPResult) -> response.setNumInserted(response.getNumInserted() + 1));
-        }
+        String[] postReadAttributes = getPostReadAttributes(md, projection);
+        Map<DN, SearchResultEntry> postReadEntries = new HashMap<>();
+        try (LdapConnectionLease lease = leaseLdapConnection(store, LdapOperationType.WRITE)) {
+            AsyncOperationPipeline pipeline = createPipeline(lease, store, ctx.getEntityName());
+            for (com.unboundid.ldap.sdk.Entry entry : entries) {
+                AddRequest addRequest = new AddRequest(entry);
+                addPostReadControl(addRequest, postReadAttributes);
+                pipeline.add(addRequest,
+                        createResultHandler(ctx, lease, (LDAPResult result) -> {
+                            response.setNumInserted(response.getNumInserted() + 1);
+                            capturePostRead(entry.getDN(), result, postReadEntries);
+                        }));
+            }
+            pipeline.awaitCompletion();
 
-        projectChanges(projection, ctx, documentToDnMap);
+            projectChanges(projection, ctx, documentToDnMap, postReadEntries, lease, store);
+        }
 
         return response;
     }
@@ -121,77 +197,246 @@ public class LdapCRUDController implements CRUDController {
     @Override
     public CRUDSaveResponse save(CRUDOperationContext ctx, boolean upsert,
             Projection projection) {
+        return measure(ctx, CrudOperation.SAVE,
+                () -> doSave(ctx, upsert, projection),
+                (CRUDSaveResponse response) -> response.getNumSaved());
+    }
+
+    private CRUDSaveResponse doSave(CRUDOperationContext ctx, boolean upsert,
+            Projection projection) {
         CRUDSaveResponse response = new CRUDSaveResponse();
         response.setNumSaved(0);
 
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
         LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
         LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
-        LDAPConnection connection = getLdapConnection(store);
 
         ModificationTranslatorFromJson modificationTranslator = new ModificationTranslatorFromJson(md, fieldNameTranslator);
         EntryTranslatorFromJson entryTranslator = new EntryTranslatorFromJson(md, fieldNameTranslator);
 
-        //Create Entry instances for each document.
         Map<String, DocCtx> documentToDnMap = new HashMap<>();
-        List<com.unboundid.ldap.sdk.Entry> entries = new ArrayList<>();
-        List<ModifyRequest> modifications = parseDocuments(ctx, fieldNameTranslator, (DocCtx document, String dn) -> {
+        List<String> dns = parseDocuments(ctx, fieldNameTranslator, (DocCtx document, String dn) -> {
             documentToDnMap.put(dn, document);
+            return dn;
+        });
 
-            SearchResultEntry entity = connection.getEntry(dn);
+        LdapCrudSettings settings = dbResolver.getSettings(store);
+        try (LdapConnectionLease lease = leaseLdapConnection(store, LdapOperationType.WRITE)) {
+            /*
+             * Determine which documents already exist. If only the differences are to be sent, then
+             * the current state of each entry is needed as well.
+             */
+            Map<DN, SearchResultEntry> existingEntries = findExistingEntries(lease, store, dns, documentToDnMap,
+                    settings.isDiffModifications() ? SearchRequest.ALL_USER_ATTRIBUTES : SearchRequest.NO_ATTRIBUTES);
+
+            //Create a ModifyRequest or Entry for each document, depending on whether it already exists.
+            List<ModifyRequest> modifications = new ArrayList<>();
+            List<com.unboundid.ldap.sdk.Entry> entries = new ArrayList<>();
+            for (String dn : dns) {
+                DocCtx document = documentToDnMap.get(dn);
+                if (document.hasErrors()) {
+                    continue;
+                }
 
-            if(entity != null){
-                return modificationTranslator.translate(document, dn);
+                try {
+                    SearchResultEntry existingEntry = existingEntries.get(new DN(dn));
+                    if (existingEntry != null) {
+                        ModifyRequest modifyRequest = settings.isDiffModifications()
+                                ? modificationTranslator.translate(document, dn, existingEntry)
+                                : modificationTranslator.translate(document, dn);
+                        if (modifyRequest == null) {
+                            //Nothing has changed, so there is nothing to send.
+                            response.setNumSaved(response.getNumSaved() + 1);
+                        }
+                        else {
+                            modifications.add(modifyRequest);
+                        }
+                    }
+                    else if (upsert) {
+                        //DNs that do not already exist, need to be created.
+                        entries.add(entryTranslator.translate(document, dn));
+                    }
+                    else {
+                        document.addError(Error.get(LdapErrorCode.ERR_LDAP_SAVE_ERROR_INS_WITH_NO_UPSERT, "New document, but upsert=false"));
+                    }
+                } catch (Error e) {
+                    document.addError(e);
+                } catch (Exception e) {
+                    document.addError(Error.get(e));
+                }
             }
-            else if(upsert){
-                //DNs that do not already exist, need to be created.
-                entries.add(entryTranslator.translate(document, dn));
+
+            //Persist each change as either an insert or a modify.
+            String[] postReadAttributes = getPostReadAttributes(md, projection);
+            Map<DN, SearchResultEntry> postReadEntries = new HashMap<>();
+            AsyncOperationPipeline pipeline = createPipeline(lease, store, ctx.getEntityName());
+            for (ModifyRequest modifyRequest : modifications) {
+                addPostReadControl(modifyRequest, postReadAttributes);
+                pipeline.modify(modifyRequest,
+                        createResultHandler(ctx, lease, (LDAPResult result) -> {
+                            response.setNumSaved(response.getNumSaved() + 1);
+                            capturePostRead(modifyRequest.getDN(), result, postReadEntries);
+                        }));
             }
-            else {
-                document.addError(Error.get(LdapErrorCode.ERR_LDAP_SAVE_ERROR_INS_WITH_NO_UPSERT, "New document, but upsert=false"));
+            pipeline.awaitCompletion();
+
+            for (com.unboundid.ldap.sdk.Entry entry : entries) {
+                AddRequest addRequest = new AddRequest(entry);
+                addPostReadControl(addRequest, postReadAttributes);
+                pipeline.add(addRequest,
+                        createResultHandler(ctx, lease, (LDAPResult result) -> {
+                            response.setNumSaved(response.getNumSaved() + 1);
+                            capturePostRead(entry.getDN(), result, postReadEntries);
+                        }));
             }
+            pipeline.awaitCompletion();
 
-            return null;
-        });
+            projectChanges(projection, ctx, documentToDnMap, postReadEntries, lease, store);
+        }
 
-        //Persist each change as either an insert or a modify.
-        for (ModifyRequest modifyRequest : modifications) {
-            execute(ctx, new ExecutionHandler() {
+        return response;
+    }
 
-                @Override
-                void onSuccess(LDAPResult result) {
-                    response.setNumSaved(response.getNumSaved() + 1);
-                }
+    @Override
+    public CRUDUpdateResponse update(CRUDOperationContext ctx,
+            QueryExpression query, UpdateExpression update,
+            Projection projection) {
+        return measure(ctx, CrudOperation.UPDATE,
+                () -> doUpdate(ctx, query, update, projection),
+                (CRUDUpdateResponse response) -> response.getNumUpdated());
+    }
 
-                @Override
-                LDAPResult execute() throws LDAPException {
-                    return connection.modify(modifyRequest);
+    private CRUDUpdateResponse doUpdate(CRUDOperationContext ctx,
+            QueryExpression query, UpdateExpression update,
+            Projection projection) {
+
+        if (query == null) {
+            throw new IllegalArgumentException("No query was provided.");
+        }
+        if (update == null) {
+            throw new IllegalArgumentException("No update was provided.");
+        }
+
+        CRUDUpdateResponse response = new CRUDUpdateResponse();
+        response.setNumMatched(0);
+        response.setNumUpdated(0);
+        response.setNumFailed(0);
+
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+        LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
+        JsonNodeFactory factory = ctx.getFactory().getNodeFactory();
+
+        Updater updater = Updater.getInstance(factory, md, update);
+        FieldAccessRoleEvaluator roles = new FieldAccessRoleEvaluator(md, ctx.getCallerRoles());
+        ResultTranslatorToJson resultTranslator = createResultTranslator(factory, md, fieldNameTranslator);
+        ModificationTranslatorFromJson modificationTranslator = new ModificationTranslatorFromJson(md, fieldNameTranslator);
+        Projector projector = (projection == null) ? null : Projector.getInstance(
+                Projection.add(
+                        projection,
+                        roles.getExcludedFields(FieldAccessRoleEvaluator.Operation.find)
+                        ),
+                md);
+
+        SearchRequest searchRequest = buildSearchRequest(store.getBaseDN(),
+                new FilterBuilder(fieldNameTranslator).build(query), SearchRequest.ALL_USER_ATTRIBUTES);
+
+        /*
+         * Each entry is updated and its modifications queued as it is streamed back from ldap. The
+         * modifies are sent on a separate connection so they are not stuck behind the search results.
+         * Documents are only retained if they are to be projected or have failed.
+         */
+        List<DocCtx> documents = new ArrayList<>();
+        try (LdapConnectionLease searchLease = leaseLdapConnection(store, LdapOperationType.WRITE);
+                LdapConnectionLease writeLease = leaseLdapConnection(store, LdapOperationType.WRITE)) {
+            AsyncOperationPipeline pipeline = createPipeline(writeLease, store, ctx.getEntityName());
+
+            runQuery(searchLease, store, md, query, searchRequest, ctx, (SearchResultEntry entry) -> {
+                response.setNumMatched(response.getNumMatched() + 1);
+
+                DocCtx document = new DocCtx(resultTranslator.translate(entry));
+                document.startModifications();
+                DocCtx outputDocument = document;
+
+                try {
+                    boolean updated = updater.update(document, md.getFieldTreeRoot(), Path.EMPTY);
+                    if (projector != null) {
+                        JsonDoc projected = projector.project(document, factory);
+                        outputDocument = new DocCtx(projected);
+                        outputDocument.setOutputDocument(projected);
+                        documents.add(outputDocument);
+                    }
+                    if (!updated) {
+                        return;
+                    }
+
+                    Set<Path> paths = roles.getInaccessibleFields_Update(document, document.getOriginalDocument());
+                    if ((paths != null) && !paths.isEmpty()) {
+                        failUpdate(response, documents, outputDocument != document, outputDocument,
+                                Error.get(CrudConstants.ERR_NO_FIELD_UPDATE_ACCESS, paths.toString()));
+                        return;
+                    }
+
+                    ModifyRequest modifyRequest = modificationTranslator.translate(document, entry.getDN(), entry, true);
+                    if (modifyRequest == null) {
+                        //Nothing has changed, so there is nothing to send.
+                        response.setNumUpdated(response.getNumUpdated() + 1);
+                        return;
+                    }
+
+                    DocCtx errorDocument = outputDocument;
+                    boolean retained = outputDocument != document;
+                    pipeline.modify(modifyRequest, new ResultHandler() {
+
+                        @Override
+                        public void onSuccess(LDAPResult result) {
+                            response.setNumUpdated(response.getNumUpdated() + 1);
+                        }
+
+                        @Override
+                        public void onFailure(LDAPException e) {
+                            writeLease.markDefunct(e);
+                            failUpdate(response, documents, retained, errorDocument,
+                                    Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+                        }
+                    });
+                } catch (Error e) {
+                    failUpdate(response, documents, outputDocument != document, outputDocument, e);
+                } catch (Exception e) {
+                    failUpdate(response, documents, outputDocument != document, outputDocument, Error.get(e));
                 }
             });
-        }
 
-        if (upsert && !entries.isEmpty()) {
-            for(com.unboundid.ldap.sdk.Entry entry : entries){
-                runInsert(connection, ctx, entry, (LDAPResult) -> response.setNumSaved(response.getNumSaved() + 1));
-            }
+            pipeline.awaitCompletion();
         }
 
-        projectChanges(projection, ctx, documentToDnMap);
+        ctx.setDocuments(documents);
 
         return response;
     }
 
-    @Override
-    public CRUDUpdateResponse update(CRUDOperationContext ctx,
-            QueryExpression query, UpdateExpression update,
-            Projection projection) {
-        // TODO Auto-generated method stub
-        return null;
+    /**
+     * Records a failed update against the document. If the document has not already been
+     * retained, then it is added to the documents so that the error is reported.
+     */
+    private void failUpdate(CRUDUpdateResponse response, List<DocCtx> documents, boolean retained, DocCtx document, Error error) {
+        document.addError(error);
+        if (!retained) {
+            documents.add(document);
+        }
+        response.setNumFailed(response.getNumFailed() + 1);
     }
 
     @Override
     public CRUDDeleteResponse delete(CRUDOperationContext ctx,
             QueryExpression query) {
+        return measure(ctx, CrudOperation.DELETE,
+                () -> doDelete(ctx, query),
+                (CRUDDeleteResponse response) -> response.getNumDeleted());
+    }
+
+    private CRUDDeleteResponse doDelete(CRUDOperationContext ctx,
+            QueryExpression query) {
 
         if (query == null) {
             throw new IllegalArgumentException("No query was provided.");
@@ -203,26 +448,80 @@ public class LdapCRUDController implements CRUDController {
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
         LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
 
-        SearchRequest searchRequest = buildSearchRequest(store.getBaseDN(), md, query, null, SearchRequest.NO_ATTRIBUTES);
+        SearchRequest searchRequest = buildSearchRequest(store.getBaseDN(),
+                new FilterBuilder(LdapCrudUtil.getLdapFieldNameTranslator(md)).build(query), null, SearchRequest.NO_ATTRIBUTES);
+        LdapCrudSettings settings = dbResolver.getSettings(store);
+
+        List<LdapConnectionLease> leases = new ArrayList<>();
+        try {
+            LdapConnectionLease searchLease = leaseLdapConnection(store, LdapOperationType.WRITE);
+            leases.add(searchLease);
+
+            /*
+             * Only the DNs are retained, the deletes cannot be issued on the connection
+             * until the search has completed.
+             */
+            List<String> dns = new ArrayList<>();
+            runQuery(searchLease, store, md, query, searchRequest, ctx,
+                    (SearchResultEntry entry) -> dns.add(entry.getDN()));
+
+            //Spread the deletes across several connections, each with its own pipeline.
+            List<AsyncOperationPipeline> pipelines = new ArrayList<>();
+            pipelines.add(createPipeline(searchLease, store, ctx.getEntityName()));
+            for (int i = 1; i < Math.min(settings.getDeleteConnections(), dns.size()); i++) {
+                LdapConnectionLease lease = leaseLdapConnection(store, LdapOperationType.WRITE);
+                leases.add(lease);
+                pipelines.add(createPipeline(lease, store, ctx.getEntityName()));
+            }
 
-        LDAPConnection connection = getLdapConnection(store);
+            List<DN> parsedDns = parseDns(ctx, dns);
+            Map<DN, Integer> subtrees = settings.isSubtreeDelete()
+                    ? findWholeSubtrees(searchLease, parsedDns)
+                    : Collections.<DN, Integer> emptyMap();
 
-        runSearch(connection, searchRequest, ctx,
-                (SearchResultEntry entry) -> {
-                    //LDAP only supports performing 1 delete at a time.
-                    execute(ctx, new ExecutionHandler() {
+            for (Map<DN, Integer> level : planDeletes(parsedDns, subtrees)) {
+                int next = 0;
+                for (Entry<DN, Integer> delete : level.entrySet()) {
+                    DN dn = delete.getKey();
+                    int numEntries = delete.getValue();
+
+                    DeleteRequest deleteRequest = new DeleteRequest(dn);
+                    if (subtrees.containsKey(dn)) {
+                        deleteRequest.addControl(new SubtreeDeleteRequestControl(true));
+                    }
+
+                    LdapConnectionLease lease = leases.get(next);
+                    pipelines.get(next).delete(deleteRequest, new ResultHandler() {
 
                         @Override
-                        void onSuccess(LDAPResult deleteResult) {
-                            deleteResponse.setNumDeleted(deleteResponse.getNumDeleted() + 1);
+                        public void onSuccess(LDAPResult result) {
+                            deleteResponse.setNumDeleted(deleteResponse.getNumDeleted() + numEntries);
                         }
 
                         @Override
-                        LDAPResult execute() throws LDAPException {
-                            return connection.delete(entry.getDN());
+                        public void onFailure(LDAPException e) {
+                            lease.markDefunct(e);
+                            Error.push(LdapConstant.ATTRIBUTE_DN + "=" + dn);
+                            try {
+                                ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+                            } finally {
+                                Error.pop();
+                            }
                         }
                     });
-                });
+                    next = (next + 1) % pipelines.size();
+                }
+
+                //Every entry in a level must be removed before its parents can be.
+                for (AsyncOperationPipeline pipeline : pipelines) {
+                    pipeline.awaitCompletion();
+                }
+            }
+        } finally {
+            for (LdapConnectionLease lease : leases) {
+                lease.close();
+            }
+        }
 
         return deleteResponse;
     }
@@ -231,6 +530,14 @@ public class LdapCRUDController implements CRUDController {
     public CRUDFindResponse find(CRUDOperationContext ctx,
             QueryExpression query, Projection projection, Sort sort, Long from,
             Long to) {
+        return measure(ctx, CrudOperation.FIND,
+                () -> doFind(ctx, query, projection, sort, from, to),
+                (CRUDFindResponse response) -> response.getSize());
+    }
+
+    private CRUDFindResponse doFind(CRUDOperationContext ctx,
+            QueryExpression query, Projection projection, Sort sort, Long from,
+            Long to) {
 
         if (query == null) {
             throw new IllegalArgumentException("No query was provided.");
@@ -245,15 +552,18 @@ public class LdapCRUDController implements CRUDController {
         CRUDFindResponse response = new CRUDFindResponse();
         response.setSize(0);
 
-        LDAPConnection connection = getLdapConnection(store);
+        String entityName = ctx.getEntityName();
+        long phaseStart = (findPhaseTimings == null) ? 0 : System.nanoTime();
 
         LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
 
-        SearchRequest searchRequest = buildSearchRequest(
-                store.getBaseDN(),
-                md,
-                query,
-                translateFieldNames(fieldNameTranslator, gatherRequiredFields(md, projection, query, sort)).toArray(new String[0]));
+        String[] attributes = translateFieldNames(fieldNameTranslator, gatherRequiredFields(md, projection, query, sort)).toArray(new String[0]);
+        phaseStart = recordFindPhase(entityName, FindPhase.GATHER_REQUIRED_FIELDS, phaseStart);
+
+        Filter filter = new FilterBuilder(fieldNameTranslator).build(query);
+        phaseStart = recordFindPhase(entityName, FindPhase.BUILD_FILTER, phaseStart);
+
+        SearchRequest searchRequest = buildSearchRequest(store.getBaseDN(), filter, attributes);
         if (sort != null) {
             searchRequest.addControl(new ServerSideSortRequestControl(false, new SortTranslator(fieldNameTranslator).translate(sort)));
         }
@@ -262,28 +572,51 @@ public class LdapCRUDController implements CRUDController {
             searchRequest.addControl(new VirtualListViewRequestControl(from.intValue(), 0, endPos, 0, null, false));
         }
 
-        ResultTranslatorToJson resultTranslator = new ResultTranslatorToJson(ctx.getFactory().getNodeFactory(), md, fieldNameTranslator);
-
-        List<DocCtx> translatedDocs = new ArrayList<>();
-        runSearch(connection, searchRequest, ctx, (SearchResultEntry entry) -> {
-            translatedDocs.add(new DocCtx(resultTranslator.translate(entry)));
-            response.setSize(response.getSize() + 1);
-        });
-
-        ctx.setDocuments(translatedDocs);
-
-        Projector projector = Projector.getInstance(
-                Projection.add(
-                        projection,
-                        new FieldAccessRoleEvaluator(
-                                md,
-                                ctx.getCallerRoles()).getExcludedFields(FieldAccessRoleEvaluator.Operation.find)
-                        ),
-                md);
-        for (DocCtx document : ctx.getDocumentsWithoutErrors()) {
-            document.setOutputDocument(projector.project(document, ctx.getFactory().getNodeFactory()));
+        JsonNodeFactory factory = ctx.getFactory().getNodeFactory();
+        Projection resolvedProjection = Projection.add(
+                projection,
+                new FieldAccessRoleEvaluator(
+                        md,
+                        ctx.getCallerRoles()).getExcludedFields(FieldAccessRoleEvaluator.Operation.find)
+                );
+
+        /*
+         * When the projection can be applied during translation, only the projected fields are
+         * translated and there is no need to run the projector over each document.
+         */
+        ResultTranslationPlan plan = translationPlans.get(md, fieldNameTranslator);
+        ResultTranslationPlan projectedPlan = plan.project(resolvedProjection, md);
+        ResultTranslatorToJson resultTranslator = new ResultTranslatorToJson(factory, (projectedPlan == null) ? plan : projectedPlan);
+        Projector projector = (projectedPlan == null) ? Projector.getInstance(resolvedProjection, md) : null;
+
+        /*
+         * Each entry is translated and projected as it is streamed back from ldap, only
+         * the projected document is retained.
+         */
+        List<DocCtx> documents = new ArrayList<>();
+        long[] entryProcessingNanos = new long[1];
+        try (LdapConnectionLease lease = leaseLdapConnection(store, LdapOperationType.READ)) {
+            long searchStart = (findPhaseTimings == null) ? 0 : System.nanoTime();
+            runQuery(lease, store, md, query, searchRequest, ctx, (SearchResultEntry entry) -> {
+                long entryStart = (findPhaseTimings == null) ? 0 : System.nanoTime();
+                JsonDoc translated = resultTranslator.translate(entry);
+                long projectStart = recordFindPhase(entityName, FindPhase.TRANSLATE, entryStart);
+                JsonDoc projected = (projector == null) ? translated : projector.project(translated, factory);
+                entryProcessingNanos[0] += recordFindPhase(entityName, FindPhase.PROJECT, projectStart) - entryStart;
+
+                DocCtx document = new DocCtx(projected);
+                document.setOutputDocument(projected);
+                documents.add(document);
+                response.setSize(response.getSize() + 1);
+            });
+            if (findPhaseTimings != null) {
+                //Entries are processed as they are streamed, so that time is not spent waiting on the search.
+                findPhaseTimings.record(entityName, FindPhase.SEARCH, System.nanoTime() - searchStart - entryProcessingNanos[0]);
+            }
         }
 
+        ctx.setDocuments(documents);
+
         return response;
     }
 
@@ -350,14 +683,68 @@ public class LdapCRUDController implements CRUDController {
         return attributes;
     }
 
+    /**
+     * Returns the attributes to request through the {@link PostReadRequestControl} so that the
+     * projection can be built from the response, or <code>null</code> if there is no need to
+     * read anything back from ldap.
+     * @param md - {@link EntityMetadata}
+     * @param projection - {@link Projection}, may be null.
+     * @return attributes required by the projection.
+     */
+    private String[] getPostReadAttributes(EntityMetadata md, Projection projection) {
+        if (projection == null) {
+            return null;
+        }
+
+        Set<String> requiredAttributeNames = translateFieldNames(
+                LdapCrudUtil.getLdapFieldNameTranslator(md), gatherRequiredFields(md, projection, null, null));
+        if (isOnlyDnRequired(requiredAttributeNames)) {
+            return null;
+        }
+        return requiredAttributeNames.toArray(new String[0]);
+    }
+
+    private static boolean isOnlyDnRequired(Set<String> requiredAttributeNames) {
+        return (requiredAttributeNames.size() == 1) && requiredAttributeNames.contains(LdapConstant.ATTRIBUTE_DN);
+    }
+
+    /**
+     * Attaches a non-critical {@link PostReadRequestControl} to the request, so that servers which
+     * do not support it will simply ignore it.
+     */
+    private static void addPostReadControl(UpdatableLDAPRequest request, String[] attributes) {
+        if (attributes != null) {
+            request.addControl(new PostReadRequestControl(false, attributes));
+        }
+    }
+
+    /**
+     * Retains the entry returned in the {@link PostReadResponseControl}, if there is one.
+     */
+    private static void capturePostRead(String dn, LDAPResult result, Map<DN, SearchResultEntry> postReadEntries) {
+        try {
+            PostReadResponseControl control = PostReadResponseControl.get(result);
+            if (control != null) {
+                postReadEntries.put(new DN(dn), new SearchResultEntry(control.getEntry(), new Control[0]));
+            }
+        } catch (LDAPException e) {
+            //The entry will be fetched with a search instead.
+        }
+    }
+
     /**
      * For Insert and Save (and possibly Update), this method will project the results back
-     * onto the documents.
+     * onto the documents. Entries returned through the {@link PostReadResponseControl} are used
+     * where available, any others are fetched with a batched search.
      * @param projection - {@link Projection} If null, then nothing will happen.
      * @param ctx - {@link CRUDOperationContext}
      * @param documentToDnMap - Map linking {@link DocCtx} to the DN that represents it.
+     * @param postReadEntries - Map of DNs to the entries returned by the post-read control.
+     * @param lease - {@link LdapConnectionLease} to search with.
+     * @param store - {@link LdapDataStore}
      */
-    private void projectChanges(Projection projection, CRUDOperationContext ctx, Map<String, DocCtx> documentToDnMap) {
+    private void projectChanges(Projection projection, CRUDOperationContext ctx, Map<String, DocCtx> documentToDnMap,
+            Map<DN, SearchResultEntry> postReadEntries, LdapConnectionLease lease, LdapDataStore store) {
         if (projection == null) {
             return;
         }
@@ -377,88 +764,492 @@ public class LdapCRUDController implements CRUDController {
                 md);
 
         Path dnFieldPath = fieldNameTranslator.translateAttributeName(LdapConstant.ATTRIBUTE_DN);
+        boolean onlyDnRequired = isOnlyDnRequired(requiredAttributeNames);
+
+        Map<DN, SearchResultEntry> entries = postReadEntries;
+        if (!onlyDnRequired) {
+            //Servers that do not support the post-read control need the entries fetched, do so in as few searches as possible.
+            List<String> missingDns = new ArrayList<>();
+            for (Entry<String, DocCtx> insertedDn : documentToDnMap.entrySet()) {
+                if (!insertedDn.getValue().hasErrors() && !containsDn(postReadEntries, insertedDn.getKey())) {
+                    missingDns.add(insertedDn.getKey());
+                }
+            }
+            if (!missingDns.isEmpty()) {
+                entries = new HashMap<>(postReadEntries);
+                entries.putAll(findExistingEntries(lease, store, missingDns, documentToDnMap,
+                        requiredAttributeNames.toArray(new String[0])));
+            }
+        }
 
+        ResultTranslatorToJson resultTranslator = createResultTranslator(factory, md, fieldNameTranslator);
         for (Entry<String, DocCtx> insertedDn : documentToDnMap.entrySet()) {
             String dn = insertedDn.getKey();
             DocCtx document = insertedDn.getValue();
-            DocCtx projectionResponseJson = null;
+            JsonDoc projectionResponseJson = null;
 
             // If only dn is in the projection, then no need to query LDAP.
-            if ((requiredAttributeNames.size() == 1) && requiredAttributeNames.contains(LdapConstant.ATTRIBUTE_DN)) {
-                JsonDoc jdoc = new JsonDoc(factory.objectNode());
-                jdoc.modify(dnFieldPath, StringType.TYPE.toJson(factory, dn), true);
-                projectionResponseJson = new DocCtx(jdoc);
+            if (onlyDnRequired) {
+                projectionResponseJson = new JsonDoc(factory.objectNode());
+                projectionResponseJson.modify(dnFieldPath, StringType.TYPE.toJson(factory, dn), true);
+            }
+            else {
+                SearchResultEntry entry = getEntry(entries, dn);
+                if (entry == null) {
+                    continue;
+                }
+                projectionResponseJson = resultTranslator.translate(entry);
             }
-            //TODO: else fetch entity from LDAP and project results.
-            //TODO: Probably want to batch fetch as opposed to individual fetches.
 
             document.setOutputDocument(projector.project(projectionResponseJson, factory));
         }
     }
 
+    private static boolean containsDn(Map<DN, SearchResultEntry> entries, String dn) {
+        return getEntry(entries, dn) != null;
+    }
+
+    private static SearchResultEntry getEntry(Map<DN, SearchResultEntry> entries, String dn) {
+        try {
+            return entries.get(new DN(dn));
+        } catch (LDAPException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reports the time since the phase started to the {@link FindPhaseTimingSink}, if there is one.
+     * @return the time the next phase starts, or <code>0</code> if timing is disabled.
+     */
+    private long recordFindPhase(String entityName, FindPhase phase, long phaseStart) {
+        if (findPhaseTimings == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        findPhaseTimings.record(entityName, phase, now - phaseStart);
+        return now;
+    }
+
     /**
-     * Returns a connection to ldap.
+     * Performs the CRUD operation, recording its latency, the number of entries it returned
+     * or changed and whether it reported any errors against the {@link LdapOperationStatistics}
+     * of the database.
+     */
+    private <T> T measure(CRUDOperationContext ctx, CrudOperation operation, Supplier<T> crudOperation, ToLongFunction<T> entries) {
+        LdapOperationStatistics statistics = dbResolver.getStatistics(
+                LdapCrudUtil.getLdapDataStore(ctx.getEntityMetadata(ctx.getEntityName())));
+        long start = System.nanoTime();
+        T response = null;
+        try {
+            response = crudOperation.get();
+            return response;
+        } finally {
+            statistics.recordOperation(operation, System.nanoTime() - start,
+                    (response == null) ? 0 : entries.applyAsLong(response),
+                    (response == null) || ctx.hasErrors() || ctx.hasDocumentErrors());
+        }
+    }
+
+    /**
+     * Leases a connection to ldap. The returned {@link LdapConnectionLease} must be closed
+     * when the operation is complete so that the connection is returned to the pool.<br>
+     * Only find leases connections for {@link LdapOperationType#READ}, any operation that
+     * changes data, including the searches it performs, uses {@link LdapOperationType#WRITE}
+     * so that it does not act on stale replicas.
      * @param store - {@link LdapDataStore} to connect too.
-     * @return a connection to ldap
+     * @param operationType - {@link LdapOperationType} the connection will be used for.
+     * @return a lease on a connection to ldap
      * @throws RuntimeException when unable to connect to ldap.
      */
-    private LDAPConnection getLdapConnection(LdapDataStore store) {
-        LDAPConnection connection = null;
+    private LdapConnectionLease leaseLdapConnection(LdapDataStore store, LdapOperationType operationType) {
         try {
-            connection = dbResolver.get(store);
+            return dbResolver.lease(store, operationType);
         } catch (LDAPException e) {
+            dbResolver.getStatistics(store).recordError(e.getResultCode());
             //TODO: throw more relevant exception.
             throw new RuntimeException("Unable to establish connection to LDAP", e);
         }
-        return connection;
     }
 
-    private static SearchRequest buildSearchRequest(String baseDn, EntityMetadata md, QueryExpression query, String... attributes) {
+    /**
+     * Creates a {@link ResultTranslatorToJson} that translates with the {@link ResultTranslationPlan}
+     * cached for the entity, so the plan is only compiled once per version of the entity.
+     */
+    private ResultTranslatorToJson createResultTranslator(JsonNodeFactory factory, EntityMetadata md, LdapFieldNameTranslator fieldNameTranslator) {
+        return new ResultTranslatorToJson(factory, translationPlans.get(md, fieldNameTranslator));
+    }
+
+    /**
+     * Builds the search for the entries matching a query. The {@link Filter} is built by the caller,
+     * so that find can time it separately.
+     */
+    private static SearchRequest buildSearchRequest(String baseDn, Filter filter, String... attributes) {
         //TODO: Support scopes other than SUB
-        return new SearchRequest(
-                baseDn,
-                SearchScope.SUB,
-                new FilterBuilder(LdapCrudUtil.getLdapFieldNameTranslator(md)).build(query),
-                attributes);
+        return new SearchRequest(baseDn, SearchScope.SUB, filter, attributes);
     }
 
-    private void runSearch(LDAPConnection connection, SearchRequest searchRequest, CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
-        execute(ctx, new ExecutionHandler() {
+    /**
+     * Runs the query. If the query does nothing more than pin the unique attribute or the dn to
+     * one or more values, then each entry is read directly with a base scoped search, and those
+     * searches are pipelined. Otherwise the search is executed as is.<br>
+     * Searches that exceed the threshold of the {@link SlowOperationLog} are logged, not counting
+     * the time the {@link SearchResultProcessor} spends on each entry.
+     * @see #runSearch(LdapConnectionLease, LdapDataStore, SearchRequest, CRUDOperationContext, SearchResultProcessor)
+     */
+    private void runQuery(LdapConnectionLease lease, LdapDataStore store, EntityMetadata md, QueryExpression query,
+            SearchRequest searchRequest, CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
+        //Ordering and paging controls cannot be applied across separate base scoped reads.
+        List<String> dns = (searchRequest.getControls().length == 0) ? getDirectLookupDns(store, md, query) : null;
 
-            @Override
-            void onSuccess(LDAPResult searchResult) {
-                for (SearchResultEntry entry : ((SearchResult) searchResult).getSearchEntries()) {
+        if (slowOperationLog == null) {
+            runQuery(lease, store, dns, searchRequest, ctx, searchRunner);
+            return;
+        }
+
+        //Entries, their size and the time spent processing them, which is not time spent on the search.
+        long[] received = new long[3];
+        long start = System.nanoTime();
+        try {
+            runQuery(lease, store, dns, searchRequest, ctx, (SearchResultEntry entry) -> {
+                received[0]++;
+                received[1] += SlowOperationLog.getSize(entry);
+                long processStart = System.nanoTime();
+                try {
                     searchRunner.process(entry);
+                } finally {
+                    received[2] += System.nanoTime() - processStart;
+                }
+            });
+        } finally {
+            slowOperationLog.record(ctx.getEntityName(), searchRequest, getPageSize(store),
+                    (dns == null) ? 0 : dns.size(), received[0], received[1],
+                    System.nanoTime() - start - received[2], received[2]);
+        }
+    }
+
+    /**
+     * Runs the search, or if DNs are provided, pipelines a base scoped read of each of them instead.
+     */
+    private void runQuery(LdapConnectionLease lease, LdapDataStore store, List<String> dns,
+            SearchRequest searchRequest, CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
+        if (dns == null) {
+            runSearch(lease, store, searchRequest, ctx, searchRunner);
+            return;
+        }
+
+        AsyncOperationPipeline pipeline = createPipeline(lease, store, ctx.getEntityName());
+        for (String dn : dns) {
+            SearchRequest lookupRequest = new SearchRequest(
+                    dn,
+                    SearchScope.BASE,
+                    searchRequest.getFilter(),
+                    searchRequest.getAttributes());
+            pipeline.search(lookupRequest, searchRunner, new ResultHandler() {
+
+                @Override
+                public void onSuccess(LDAPResult result) {
+                    //Entries have already been processed.
+                }
+
+                @Override
+                public void onFailure(LDAPException e) {
+                    if (!ResultCode.NO_SUCH_OBJECT.equals(e.getResultCode())) {
+                        lease.markDefunct(e);
+                        ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+                    }
                 }
+            });
+        }
+        pipeline.awaitCompletion();
+    }
+
+    /**
+     * Returns the DNs of the entries that the query is limited to, if it does nothing more than
+     * pin the unique attribute or the dn to one or more values.
+     * @param store - {@link LdapDataStore}
+     * @param md - {@link EntityMetadata}
+     * @param query - {@link QueryExpression}
+     * @return DNs to read directly, or <code>null</code> if the query must be searched for.
+     */
+    private List<String> getDirectLookupDns(LdapDataStore store, EntityMetadata md, QueryExpression query) {
+        FilterBuilder filterBuilder = new FilterBuilder(LdapCrudUtil.getLdapFieldNameTranslator(md));
+
+        List<String> uniqueValues = filterBuilder.getPinnedValues(query, store.getUniqueAttribute());
+        if (uniqueValues != null) {
+            List<String> dns = new ArrayList<>();
+            for (String uniqueValue : uniqueValues) {
+                dns.add(LdapCrudUtil.createDN(store, uniqueValue));
+            }
+            return dns;
+        }
+
+        List<String> dnValues = filterBuilder.getPinnedValues(query, LdapConstant.ATTRIBUTE_DN);
+        if (dnValues != null) {
+            //Only DNs within the base DN could have been found by the search.
+            List<String> dns = new ArrayList<>();
+            for (String dn : dnValues) {
+                try {
+                    if (DN.isDescendantOf(dn, store.getBaseDN(), true)) {
+                        dns.add(dn);
+                    }
+                } catch (LDAPException e) {
+                    //Not a valid DN, so it cannot match anything.
+                }
+            }
+            return dns;
+        }
+
+        return null;
+    }
+
+    /**
+     * Executes the search, streaming each {@link SearchResultEntry} to the {@link SearchResultProcessor}
+     * page by page.
+     * @see SearchResultStreamer
+     */
+    private void runSearch(LdapConnectionLease lease, LdapDataStore store, SearchRequest searchRequest, CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
+        LdapCrudSettings settings = dbResolver.getSettings(store);
+        int pageSize = getPageSize(store);
+        int windowSize = settings.getSearchWindowSize();
+        long timeoutMillis = settings.getResponseTimeoutMillis(OperationType.SEARCH);
+        if (timeoutMillis > 0) {
+            searchRequest.setResponseTimeoutMillis(timeoutMillis);
+        }
+
+        execute(ctx, lease, new ExecutionHandler() {
+
+            @Override
+            void onSuccess(LDAPResult searchResult) {
+                //Entries have already been processed.
             }
 
             @Override
-            SearchResult execute() throws LDAPException {
-                return connection.search(searchRequest);
+            SearchResult execute(LDAPConnection connection) throws LDAPException {
+                return SearchResultStreamer.streamPages(connection, searchRequest, pageSize, windowSize, searchRunner);
             }
         });
     }
 
-    private interface SearchResultProcessor {
-        void process(SearchResultEntry searchResultEntry);
+    /**
+     * @return the page size configured on the {@link LdapDataStore}, otherwise the page size of the database.
+     */
+    private int getPageSize(LdapDataStore store) {
+        return (store.getPageSize() != null) ? store.getPageSize() : dbResolver.getSettings(store).getPageSize();
+    }
+
+    /**
+     * Parses the DNs matched by a query, reporting any that cannot be parsed against the {@link CRUDOperationContext}.
+     */
+    private List<DN> parseDns(CRUDOperationContext ctx, List<String> dns) {
+        List<DN> parsedDns = new ArrayList<>(dns.size());
+        for (String dn : dns) {
+            try {
+                parsedDns.add(new DN(dn));
+            } catch (LDAPException e) {
+                Error.push(LdapConstant.ATTRIBUTE_DN + "=" + dn);
+                try {
+                    ctx.addError(Error.get(e));
+                } finally {
+                    Error.pop();
+                }
+            }
+        }
+        return parsedDns;
+    }
+
+    /**
+     * Finds the matched DNs whose entire subtree was matched by the query, and so can safely be
+     * deleted with a single {@link SubtreeDeleteRequestControl}. A matched DN with matched descendants
+     * is only a whole subtree if an unfiltered search beneath it returns no more entries than were
+     * matched, otherwise deleting the subtree would also remove entries the query did not match.
+     * @param lease - {@link LdapConnectionLease} to count the subtrees with.
+     * @param dns - DNs matched by the query.
+     * @return each subtree root mapped to the number of entries deleting it will remove.
+     */
+    private Map<DN, Integer> findWholeSubtrees(LdapConnectionLease lease, List<DN> dns) {
+        Set<DN> matched = new HashSet<>(dns);
+        Map<DN, Integer> matchedPerRoot = new LinkedHashMap<>();
+        for (DN dn : dns) {
+            DN root = dn;
+            for (DN parent = dn.getParent(); parent != null; parent = parent.getParent()) {
+                if (matched.contains(parent)) {
+                    root = parent;
+                }
+            }
+            Integer count = matchedPerRoot.get(root);
+            matchedPerRoot.put(root, (count == null) ? 1 : count + 1);
+        }
+
+        Map<DN, Integer> subtrees = new LinkedHashMap<>();
+        for (Entry<DN, Integer> root : matchedPerRoot.entrySet()) {
+            int numMatched = root.getValue();
+            //Without matched descendants, a plain delete removes the entry or fails if it is not a leaf.
+            if (numMatched < 2) {
+                continue;
+            }
+
+            SearchRequest countRequest = new SearchRequest(root.getKey().toString(), SearchScope.SUB,
+                    Filter.createPresenceFilter(LdapConstant.ATTRIBUTE_OBJECT_CLASS), SearchRequest.NO_ATTRIBUTES);
+            //Anything beyond what was matched means the subtree is not whole, so there is no need to read further.
+            countRequest.setSizeLimit(numMatched + 1);
+            try {
+                if (lease.getConnection().search(countRequest).getEntryCount() == numMatched) {
+                    subtrees.put(root.getKey(), numMatched);
+                }
+            } catch (LDAPException e) {
+                if (!ResultCode.SIZE_LIMIT_EXCEEDED.equals(e.getResultCode())) {
+                    lease.markDefunct(e);
+                }
+            }
+        }
+        return subtrees;
+    }
+
+    /**
+     * Orders the DNs to be deleted into levels, deepest first, so that children are always
+     * removed before their parents. Each DN is mapped to the number of matched entries that
+     * deleting it will remove.<br>
+     * Subtrees are deleted first, in a level of their own, and any DN beneath a subtree
+     * is dropped, as it will be removed along with the subtree.
+     * @param dns - DNs matched by the query.
+     * @param subtrees - subtree roots, as found by {@link #findWholeSubtrees(LdapConnectionLease, List)}.
+     * @return the levels of DNs to delete, in the order they should be deleted.
+     */
+    private List<Map<DN, Integer>> planDeletes(List<DN> dns, Map<DN, Integer> subtrees) {
+        TreeMap<Integer, Map<DN, Integer>> levels = new TreeMap<>(Collections.reverseOrder());
+        for (DN dn : dns) {
+            if (isInSubtree(dn, subtrees)) {
+                continue;
+            }
+            int depth = dn.getRDNs().length;
+            Map<DN, Integer> level = levels.get(depth);
+            if (level == null) {
+                level = new LinkedHashMap<>();
+                levels.put(depth, level);
+            }
+            level.put(dn, 1);
+        }
+
+        List<Map<DN, Integer>> plan = new ArrayList<>();
+        if (!subtrees.isEmpty()) {
+            plan.add(subtrees);
+        }
+        plan.addAll(levels.values());
+        return plan;
+    }
+
+    private static boolean isInSubtree(DN dn, Map<DN, Integer> subtrees) {
+        for (DN parent = dn; parent != null; parent = parent.getParent()) {
+            if (subtrees.containsKey(parent)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void runInsert(LDAPConnection connection, CRUDOperationContext ctx, com.unboundid.ldap.sdk.Entry entry, InsertResultProcessor processor) {
-        execute(ctx, new ExecutionHandler() {
+    /**
+     * Creates an {@link AsyncOperationPipeline} on the leased connection, using the settings
+     * for the {@link LdapDataStore}. Writes that exceed the threshold of the {@link SlowOperationLog}
+     * are logged against the entity.
+     */
+    private AsyncOperationPipeline createPipeline(LdapConnectionLease lease, LdapDataStore store, String entityName) {
+        LdapCrudSettings settings = dbResolver.getSettings(store);
+        Map<OperationType, Long> timeouts = new EnumMap<>(OperationType.class);
+        for (OperationType operationType : OperationType.values()) {
+            timeouts.put(operationType, settings.getResponseTimeoutMillis(operationType));
+        }
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(
+                lease.getConnection(),
+                settings.getMaxOperationsInFlight(),
+                timeouts);
+        if (slowOperationLog != null) {
+            pipeline.setResponseTimeListener((OperationType operationType, String dn, ResultCode resultCode, long elapsedNanos) -> {
+                //Pipelined searches are direct lookups, which are logged as part of their query.
+                if (operationType != OperationType.SEARCH) {
+                    slowOperationLog.recordWrite(entityName, operationType, dn, resultCode, elapsedNanos);
+                }
+            });
+        }
+        return pipeline;
+    }
+
+    /**
+     * Creates a {@link ResultHandler} for a pipelined operation that reports failures against
+     * the {@link CRUDOperationContext}.
+     */
+    private ResultHandler createResultHandler(CRUDOperationContext ctx, LdapConnectionLease lease, LdapResultProcessor processor) {
+        return new ResultHandler() {
 
             @Override
-            void onSuccess(LDAPResult insertResult) {
-                processor.process(insertResult);
+            public void onSuccess(LDAPResult result) {
+                processor.process(result);
             }
 
             @Override
-            LDAPResult execute() throws LDAPException {
-                return connection.add(entry);
+            public void onFailure(LDAPException e) {
+                lease.markDefunct(e);
+                ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
             }
-        });
+        };
+    }
+
+    /**
+     * Searches for which of the DNs already exist, using as few searches as possible. Each
+     * search is restricted to one level below the base DN. If a search fails, then each
+     * document in that batch will have the error added to it.
+     * @param lease - {@link LdapConnectionLease} to search with.
+     * @param store - {@link LdapDataStore}
+     * @param dns - DNs to look for.
+     * @param documentToDnMap - Map linking {@link DocCtx} to the DN that represents it.
+     * @param attributes - attributes to return for each entry, use {@link SearchRequest#NO_ATTRIBUTES}
+     * if only existence needs to be checked.
+     * @return Map of the DNs that exist to their entries.
+     */
+    private Map<DN, SearchResultEntry> findExistingEntries(LdapConnectionLease lease, LdapDataStore store, List<String> dns,
+            Map<String, DocCtx> documentToDnMap, String... attributes) {
+        LdapCrudSettings settings = dbResolver.getSettings(store);
+        int batchSize = settings.getLookupBatchSize();
+
+        Map<DN, SearchResultEntry> existingEntries = new HashMap<>();
+        Map<String, Filter> batch = new LinkedHashMap<>();
+        for (Iterator<String> iterator = dns.iterator(); iterator.hasNext();) {
+            String dn = iterator.next();
+            try {
+                RDN rdn = new DN(dn).getRDN();
+                batch.put(dn, Filter.createEqualityFilter(rdn.getAttributeNames()[0], rdn.getAttributeValues()[0]));
+            } catch (LDAPException e) {
+                documentToDnMap.get(dn).addError(Error.get(e));
+            }
+
+            if ((batch.size() >= batchSize) || (!iterator.hasNext() && !batch.isEmpty())) {
+                SearchRequest searchRequest = new SearchRequest(
+                        store.getBaseDN(),
+                        SearchScope.ONE,
+                        Filter.createORFilter(batch.values()),
+                        attributes);
+                try {
+                    List<SearchResultEntry> found = new ArrayList<>();
+                    SearchResultStreamer.stream(lease.getConnection(), searchRequest, settings.getSearchWindowSize(),
+                            (SearchResultEntry entry) -> found.add(entry));
+                    for (SearchResultEntry entry : found) {
+                        existingEntries.put(entry.getParsedDN(), entry);
+                    }
+                } catch (LDAPException e) {
+                    if (!ResultCode.NO_SUCH_OBJECT.equals(e.getResultCode())) {
+                        lease.markDefunct(e);
+                        for (String failedDn : batch.keySet()) {
+                            documentToDnMap.get(failedDn).addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        }
+
+        return existingEntries;
     }
 
-    private interface InsertResultProcessor {
+    private interface LdapResultProcessor {
         void process(LDAPResult result);
     }
 
@@ -510,9 +1301,9 @@ public class LdapCRUDController implements CRUDController {
         T process(DocCtx document, String dn) throws Exception;
     }
 
-    private void execute(CRUDOperationContext ctx, ExecutionHandler handler){
+    private void execute(CRUDOperationContext ctx, LdapConnectionLease lease, ExecutionHandler handler){
         try {
-            LDAPResult result = handler.execute();
+            LDAPResult result = handler.execute(lease.getConnection());
             if (ResultCode.SUCCESS.equals(result.getResultCode())) {
                 handler.onSuccess(result);
             } else {
@@ -521,13 +1312,14 @@ public class LdapCRUDController implements CRUDController {
                         result.getResultCode().toString()));
             }
         } catch (LDAPException e) {
+            lease.markDefunct(e);
             ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
         }
     }
 
     private abstract class ExecutionHandler {
 
-        abstract LDAPResult execute() throws LDAPException;
+        abstract LDAPResult execute(LDAPConnection connection) throws LDAPException;
 
         abstract void onSuccess(LDAPResult result);
 
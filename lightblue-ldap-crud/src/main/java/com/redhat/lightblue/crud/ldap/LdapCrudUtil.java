@@ -24,6 +24,7 @@ import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
 import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
 import com.redhat.lightblue.metadata.DataStore;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.unboundid.ldap.sdk.RDN;
 
 /**
  * Utility methods for LDAP CRUD operations.
@@ -69,14 +70,15 @@ public final class LdapCrudUtil {
     }
 
     /**
-     * Creates and returns a unique DN.
+     * Creates and returns a unique DN. The unique value is escaped, so it may safely contain
+     * characters that are special in a DN, such as <code>,</code> <code>+</code> <code>=</code> or <code>\</code>.
      * @param store - {@link LdapDataStore} to use as the BaseDN and field that
      * is used to represent uniqueness.
      * @param uniqueValue - value that makes the entity unique.
      * @return a string representation of the DN.
      */
     public static String createDN(LdapDataStore store, String uniqueValue){
-        return store.getUniqueAttribute() + "=" + uniqueValue + "," + store.getBaseDN();
+        return new RDN(store.getUniqueAttribute(), uniqueValue).toString() + "," + store.getBaseDN();
     }
 
     private LdapCrudUtil(){}
@@ -0,0 +1,286 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+
+/**
+ * Hands each {@link SearchResultEntry} of a search to a {@link SearchResultProcessor} as it
+ * arrives, rather than buffering the entire result set in a {@link SearchResult}. Once an
+ * entry has been processed it is no longer referenced, so the memory used by a search
+ * is bounded by the window size instead of by the number of matching entries.<br>
+ * When a window is used, the entries are processed on the calling thread while the
+ * connection reader waits for space in the window. Otherwise the entries are processed
+ * as they are read off the connection.
+ *
+ * @author dcrissman
+ */
+final class SearchResultStreamer {
+
+    private SearchResultStreamer() {}
+
+    /**
+     * Executes the {@link SearchRequest} one page at a time using the simple paged results
+     * control (RFC 2696), streaming the entries of each page to the {@link SearchResultProcessor}.
+     * Paging is skipped if the page size is <code>0</code>, or if the request already carries a
+     * {@link VirtualListViewRequestControl} or {@link SimplePagedResultsControl}. The paging control
+     * is not marked critical, so servers that do not support it will return everything in one page.
+     * @param connection - {@link LDAPConnection} to search against.
+     * @param searchRequest - {@link SearchRequest} to execute.
+     * @param pageSize - number of entries to request per page.
+     * @param windowSize - maximum number of entries received but not yet processed.
+     * @param processor - {@link SearchResultProcessor} to handle each entry.
+     * @return the {@link SearchResult} of the last page.
+     * @throws LDAPSearchException if any page does not complete successfully.
+     */
+    static SearchResult streamPages(LDAPConnection connection, SearchRequest searchRequest, int pageSize, int windowSize,
+            SearchResultProcessor processor) throws LDAPException {
+        if ((pageSize <= 0)
+                || searchRequest.hasControl(VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID)
+                || searchRequest.hasControl(SimplePagedResultsControl.PAGED_RESULTS_OID)) {
+            return stream(connection, searchRequest, windowSize, processor);
+        }
+
+        ASN1OctetString cookie = null;
+        SearchResult result;
+        do {
+            SearchRequest pageRequest = searchRequest.duplicate();
+            pageRequest.addControl(new SimplePagedResultsControl(pageSize, cookie, false));
+
+            result = stream(connection, pageRequest, windowSize, processor);
+
+            SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(result);
+            cookie = ((responseControl != null) && responseControl.moreResultsToReturn())
+                    ? responseControl.getCookie()
+                    : null;
+        } while (cookie != null);
+
+        return result;
+    }
+
+    /**
+     * Executes the {@link SearchRequest}, streaming the results to the {@link SearchResultProcessor}.
+     * @param connection - {@link LDAPConnection} to search against.
+     * @param searchRequest - {@link SearchRequest} to execute. Any {@link SearchResultListener} it
+     * already has will be ignored.
+     * @param windowSize - maximum number of entries received but not yet processed. <code>0</code>
+     * disables the window.
+     * @param processor - {@link SearchResultProcessor} to handle each entry.
+     * @return the {@link SearchResult}, which will not contain any entries.
+     * @throws LDAPSearchException if the search does not complete successfully.
+     */
+    static SearchResult stream(LDAPConnection connection, SearchRequest searchRequest, int windowSize,
+            SearchResultProcessor processor) throws LDAPException {
+        if ((windowSize <= 0) || connection.synchronousMode()) {
+            return streamInline(connection, searchRequest, processor);
+        }
+        return streamWindowed(connection, searchRequest, windowSize, processor);
+    }
+
+    private static SearchResult streamInline(LDAPConnection connection, SearchRequest searchRequest,
+            SearchResultProcessor processor) throws LDAPException {
+        InlineListener listener = new InlineListener(processor);
+        SearchResult result = connection.search(copy(searchRequest, listener));
+
+        if (listener.failure != null) {
+            throw listener.failure;
+        }
+        return result;
+    }
+
+    private static SearchResult streamWindowed(LDAPConnection connection, SearchRequest searchRequest, int windowSize,
+            SearchResultProcessor processor) throws LDAPException {
+        SearchResultWindow window = new SearchResultWindow(windowSize);
+        AsyncRequestID requestId = connection.asyncSearch(copy(searchRequest, window));
+
+        SearchResult result;
+        try {
+            result = window.drain(processor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(connection, requestId, window);
+            throw new LDAPSearchException(ResultCode.LOCAL_ERROR, "Interrupted while waiting for search results.", e);
+        } catch (RuntimeException e) {
+            abandon(connection, requestId, window);
+            throw e;
+        }
+
+        if (!ResultCode.SUCCESS.equals(result.getResultCode())) {
+            throw new LDAPSearchException(result);
+        }
+        return result;
+    }
+
+    private static void abandon(LDAPConnection connection, AsyncRequestID requestId, SearchResultWindow window) throws LDAPException {
+        window.close();
+        connection.abandon(requestId);
+    }
+
+    /**
+     * {@link SearchRequest} has no way to set the {@link SearchResultListener} after it has been
+     * constructed, so a copy must be made. The response timeout is not passed to the constructor,
+     * so it is carried over separately, otherwise the copy would fall back to that of the connection.
+     */
+    static SearchRequest copy(SearchRequest searchRequest, SearchResultListener listener) {
+        SearchRequest copy = new SearchRequest(
+                listener,
+                searchRequest.getControls(),
+                searchRequest.getBaseDN(),
+                searchRequest.getScope(),
+                searchRequest.getDereferencePolicy(),
+                searchRequest.getSizeLimit(),
+                searchRequest.getTimeLimitSeconds(),
+                searchRequest.typesOnly(),
+                searchRequest.getFilter(),
+                searchRequest.getAttributes());
+
+        //Without a connection, only a timeout set on the request itself is returned, otherwise -1.
+        long responseTimeout = searchRequest.getResponseTimeoutMillis(null);
+        if (responseTimeout >= 0) {
+            copy.setResponseTimeoutMillis(responseTimeout);
+        }
+        return copy;
+    }
+
+    /**
+     * Processes each entry on the thread that reads it. A failure while processing is
+     * held onto and rethrown once the search completes.
+     */
+    private static class InlineListener implements SearchResultListener {
+
+        private static final long serialVersionUID = 6152457004367587254L;
+
+        private final transient SearchResultProcessor processor;
+        private RuntimeException failure;
+
+        InlineListener(SearchResultProcessor processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                processor.process(searchEntry);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+            //Search references are not followed.
+        }
+
+    }
+
+    /**
+     * Bounded hand off between the connection reader and the thread processing the entries.
+     */
+    static class SearchResultWindow implements AsyncSearchResultListener {
+
+        private static final long serialVersionUID = -2071645520390418264L;
+
+        /** Marks the end of the search in the window. */
+        private static final SearchResultEntry END = new SearchResultEntry("", new Attribute[0]);
+        private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+        private final transient BlockingQueue<SearchResultEntry> entries;
+        private final AtomicReference<SearchResult> result = new AtomicReference<>();
+        private volatile boolean closed = false;
+
+        SearchResultWindow(int windowSize) {
+            entries = new ArrayBlockingQueue<>(windowSize);
+        }
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            if (result.get() == null) {
+                enqueue(searchEntry);
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+            //Search references are not followed.
+        }
+
+        @Override
+        public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+            if (result.compareAndSet(null, searchResult)) {
+                enqueue(END);
+            }
+        }
+
+        private void enqueue(SearchResultEntry entry) {
+            try {
+                while (!closed && !entries.offer(entry, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    //Window is full, wait for the processor to catch up.
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Processes entries as they become available until the search completes.
+         * @return the {@link SearchResult}
+         */
+        SearchResult drain(SearchResultProcessor processor) throws InterruptedException {
+            while (true) {
+                SearchResultEntry entry = entries.take();
+                if (entry == END) {
+                    return result.get();
+                }
+                processor.process(entry);
+            }
+        }
+
+        /**
+         * Stops accepting entries and discards any that have not yet been processed.
+         */
+        void close() {
+            closed = true;
+            entries.clear();
+        }
+
+    }
+
+}
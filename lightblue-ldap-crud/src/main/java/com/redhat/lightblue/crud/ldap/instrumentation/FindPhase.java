@@ -0,0 +1,39 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.instrumentation;
+
+/**
+ * The phases that a find is broken down into for timing purposes.
+ *
+ * @author dcrissman
+ */
+public enum FindPhase {
+
+    /** Working out which attributes need to be requested from ldap. */
+    GATHER_REQUIRED_FIELDS,
+    /** Translating the query into an ldap filter. */
+    BUILD_FILTER,
+    /** Waiting on the search, excluding the time spent processing each entry. */
+    SEARCH,
+    /** Translating each entry into a json document. */
+    TRANSLATE,
+    /** Projecting each json document, close to nothing when the projection is applied while translating. */
+    PROJECT
+
+}
@@ -0,0 +1,39 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.instrumentation;
+
+/**
+ * Receives the time spent in each {@link FindPhase} of a find. The {@link FindPhase#TRANSLATE}
+ * and {@link FindPhase#PROJECT} phases are reported once per entry, every other phase once per
+ * find.<br>
+ * Implementations are called on the request thread, so must be thread safe and should return
+ * quickly.
+ *
+ * @author dcrissman
+ */
+public interface FindPhaseTimingSink {
+
+    /**
+     * @param entityName - name of the entity being found.
+     * @param phase - {@link FindPhase}
+     * @param elapsedNanos - time spent in the phase.
+     */
+    void record(String entityName, FindPhase phase, long elapsedNanos);
+
+}
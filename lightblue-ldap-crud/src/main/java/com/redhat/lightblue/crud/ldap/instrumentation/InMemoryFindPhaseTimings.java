@@ -0,0 +1,91 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.instrumentation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.redhat.lightblue.common.ldap.LatencyHistogram;
+
+/**
+ * {@link FindPhaseTimingSink} that keeps a {@link LatencyHistogram} per {@link FindPhase}, both
+ * per entity and across all entities, so that they can be scraped.
+ *
+ * @author dcrissman
+ */
+public class InMemoryFindPhaseTimings implements FindPhaseTimingSink {
+
+    private final Map<FindPhase, LatencyHistogram> totals = createHistograms();
+    private final ConcurrentMap<String, Map<FindPhase, LatencyHistogram>> entities = new ConcurrentHashMap<>();
+
+    private static Map<FindPhase, LatencyHistogram> createHistograms() {
+        Map<FindPhase, LatencyHistogram> histograms = new EnumMap<>(FindPhase.class);
+        for (FindPhase phase : FindPhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    @Override
+    public void record(String entityName, FindPhase phase, long elapsedNanos) {
+        totals.get(phase).record(elapsedNanos);
+        if (entityName == null) {
+            return;
+        }
+        entities.computeIfAbsent(entityName, (String name) -> createHistograms()).get(phase).record(elapsedNanos);
+    }
+
+    /**
+     * @return the {@link LatencyHistogram} for the {@link FindPhase} across all entities.
+     */
+    public LatencyHistogram getHistogram(FindPhase phase) {
+        return totals.get(phase);
+    }
+
+    /**
+     * @return the {@link LatencyHistogram} for the {@link FindPhase} of the entity, or
+     * <code>null</code> if nothing has been recorded for the entity.
+     */
+    public LatencyHistogram getHistogram(String entityName, FindPhase phase) {
+        Map<FindPhase, LatencyHistogram> histograms = entities.get(entityName);
+        return (histograms == null) ? null : histograms.get(phase);
+    }
+
+    /**
+     * @return the names of the entities that timings have been recorded for.
+     */
+    public Set<String> getEntityNames() {
+        return new TreeSet<>(entities.keySet());
+    }
+
+    /**
+     * Clears everything that has been recorded.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : totals.values()) {
+            histogram.reset();
+        }
+        entities.clear();
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+
+/**
+ * Logs the ldap searches and writes that take longer than a threshold, so that the operations
+ * that are expensive for the directory can be identified.<br>
+ * Each record is written as a single line of <code>key=value</code> pairs. A search record contains
+ * the entity, base DN, scope, filter, requested attributes, attached controls, number of entries
+ * returned, bytes received, elapsed time and the time spent processing the entries, which is not
+ * part of the elapsed time. A write record contains the entity, operation, DN, result code and
+ * elapsed time. At most <code>maxRecordsPerSecond</code> records are written, any beyond that are
+ * dropped and counted in the <code>suppressed</code> key of the next record that is written.
+ *
+ * @author dcrissman
+ */
+public class SlowOperationLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowOperationLog.class);
+
+    public static final int DEFAULT_MAX_RECORDS_PER_SECOND = 10;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final long thresholdNanos;
+    private final int maxRecordsPerSecond;
+
+    private final AtomicLong currentSecond = new AtomicLong();
+    private final AtomicInteger recordsThisSecond = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public SlowOperationLog(long thresholdMillis) {
+        this(thresholdMillis, DEFAULT_MAX_RECORDS_PER_SECOND);
+    }
+
+    /**
+     * @param thresholdMillis - searches that take at least this long are logged.
+     * @param maxRecordsPerSecond - maximum number of records to write each second.
+     */
+    public SlowOperationLog(long thresholdMillis, int maxRecordsPerSecond) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("thresholdMillis cannot be negative: " + thresholdMillis);
+        }
+        if (maxRecordsPerSecond < 1) {
+            throw new IllegalArgumentException("maxRecordsPerSecond must be at least 1: " + maxRecordsPerSecond);
+        }
+        this.thresholdNanos = thresholdMillis * 1000000L;
+        this.maxRecordsPerSecond = maxRecordsPerSecond;
+    }
+
+    /**
+     * @return <code>true</code> if an operation that took the elapsed time should be logged,
+     * otherwise <code>false</code>.
+     */
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /**
+     * @return the number of slow operations that have been dropped by the rate limit and not
+     * yet reported in a record.
+     */
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * Logs the search if it is slow, and the rate limit allows it.
+     * @param entityName - name of the entity that was searched for.
+     * @param searchRequest - the {@link SearchRequest} that was executed.
+     * @param pageSize - number of entries requested per page, or <code>0</code> if the search was not paged.
+     * @param lookups - number of base scoped reads the search was replaced by, or <code>0</code>
+     * if the search was executed as is.
+     * @param entries - number of entries returned.
+     * @param bytesReceived - size of the entries returned.
+     * @param elapsedNanos - time the search took.
+     */
+    public void record(String entityName, SearchRequest searchRequest, int pageSize, int lookups,
+            long entries, long bytesReceived, long elapsedNanos) {
+        record(entityName, searchRequest, pageSize, lookups, entries, bytesReceived, elapsedNanos, 0);
+    }
+
+    /**
+     * Logs the search if it is slow, and the rate limit allows it.
+     * @param entityName - name of the entity that was searched for.
+     * @param searchRequest - the {@link SearchRequest} that was executed.
+     * @param pageSize - number of entries requested per page, or <code>0</code> if the search was not paged.
+     * @param lookups - number of base scoped reads the search was replaced by, or <code>0</code>
+     * if the search was executed as is.
+     * @param entries - number of entries returned.
+     * @param bytesReceived - size of the entries returned.
+     * @param elapsedNanos - time the search took, excluding the time spent processing the entries.
+     * @param processingNanos - time spent processing the entries as they were received.
+     */
+    public void record(String entityName, SearchRequest searchRequest, int pageSize, int lookups,
+            long entries, long bytesReceived, long elapsedNanos, long processingNanos) {
+        if (!isSlow(elapsedNanos) || !tryRecord()) {
+            return;
+        }
+
+        StringBuilder record = new StringBuilder("slow ldap search:");
+        append(record, "entity", entityName);
+        append(record, "baseDN", searchRequest.getBaseDN());
+        append(record, "scope", ((lookups > 0) ? SearchScope.BASE : searchRequest.getScope()).getName().toLowerCase());
+        append(record, "filter", searchRequest.getFilter().toString());
+        append(record, "attributes", String.join(",", searchRequest.getAttributeList()));
+        append(record, "controls", String.join(",", describeControls(searchRequest, pageSize, lookups)));
+        if (lookups > 0) {
+            append(record, "lookups", String.valueOf(lookups));
+        }
+        append(record, "entries", String.valueOf(entries));
+        append(record, "bytesReceived", String.valueOf(bytesReceived));
+        append(record, "elapsedMillis", toMillis(elapsedNanos));
+        append(record, "processingMillis", toMillis(processingNanos));
+        append(record, "suppressed", String.valueOf(suppressed.getAndSet(0)));
+
+        write(record.toString());
+    }
+
+    /**
+     * Logs the write if it is slow, and the rate limit allows it.
+     * @param entityName - name of the entity that was written.
+     * @param operationType - the kind of write, ie. {@link OperationType#MODIFY}.
+     * @param dn - DN of the entry that was written.
+     * @param resultCode - {@link ResultCode} of the write.
+     * @param elapsedNanos - time from sending the request until its result was received.
+     */
+    public void recordWrite(String entityName, OperationType operationType, String dn, ResultCode resultCode,
+            long elapsedNanos) {
+        if (!isSlow(elapsedNanos) || !tryRecord()) {
+            return;
+        }
+
+        StringBuilder record = new StringBuilder("slow ldap write:");
+        append(record, "entity", entityName);
+        append(record, "operation", operationType.name().toLowerCase());
+        append(record, "dn", dn);
+        append(record, "result", resultCode.getName());
+        append(record, "elapsedMillis", toMillis(elapsedNanos));
+        append(record, "suppressed", String.valueOf(suppressed.getAndSet(0)));
+
+        write(record.toString());
+    }
+
+    /**
+     * Writes the record to the log.
+     */
+    protected void write(String record) {
+        LOGGER.warn(record);
+    }
+
+    /**
+     * @return <code>true</code> if the rate limit allows a record to be written, otherwise the
+     * record is counted as suppressed and <code>false</code> is returned.
+     */
+    private boolean tryRecord() {
+        if (tryAcquire()) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.3f", nanos / 1000000.0);
+    }
+
+    /**
+     * Allows up to <code>maxRecordsPerSecond</code> records within each second. The counter
+     * is reset by whichever thread first notices that a new second has started.
+     */
+    private boolean tryAcquire() {
+        long second = System.nanoTime() / NANOS_PER_SECOND;
+        long previous = currentSecond.get();
+        if ((second != previous) && currentSecond.compareAndSet(previous, second)) {
+            recordsThisSecond.set(0);
+        }
+        return recordsThisSecond.incrementAndGet() <= maxRecordsPerSecond;
+    }
+
+    /**
+     * @return the size in bytes of the DN and attribute values of the entry.
+     */
+    public static long getSize(SearchResultEntry entry) {
+        long size = entry.getDN().length();
+        for (Attribute attribute : entry.getAttributes()) {
+            size += attribute.getName().length();
+            for (byte[] value : attribute.getValueByteArrays()) {
+                size += value.length;
+            }
+        }
+        return size;
+    }
+
+    private static List<String> describeControls(SearchRequest searchRequest, int pageSize, int lookups) {
+        List<String> descriptions = new ArrayList<>();
+        boolean paged = (pageSize > 0) && (lookups == 0);
+        for (Control control : searchRequest.getControls()) {
+            if (control instanceof ServerSideSortRequestControl) {
+                StringBuilder sort = new StringBuilder("sort(");
+                SortKey[] sortKeys = ((ServerSideSortRequestControl) control).getSortKeys();
+                for (int x = 0; x < sortKeys.length; x++) {
+                    if (x > 0) {
+                        sort.append(' ');
+                    }
+                    sort.append(sortKeys[x].reverseOrder() ? '-' : '+').append(sortKeys[x].getAttributeName());
+                }
+                descriptions.add(sort.append(')').toString());
+            }
+            else if (control instanceof VirtualListViewRequestControl) {
+                VirtualListViewRequestControl vlv = (VirtualListViewRequestControl) control;
+                descriptions.add("vlv(offset=" + vlv.getTargetOffset()
+                        + " before=" + vlv.getBeforeCount()
+                        + " after=" + vlv.getAfterCount() + ")");
+                paged = false;
+            }
+            else if (control instanceof SimplePagedResultsControl) {
+                descriptions.add("paging(size=" + ((SimplePagedResultsControl) control).getSize() + ")");
+                paged = false;
+            }
+            else {
+                descriptions.add(control.getOID());
+            }
+        }
+        if (paged) {
+            descriptions.add("paging(size=" + pageSize + ")");
+        }
+        return descriptions;
+    }
+
+    private static void append(StringBuilder record, String key, String value) {
+        record.append(' ').append(key).append('=');
+        if ((value == null) || value.isEmpty()) {
+            record.append('-');
+        }
+        else if (needsQuoting(value)) {
+            record.append('"');
+            for (char c : value.toCharArray()) {
+                if ((c == '"') || (c == '\\')) {
+                    record.append('\\');
+                }
+                record.append(c);
+            }
+            record.append('"');
+        }
+        else {
+            record.append(value);
+        }
+    }
+
+    private static boolean needsQuoting(String value) {
+        for (char c : value.toCharArray()) {
+            if (Character.isWhitespace(c) || (c == '"') || (c == '\\') || (c == '=')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
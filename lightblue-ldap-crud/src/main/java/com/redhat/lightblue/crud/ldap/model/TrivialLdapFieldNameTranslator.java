@@ -39,4 +39,20 @@ public class TrivialLdapFieldNameTranslator implements LdapFieldNameTranslator{
         return new Path(attributeName);
     }
 
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    /**
+     * Stateless, so every instance translates the same way.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return (obj != null) && (getClass() == obj.getClass());
+    }
+
 }
@@ -3,6 +3,7 @@ package com.redhat.lightblue.crud.ldap.translator;
 import java.util.Date;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.redhat.lightblue.common.ldap.LdapErrorCode;
 import com.redhat.lightblue.metadata.ArrayField;
 import com.redhat.lightblue.metadata.EntityMetadata;
@@ -27,7 +28,10 @@ public abstract class LdapTranslatorFromJson<T> extends NonPersistedPredefinedFi
 
     @Override
     protected Object fromJson(Type type, JsonNode node){
-        if(type instanceof DateType){
+        if (node == null || node instanceof NullNode) {
+            return null;
+        }
+        else if(type instanceof DateType){
             return StaticUtils.encodeGeneralizedTime((Date)type.fromJson(node));
         }
         else if(type instanceof BinaryType){
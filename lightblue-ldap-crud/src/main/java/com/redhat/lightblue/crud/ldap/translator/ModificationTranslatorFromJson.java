@@ -1,31 +1,63 @@
 package com.redhat.lightblue.crud.ldap.translator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.redhat.lightblue.common.ldap.LdapConstant;
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.common.ldap.LightblueUtil;
 import com.redhat.lightblue.metadata.ArrayElement;
 import com.redhat.lightblue.metadata.ArrayField;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.SimpleField;
 import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.metadata.types.BinaryType;
+import com.redhat.lightblue.metadata.types.DateType;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Path;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.GeneralizedTimeMatchingRule;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.matchingrules.OctetStringMatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.Modification;
 import com.unboundid.ldap.sdk.ModificationType;
 import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.util.StaticUtils;
 
+/**
+ * Translates Lightblue json into a {@link ModifyRequest} for LDAP interaction.<br>
+ * By default every field in the document replaces the existing attribute. If the current
+ * state of the entry is provided, then only the differences are sent: unchanged attributes
+ * are skipped, and multi-valued attributes are updated by adding and deleting individual values.
+ *
+ * @author dcrissman
+ */
 public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<Modification>> {
 
     private final LdapFieldNameTranslator fieldNameTranslator;
     private final Set<Path> modifiedPaths = new HashSet<>();
 
+    /** Current state of the entry being translated, or <code>null</code> if it is not known. */
+    private Entry currentEntry;
+    /** Lower cased names of the attributes compared against the current entry. */
+    private final Set<String> comparedAttributes = new HashSet<>();
+    /** Lower cased names of the attributes that are mapped to fields of the entity. */
+    private Set<String> entityAttributes;
+
     public ModificationTranslatorFromJson(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator) {
         super(entityMetadata);
         this.fieldNameTranslator = fieldNameTranslator;
@@ -40,6 +72,81 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
         }
     }
 
+    /**
+     * Translates the {@link JsonDoc} into a {@link ModifyRequest} containing only the modifications
+     * needed to bring the current entry in line with the document. Values are compared using the
+     * equality matching rule of the attribute, see {@link #selectMatchingRule(Attribute, Type)}.
+     * @param document - {@link JsonDoc} to translate.
+     * @param dn - DN of the entry.
+     * @param currentEntry - the current state of the entry.
+     * @return {@link ModifyRequest}, or <code>null</code> if nothing has changed.
+     */
+    public ModifyRequest translate(JsonDoc document, String dn, Entry currentEntry) {
+        return translate(document, dn, currentEntry, false);
+    }
+
+    /**
+     * Translates the {@link JsonDoc} into a {@link ModifyRequest} containing only the modifications
+     * needed to bring the current entry in line with the document. Values are compared using the
+     * equality matching rule of the attribute, see {@link #selectMatchingRule(Attribute, Type)}.
+     * @param document - {@link JsonDoc} to translate.
+     * @param dn - DN of the entry.
+     * @param currentEntry - the current state of the entry.
+     * @param removeMissingAttributes - if <code>true</code>, then attributes on the current entry that
+     * map to a field of the entity, but are not present in the document, will be deleted.
+     * @return {@link ModifyRequest}, or <code>null</code> if nothing has changed.
+     */
+    public ModifyRequest translate(JsonDoc document, String dn, Entry currentEntry, boolean removeMissingAttributes) {
+        if (currentEntry == null) {
+            return translate(document, dn);
+        }
+
+        Error.push(LdapConstant.ATTRIBUTE_DN + "=" + dn);
+        this.currentEntry = currentEntry;
+        try {
+            List<Modification> modifications = translate(document);
+            if (removeMissingAttributes) {
+                for (Attribute attribute : currentEntry.getAttributes()) {
+                    String attributeName = attribute.getName().toLowerCase();
+                    if (!comparedAttributes.contains(attributeName) && getEntityAttributes().contains(attributeName)) {
+                        modifications.add(new Modification(ModificationType.DELETE, attribute.getName()));
+                    }
+                }
+            }
+
+            if (modifications.isEmpty()) {
+                return null;
+            }
+            return new ModifyRequest(dn, modifications);
+        } finally {
+            this.currentEntry = null;
+            comparedAttributes.clear();
+            Error.pop();
+        }
+    }
+
+    private Set<String> getEntityAttributes() {
+        if (entityAttributes == null) {
+            entityAttributes = new HashSet<>();
+            FieldCursor cursor = entityMetadata.getFieldCursor();
+            while (cursor.next()) {
+                FieldTreeNode node = cursor.getCurrentNode();
+                String fieldName = cursor.getCurrentPath().getLast();
+                if (!((node instanceof SimpleField) || (node instanceof ArrayField))
+                        || LightblueUtil.isFieldObjectType(fieldName)
+                        || LightblueUtil.isFieldAnArrayCount(fieldName, entityMetadata.getFields())) {
+                    continue;
+                }
+
+                String attributeName = fieldNameTranslator.translateFieldName(cursor.getCurrentPath());
+                if (!LdapConstant.ATTRIBUTE_DN.equalsIgnoreCase(attributeName)) {
+                    entityAttributes.add(attributeName.toLowerCase());
+                }
+            }
+        }
+        return entityAttributes;
+    }
+
     private List<Modification> translate(JsonDoc document) {
         List<Modification> modifications = new ArrayList<>();
         translate(document, modifications);
@@ -52,7 +159,13 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
 
         Type type = field.getType();
         Object o = fromJson(type, node);
-        if(type instanceof BinaryType) {
+        if (currentEntry != null) {
+            if (!LdapConstant.ATTRIBUTE_DN.equalsIgnoreCase(attributeName)) {
+                //The DN cannot be changed by a modify.
+                diff(attributeName, type, (o == null) ? Collections.<byte[]>emptyList() : Collections.singletonList(toBytes(o)), target);
+            }
+        }
+        else if(type instanceof BinaryType) {
             target.add(new Modification(ModificationType.REPLACE, attributeName, (byte[])o));
         } else {
             target.add(new Modification(ModificationType.REPLACE, attributeName, o.toString()));
@@ -67,7 +180,16 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
         Type arrayElementType = arrayElement.getType();
         String attributeName = fieldNameTranslator.translateFieldName(field.getFullPath());
 
-        if(arrayElementType instanceof BinaryType){
+        if (currentEntry != null) {
+            List<byte[]> values = new ArrayList<>();
+            for(Object item : items){
+                if (item != null) {
+                    values.add(toBytes(item));
+                }
+            }
+            diff(attributeName, arrayElementType, values, target);
+        }
+        else if(arrayElementType instanceof BinaryType){
             List<byte[]> bytes = new ArrayList<>();
             for(Object item : items){
                 bytes.add((byte[])item);
@@ -85,4 +207,106 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
         modifiedPaths.add(field.getFullPath());
     }
 
+    /**
+     * Compares the new values for an attribute against the values on the current entry, and adds
+     * the modifications needed to reconcile them, if any.<br>
+     * If the attribute does not currently exist, then the values are added. If most of the values have
+     * changed, then the attribute is replaced as that is smaller than listing each added and deleted value.
+     * Otherwise the removed values are deleted and the new values are added.
+     */
+    private void diff(String attributeName, Type type, List<byte[]> newValues, List<Modification> target) {
+        comparedAttributes.add(attributeName.toLowerCase());
+
+        Attribute currentAttribute = currentEntry.getAttribute(attributeName);
+        if ((currentAttribute == null) || !currentAttribute.hasValue()) {
+            if (!newValues.isEmpty()) {
+                target.add(new Modification(ModificationType.ADD, attributeName, newValues.toArray(new byte[0][])));
+            }
+            return;
+        }
+
+        MatchingRule matchingRule = selectMatchingRule(currentAttribute, type);
+        Map<ASN1OctetString, ASN1OctetString> current = normalize(Arrays.asList(currentAttribute.getValueByteArrays()), matchingRule);
+        Map<ASN1OctetString, ASN1OctetString> desired = normalize(newValues, matchingRule);
+
+        if (desired.isEmpty()) {
+            target.add(new Modification(ModificationType.DELETE, attributeName));
+            return;
+        }
+
+        Map<ASN1OctetString, ASN1OctetString> toDelete = new LinkedHashMap<>(current);
+        toDelete.keySet().removeAll(desired.keySet());
+        Map<ASN1OctetString, ASN1OctetString> toAdd = new LinkedHashMap<>(desired);
+        toAdd.keySet().removeAll(current.keySet());
+
+        if (toDelete.isEmpty() && toAdd.isEmpty()) {
+            return;
+        }
+
+        if ((toDelete.size() + toAdd.size()) >= desired.size()) {
+            target.add(new Modification(ModificationType.REPLACE, attributeName, toByteArrays(desired.values())));
+            return;
+        }
+
+        if (!toDelete.isEmpty()) {
+            //Delete the values as they are stored, not as they would be written.
+            target.add(new Modification(ModificationType.DELETE, attributeName, toByteArrays(toDelete.values())));
+        }
+        if (!toAdd.isEmpty()) {
+            target.add(new Modification(ModificationType.ADD, attributeName, toByteArrays(toAdd.values())));
+        }
+    }
+
+    /**
+     * Dates are written with milliseconds, so are compared by the instant they represent, and binary
+     * values are compared byte for byte. Anything else uses the matching rule of the current attribute,
+     * which comes from the schema when the entry was read with one, and otherwise ignores case.
+     */
+    private static MatchingRule selectMatchingRule(Attribute currentAttribute, Type type) {
+        if (type instanceof DateType) {
+            return GeneralizedTimeMatchingRule.getInstance();
+        }
+        else if (type instanceof BinaryType) {
+            return OctetStringMatchingRule.getInstance();
+        }
+        return currentAttribute.getMatchingRule();
+    }
+
+    private static byte[] toBytes(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return StaticUtils.getBytes(value.toString());
+    }
+
+    /**
+     * @return the values keyed by their normalized form. A value that the matching rule cannot
+     * normalize is keyed by itself, and so is only equal to an identical value.
+     */
+    private static Map<ASN1OctetString, ASN1OctetString> normalize(List<byte[]> values, MatchingRule matchingRule) {
+        Map<ASN1OctetString, ASN1OctetString> normalized = new LinkedHashMap<>();
+        for (byte[] value : values) {
+            ASN1OctetString octetString = new ASN1OctetString(value);
+            ASN1OctetString key;
+            try {
+                key = matchingRule.normalize(octetString);
+            } catch (LDAPException e) {
+                key = octetString;
+            }
+            if (!normalized.containsKey(key)) {
+                normalized.put(key, octetString);
+            }
+        }
+        return normalized;
+    }
+
+    private static byte[][] toByteArrays(Collection<ASN1OctetString> values) {
+        byte[][] bytes = new byte[values.size()][];
+        int i = 0;
+        for (ASN1OctetString value : values) {
+            bytes[i++] = value.getValue();
+        }
+        return bytes;
+    }
+
 }
@@ -39,7 +39,10 @@ import com.redhat.lightblue.util.Path;
  * @author dcrissman
  *
  * @param <S>
+ * @deprecated results are translated by {@link ResultTranslatorToJson} from a precompiled
+ * {@link ResultTranslationPlan}, which adds these fields itself. Will be removed in the next major version.
  */
+@Deprecated
 public abstract class NonPersistedPredefinedFieldTranslatorToJson<S> extends TranslatorToJson<S>{
 
     /** Holding bin for the currently relevant {@link Fields}. */
@@ -0,0 +1,502 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.common.ldap.LightblueUtil;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.ArrayElement;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.Fields;
+import com.redhat.lightblue.metadata.ObjectArrayElement;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.ReferenceField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.types.BinaryType;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.Projection.Inclusion;
+import com.redhat.lightblue.query.ProjectionList;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * The work {@link ResultTranslatorToJson} does for each {@link SearchResultEntry}, worked out once
+ * per {@link EntityMetadata}.<br>
+ * The metadata is walked when the plan is compiled, resolving the attribute name, value codec and
+ * kind of each field into a flat array of steps. Translating an entry then only runs the steps
+ * against the entry, instead of walking the metadata, translating field names and pushing error
+ * contexts for every field of every entry. The resulting json is the same as that of walking the
+ * metadata.<br>
+ * A plan can also be narrowed to a {@link Projection} through {@link #project(Projection, EntityMetadata)},
+ * in which case only the projected fields are written and the result is the same as running the
+ * {@link Projector} over the full translation.<br>
+ * Plans are immutable and can be shared between threads, see {@link ResultTranslationPlanCache}.
+ *
+ * @author dcrissman
+ */
+public final class ResultTranslationPlan {
+
+    /** Index of the document itself in the array of object nodes being populated. */
+    private static final int ROOT = 0;
+    private static final Path FIRST_INDEX = new Path("0");
+
+    private final String entityName;
+    private final Path dnPath;
+    private final Step[] steps;
+    /** Index of the parent of each object node, and the field name it is set under. */
+    private final int[] objectParents;
+    private final String[] objectNames;
+    /** Whether this plan has been narrowed to a projection. */
+    private final boolean projected;
+    private final boolean includeDn;
+
+    private ResultTranslationPlan(String entityName, Path dnPath, List<Step> steps, int[] objectParents, String[] objectNames,
+            boolean projected, boolean includeDn) {
+        this.entityName = entityName;
+        this.dnPath = dnPath;
+        this.steps = steps.toArray(new Step[steps.size()]);
+        this.objectParents = objectParents;
+        this.objectNames = objectNames;
+        this.projected = projected;
+        this.includeDn = includeDn;
+    }
+
+    /**
+     * Compiles the plan for translating entries of the entity.
+     * @param entityMetadata - {@link EntityMetadata} of the entity.
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator} for the entity.
+     * @return {@link ResultTranslationPlan}
+     */
+    public static ResultTranslationPlan compile(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator) {
+        Path dnPath = fieldNameTranslator.translateAttributeName(LdapConstant.ATTRIBUTE_DN);
+        Compiler compiler = new Compiler(fieldNameTranslator, dnPath);
+
+        FieldCursor cursor = entityMetadata.getFieldCursor();
+        if (cursor.firstChild()) {
+            compiler.compileNodes(cursor, entityMetadata.getFields(), ROOT);
+        }
+
+        return new ResultTranslationPlan(entityMetadata.getEntityInfo().getName(), dnPath, compiler.steps,
+                toArray(compiler.objectParents), compiler.objectNames.toArray(new String[compiler.objectNames.size()]), false, true);
+    }
+
+    /**
+     * Narrows this plan to only write the fields included by the {@link Projection}, so that
+     * entries do not need to be fully translated only to be thrown away by the {@link Projector}.<br>
+     * Only projections made up entirely of field projections that do not name array indexes can be
+     * applied during translation, and only when the dn is a top level field. Array projections
+     * depend on the values themselves, so must still be run through the {@link Projector}.
+     * @param projection - {@link Projection} to narrow to, including any field access exclusions.
+     * @param entityMetadata - {@link EntityMetadata} this plan was compiled for.
+     * @return the narrowed {@link ResultTranslationPlan}, or <code>null</code> if the projection
+     * cannot be fully applied during translation.
+     */
+    public ResultTranslationPlan project(Projection projection, EntityMetadata entityMetadata) {
+        if (projected) {
+            throw new IllegalStateException("Plan has already been projected.");
+        }
+        if ((dnPath.numSegments() != 1) || !isFieldProjectionOnly(projection)) {
+            return null;
+        }
+
+        Projector projector = Projector.getInstance(projection, entityMetadata);
+        boolean[] excludedObjects = new boolean[objectParents.length];
+        List<Step> projectedSteps = new ArrayList<>();
+        for (Step step : steps) {
+            Step projectedStep = step.project(projector, excludedObjects[step.parent], excludedObjects);
+            if (projectedStep != null) {
+                projectedSteps.add(projectedStep);
+            }
+        }
+
+        return new ResultTranslationPlan(entityName, dnPath, projectedSteps, objectParents, objectNames,
+                true, isIncluded(projector.project(dnPath, null)));
+    }
+
+    /**
+     * @return <code>true</code> if the {@link Projection} is only made up of {@link FieldProjection}s,
+     * none of which name an array index, otherwise <code>false</code>.
+     */
+    static boolean isFieldProjectionOnly(Projection projection) {
+        if (projection instanceof ProjectionList) {
+            for (Projection item : ((ProjectionList) projection).getItems()) {
+                if (!isFieldProjectionOnly(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (projection instanceof FieldProjection) {
+            Path field = ((FieldProjection) projection).getField();
+            for (int x = 0; x < field.numSegments(); x++) {
+                if (field.isIndex(x)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isIncluded(Inclusion inclusion) {
+        return (inclusion == Inclusion.explicit_inclusion) || (inclusion == Inclusion.implicit_inclusion);
+    }
+
+    private static boolean isExcluded(Inclusion inclusion) {
+        return (inclusion == Inclusion.explicit_exclusion) || (inclusion == Inclusion.implicit_exclusion);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int x = 0; x < array.length; x++) {
+            array[x] = values.get(x);
+        }
+        return array;
+    }
+
+    /**
+     * @return the number of steps run for each entry.
+     */
+    public int getStepCount() {
+        return steps.length;
+    }
+
+    /**
+     * @return <code>true</code> if this plan only writes the fields of a projection, otherwise <code>false</code>.
+     */
+    public boolean isProjected() {
+        return projected;
+    }
+
+    /**
+     * Translates the {@link SearchResultEntry} to a {@link JsonDoc}.
+     * @param factory - {@link JsonNodeFactory} to create the json with.
+     * @param entry - {@link SearchResultEntry} to translate.
+     * @return {@link JsonDoc}
+     */
+    public JsonDoc translate(JsonNodeFactory factory, SearchResultEntry entry) {
+        ObjectNode[] objects = new ObjectNode[objectParents.length];
+        objects[ROOT] = factory.objectNode();
+
+        for (Step step : steps) {
+            try {
+                step.apply(this, factory, entry, objects);
+            } catch (Error e) {
+                //Context is only added on failure, rather than pushed for every field of every entry.
+                for (int x = 0; x < step.path.numSegments(); x++) {
+                    e.pushContext(step.path.head(x));
+                }
+                throw e;
+            }
+        }
+
+        JsonDoc jdoc = new JsonDoc(objects[ROOT]);
+        if (!includeDn) {
+            return jdoc;
+        }
+        if (dnPath.numSegments() == 1) {
+            objects[ROOT].set(dnPath.head(0), StringType.TYPE.toJson(factory, entry.getDN()));
+        }
+        else {
+            jdoc.modify(dnPath, StringType.TYPE.toJson(factory, entry.getDN()), true);
+        }
+        return jdoc;
+    }
+
+    /**
+     * Returns the object node at the index. Projected plans only create object nodes once a field
+     * is set on them, as the {@link Projector} does not keep objects that have nothing included.
+     */
+    private ObjectNode getObject(JsonNodeFactory factory, ObjectNode[] objects, int index) {
+        ObjectNode node = objects[index];
+        if (node == null) {
+            node = factory.objectNode();
+            objects[index] = node;
+            getObject(factory, objects, objectParents[index]).set(objectNames[index], node);
+        }
+        return node;
+    }
+
+    /**
+     * Converts the value of an {@link Attribute} into the value expected by {@link Type#toJson(JsonNodeFactory, Object)}.
+     */
+    private static Object getValue(Type type, Attribute attr) {
+        Object value = null;
+        if (type instanceof DateType) {
+            value = attr.getValueAsDate();
+        }
+        else if (type instanceof BinaryType) {
+            value = attr.getValueByteArray();
+        }
+        else {
+            value = attr.getValue();
+        }
+
+        if (value == null) {
+            throw new NullPointerException("Unable to convert LDAP attribute to json resulting in a null value: " + attr.getName());
+        }
+        return value;
+    }
+
+    private enum Kind {
+        /** Creates a nested object, which the steps that follow it will populate. */
+        OBJECT,
+        /** Sets the name of the entity, which is not stored in ldap. */
+        OBJECT_TYPE,
+        SIMPLE,
+        /** Sets the values of a multi-valued attribute along with the array count field. */
+        ARRAY,
+        /** Fails if the attribute is present, as there is no way to translate it. */
+        UNSUPPORTED
+    }
+
+    private static final class Step {
+
+        private final Kind kind;
+        private final Path path;
+        private final String fieldName;
+        private final String attributeName;
+        private final Type type;
+        /** Index of the object node this step sets its field on. */
+        private final int parent;
+        /** Index of the object node created by an {@link Kind#OBJECT} step, or -1 if there is none. */
+        private final int slot;
+        /** Array count field name of an {@link Kind#ARRAY} step, or the failure of an {@link Kind#UNSUPPORTED} step. */
+        private final String detail;
+
+        /** Whether the field itself is written. */
+        private final boolean include;
+        /** Whether the values of an array are written, provided the array is not excluded. */
+        private final boolean includeValues;
+        /** Whether the array count field is written. */
+        private final boolean includeCount;
+
+        Step(Kind kind, Path path, String fieldName, String attributeName, Type type, int parent, int slot, String detail) {
+            this(kind, path, fieldName, attributeName, type, parent, slot, detail, true, true, true);
+        }
+
+        private Step(Kind kind, Path path, String fieldName, String attributeName, Type type, int parent, int slot, String detail,
+                boolean include, boolean includeValues, boolean includeCount) {
+            this.kind = kind;
+            this.path = path;
+            this.fieldName = fieldName;
+            this.attributeName = attributeName;
+            this.type = type;
+            this.parent = parent;
+            this.slot = slot;
+            this.detail = detail;
+            this.include = include;
+            this.includeValues = includeValues;
+            this.includeCount = includeCount;
+        }
+
+        /**
+         * Works out what the {@link Projector} would keep of the json written by this step.
+         * @param parentExcluded - whether the object this step writes to is excluded.
+         * @param excludedObjects - excluded object nodes, updated with the object created by this step.
+         * @return the projected {@link Step}, or <code>null</code> if nothing it writes is kept.
+         */
+        Step project(Projector projector, boolean parentExcluded, boolean[] excludedObjects) {
+            Inclusion inclusion = parentExcluded ? Inclusion.explicit_exclusion : projector.project(path, null);
+
+            if ((kind == Kind.OBJECT) && (slot >= 0)) {
+                //Objects are kept if any of their fields are, which is up to the steps that follow.
+                excludedObjects[slot] = isExcluded(inclusion);
+                return excludedObjects[slot] ? null : this;
+            }
+            if (kind == Kind.ARRAY) {
+                Path countPath = new Path(path.toString() + LightblueUtil.FIELD_ARRAY_COUNT_POSTFIX);
+                boolean includeCount = !parentExcluded && isIncluded(projector.project(countPath, null));
+                //Values are projected individually, without naming indexes they are all projected the same.
+                boolean includeValues = !isExcluded(inclusion) && isIncluded(projector.project(new Path(path, FIRST_INDEX), null));
+                if (!isIncluded(inclusion) && !includeValues && !includeCount) {
+                    return null;
+                }
+                return new Step(kind, path, fieldName, attributeName, type, parent, slot, detail,
+                        isIncluded(inclusion), includeValues, includeCount);
+            }
+            if (isIncluded(inclusion)) {
+                return this;
+            }
+            //Unsupported fields must still fail, whether or not they are projected.
+            return (kind == Kind.UNSUPPORTED)
+                    ? new Step(kind, path, fieldName, attributeName, type, parent, slot, detail, false, false, false)
+                    : null;
+        }
+
+        void apply(ResultTranslationPlan plan, JsonNodeFactory factory, SearchResultEntry entry, ObjectNode[] objects) {
+            switch (kind) {
+                case OBJECT:
+                    if (slot < 0) {
+                        plan.getObject(factory, objects, parent).set(fieldName, null);
+                    }
+                    else if (!plan.projected) {
+                        plan.getObject(factory, objects, slot);
+                    }
+                    return;
+                case OBJECT_TYPE:
+                    plan.getObject(factory, objects, parent).set(fieldName, StringType.TYPE.toJson(factory, plan.entityName));
+                    return;
+                default:
+                    break;
+            }
+
+            Attribute attr = entry.getAttribute(attributeName);
+            if (attr == null) {
+                if (include) {
+                    plan.getObject(factory, objects, parent).set(fieldName, null);
+                }
+                return;
+            }
+
+            switch (kind) {
+                case SIMPLE:
+                    plan.getObject(factory, objects, parent).set(fieldName, type.toJson(factory, getValue(type, attr)));
+                    break;
+                case ARRAY:
+                    String[] values = attr.getValues();
+                    if (includeCount) {
+                        plan.getObject(factory, objects, parent).set(detail, IntegerType.TYPE.toJson(factory, values.length));
+                    }
+                    //The projector keeps an included empty array, but drops any array without included values.
+                    if ((values.length == 0) ? include : includeValues) {
+                        ArrayNode array = factory.arrayNode();
+                        for (String value : values) {
+                            array.add(type.toJson(factory, value));
+                        }
+                        plan.getObject(factory, objects, parent).set(fieldName, array);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException(detail);
+            }
+        }
+
+    }
+
+    /**
+     * Walks the metadata in field order. The dn is set from the entry itself, array counts are set
+     * along with their array and the object type is set from the entity name, as ldap stores none
+     * of them. Every other field becomes a step reading the attribute its path translates to.
+     */
+    private static final class Compiler {
+
+        private final LdapFieldNameTranslator fieldNameTranslator;
+        private final Path dnPath;
+        private final List<Step> steps = new ArrayList<>();
+        private final List<Integer> objectParents = new ArrayList<>();
+        private final List<String> objectNames = new ArrayList<>();
+
+        Compiler(LdapFieldNameTranslator fieldNameTranslator, Path dnPath) {
+            this.fieldNameTranslator = fieldNameTranslator;
+            this.dnPath = dnPath;
+            //The document itself.
+            objectParents.add(ROOT);
+            objectNames.add(null);
+        }
+
+        void compileNodes(FieldCursor cursor, Fields fields, int parent) {
+            do {
+                compileNode(cursor, fields, parent);
+            } while (cursor.nextSibling());
+        }
+
+        private void compileNode(FieldCursor cursor, Fields fields, int parent) {
+            FieldTreeNode field = cursor.getCurrentNode();
+            String fieldName = field.getName();
+            Path path = cursor.getCurrentPath();
+
+            if (dnPath.equals(path)) {
+                //DN is not technically an attribute, it is set once the other fields are done.
+                return;
+            }
+            if (LightblueUtil.isFieldAnArrayCount(fieldName, fields)) {
+                //Set along with the array itself.
+                return;
+            }
+            if (LightblueUtil.isFieldObjectType(path.toString())) {
+                steps.add(new Step(Kind.OBJECT_TYPE, path, path.toString(), null, null, parent, -1, null));
+                return;
+            }
+
+            if (field instanceof ObjectField) {
+                if (!cursor.firstChild()) {
+                    steps.add(new Step(Kind.OBJECT, path, fieldName, null, null, parent, -1, null));
+                    return;
+                }
+                int slot = objectParents.size();
+                objectParents.add(parent);
+                objectNames.add(fieldName);
+                steps.add(new Step(Kind.OBJECT, path, fieldName, null, null, parent, slot, null));
+                compileNodes(cursor, ((ObjectField) field).getFields(), slot);
+                cursor.parent();
+                return;
+            }
+
+            String attributeName = fieldNameTranslator.translateFieldName(path);
+            if (field instanceof SimpleField) {
+                steps.add(new Step(Kind.SIMPLE, path, fieldName, attributeName, ((SimpleField) field).getType(), parent, -1, null));
+            }
+            else if (field instanceof ArrayField) {
+                ArrayElement element = ((ArrayField) field).getElement();
+                if (element instanceof SimpleArrayElement) {
+                    steps.add(new Step(Kind.ARRAY, path, fieldName, attributeName, element.getType(), parent, -1,
+                            LightblueUtil.createArrayCountFieldName(fieldName)));
+                }
+                else if (element instanceof ObjectArrayElement) {
+                    steps.add(new Step(Kind.UNSUPPORTED, path, fieldName, attributeName, null, parent, -1,
+                            "Object ArrayField type is not currently supported."));
+                }
+                else {
+                    steps.add(new Step(Kind.UNSUPPORTED, path, fieldName, attributeName, null, parent, -1,
+                            "ArrayElement type is not supported: " + element.getClass().getName()));
+                }
+            }
+            else if (field instanceof ReferenceField) {
+                steps.add(new Step(Kind.UNSUPPORTED, path, fieldName, attributeName, null, parent, -1,
+                        "ReferenceField type not currently supported."));
+            }
+            else {
+                steps.add(new Step(Kind.UNSUPPORTED, path, fieldName, attributeName, null, parent, -1,
+                        "Unknown Field type: " + field.getClass().getName()));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Version;
+
+/**
+ * Keeps the {@link ResultTranslationPlan} compiled for each version of each entity, so that
+ * a plan is compiled once rather than for every request.<br>
+ * Plans are keyed by the entity name, version and {@link LdapFieldNameTranslator}, as the
+ * attribute mappings may be changed without changing the version. Translators that do not
+ * implement <code>equals</code> will only ever match themselves. Metadata without a version
+ * is never cached. To keep the cache from growing without bound, it is emptied whenever it
+ * reaches its maximum size.
+ *
+ * @author dcrissman
+ */
+public class ResultTranslationPlanCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final ConcurrentMap<Key, ResultTranslationPlan> plans = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public ResultTranslationPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize - maximum number of plans to hold.
+     */
+    public ResultTranslationPlanCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the {@link ResultTranslationPlan} for the entity, compiling it if necessary.
+     * @param entityMetadata - {@link EntityMetadata} of the entity.
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator} for the entity.
+     * @return {@link ResultTranslationPlan}
+     */
+    public ResultTranslationPlan get(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator) {
+        Version version = entityMetadata.getVersion();
+        if ((version == null) || (version.getValue() == null)) {
+            return ResultTranslationPlan.compile(entityMetadata, fieldNameTranslator);
+        }
+
+        Key key = new Key(entityMetadata.getName(), version.getValue(), fieldNameTranslator);
+        ResultTranslationPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = ResultTranslationPlan.compile(entityMetadata, fieldNameTranslator);
+            if (plans.size() >= maxSize) {
+                plans.clear();
+            }
+            plans.putIfAbsent(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @return the number of plans currently held.
+     */
+    public int size() {
+        return plans.size();
+    }
+
+    /**
+     * Discards every plan.
+     */
+    public void clear() {
+        plans.clear();
+    }
+
+    private static final class Key {
+
+        private final String entityName;
+        private final String version;
+        private final LdapFieldNameTranslator fieldNameTranslator;
+
+        Key(String entityName, String version, LdapFieldNameTranslator fieldNameTranslator) {
+            this.entityName = entityName;
+            this.version = version;
+            this.fieldNameTranslator = fieldNameTranslator;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ((entityName == null) ? 0 : entityName.hashCode());
+            result = prime * result + version.hashCode();
+            result = prime * result + fieldNameTranslator.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (entityName == null) {
+                if (other.entityName != null) {
+                    return false;
+                }
+            }
+            else if (!entityName.equals(other.entityName)) {
+                return false;
+            }
+            return version.equals(other.version) && fieldNameTranslator.equals(other.fieldNameTranslator);
+        }
+
+    }
+
+}
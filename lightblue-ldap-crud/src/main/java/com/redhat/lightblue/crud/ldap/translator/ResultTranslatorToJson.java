@@ -18,118 +18,46 @@
  */
 package com.redhat.lightblue.crud.ldap.translator;
 
-import java.util.Arrays;
-import java.util.List;
-
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.common.ldap.LdapConstant;
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
 import com.redhat.lightblue.metadata.EntityMetadata;
-import com.redhat.lightblue.metadata.FieldCursor;
-import com.redhat.lightblue.metadata.ReferenceField;
-import com.redhat.lightblue.metadata.SimpleField;
-import com.redhat.lightblue.metadata.Type;
-import com.redhat.lightblue.metadata.types.BinaryType;
-import com.redhat.lightblue.metadata.types.DateType;
-import com.redhat.lightblue.metadata.types.StringType;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
-import com.redhat.lightblue.util.Path;
-import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 
 /**
- * Translator to convert UnboundID {@link SearchResultEntry} into json that Lightblue can understand.
+ * Translator to convert UnboundID {@link SearchResultEntry} into json that Lightblue can understand.<br>
+ * Entries are translated by running a {@link ResultTranslationPlan}, which holds every rule for how
+ * the metadata maps onto an entry. Plans can be shared through a {@link ResultTranslationPlanCache}.
  *
  * @author dcrissman
  */
-public class ResultTranslatorToJson extends NonPersistedPredefinedFieldTranslatorToJson<SearchResultEntry>{
+public class ResultTranslatorToJson {
 
-    private final LdapFieldNameTranslator fieldNameTranslator;
-    private final Path dnPath;
+    private final JsonNodeFactory factory;
+    private final ResultTranslationPlan plan;
 
     public ResultTranslatorToJson(JsonNodeFactory factory, EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator) {
-        super(factory, entityMetadata);
-        this.fieldNameTranslator = fieldNameTranslator;
-        dnPath = fieldNameTranslator.translateAttributeName(LdapConstant.ATTRIBUTE_DN);
+        this(factory, ResultTranslationPlan.compile(entityMetadata, fieldNameTranslator));
+    }
+
+    /**
+     * @param plan - {@link ResultTranslationPlan} to translate each entry with.
+     */
+    public ResultTranslatorToJson(JsonNodeFactory factory, ResultTranslationPlan plan) {
+        this.factory = factory;
+        this.plan = plan;
     }
 
-    @Override
     public JsonDoc translate(SearchResultEntry entry){
         Error.push(LdapConstant.ATTRIBUTE_DN + "=" + entry.getDN());
         try{
-            JsonDoc jdoc = super.translate(entry);
-            jdoc.modify(dnPath, toJson(StringType.TYPE, entry.getDN()), true);
-            return jdoc;
+            return plan.translate(factory, entry);
         }
         finally{
             Error.pop();
         }
     }
 
-    @Override
-    protected void appendToJsonNode(SearchResultEntry source, ObjectNode targetNode, FieldCursor fieldCursor){
-        Path fieldPath = fieldCursor.getCurrentPath();
-
-        if(dnPath.equals(fieldPath)){
-            //DN is not technically an attribute and can be skipped.
-            return;
-        }
-
-        super.appendToJsonNode(source, targetNode, fieldCursor);
-    }
-
-    @Override
-    protected JsonNode translate(ReferenceField field, Object o) {
-        throw new UnsupportedOperationException("ReferenceField type not currently supported.");
-    }
-
-    @Override
-    protected JsonNode translate(SimpleField field, Object o) {
-        Type type = field.getType();
-        Attribute attr = (Attribute) o;
-
-        Object value = null;
-        if(type instanceof DateType){
-            value = attr.getValueAsDate();
-        }
-        else if(type instanceof BinaryType){
-            value = attr.getValueByteArray();
-        }
-        else{
-            value = attr.getValue();
-        }
-
-        if(value == null){
-            throw new NullPointerException("Unable to convert LDAP attribute to json resulting in a null value: " + attr.getName());
-        }
-
-        return toJson(field.getType(), value);
-    }
-
-    @Override
-    protected Object getValueFor(SearchResultEntry source, Path path) {
-        String attributeName = fieldNameTranslator.translateFieldName(path);
-        return source.getAttribute(attributeName);
-    }
-
-    @Override
-    protected List<String> getSimpleArrayValues(Object o) {
-        Attribute attr = (Attribute) o;
-        return Arrays.asList(attr.getValues());
-    }
-
-    @Override
-    protected List<Object> getObjectArrayValues(Object o) {
-        throw new UnsupportedOperationException("Object ArrayField type is not currently supported.");
-    }
-
-    @Override
-    protected int getSizeOf(Object o) {
-        Attribute attr = (Attribute) o;
-        return attr.getValues().length;
-    }
-
 }
@@ -47,7 +47,10 @@ import com.redhat.lightblue.util.Path;
  *
  * @param <S> - The source type that this {@link TranslatorToJson} converts
  * to json.
+ * @deprecated results are translated by {@link ResultTranslatorToJson} from a precompiled
+ * {@link ResultTranslationPlan}. Will be removed in the next major version.
  */
+@Deprecated
 public abstract class TranslatorToJson<S> {
 
     private final JsonNodeFactory factory;
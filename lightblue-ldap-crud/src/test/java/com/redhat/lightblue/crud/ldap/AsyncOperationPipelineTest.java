@@ -0,0 +1,249 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.redhat.lightblue.crud.ldap.AsyncOperationPipeline.ResultHandler;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class AsyncOperationPipelineTest {
+
+    private static final String BASE_DN = "ou=Pipeline,dc=example,dc=com";
+
+    @ClassRule
+    public static LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        ldapServer.add(BASE_DN, new Attribute[]{
+                new Attribute("objectClass", "top"),
+                new Attribute("objectClass", "organizationalUnit"),
+                new Attribute("ou", "Pipeline")});
+    }
+
+    private LDAPConnection connection;
+    private final List<LDAPResult> successes = new ArrayList<>();
+    private final List<LDAPException> failures = new ArrayList<>();
+    private final ResultHandler handler = new ResultHandler() {
+
+        @Override
+        public void onSuccess(LDAPResult result) {
+            successes.add(result);
+        }
+
+        @Override
+        public void onFailure(LDAPException e) {
+            failures.add(e);
+        }
+    };
+
+    @Before
+    public void before() throws Exception {
+        connection = ldapServer.getLDAPConnection();
+    }
+
+    @After
+    public void after() {
+        connection.close();
+    }
+
+    private static String dn(String prefix, int i) {
+        return "uid=" + prefix + i + "," + BASE_DN;
+    }
+
+    private static AddRequest createAddRequest(String prefix, int i) {
+        return new AddRequest(dn(prefix, i), new Attribute[]{
+                new Attribute("objectClass", "top"),
+                new Attribute("objectClass", "person"),
+                new Attribute("uid", prefix + i),
+                new Attribute("cn", prefix),
+                new Attribute("sn", prefix)});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxInFlight() {
+        new AsyncOperationPipeline(connection, 0, 0);
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(connection, 5, 0);
+        for (int i = 0; i < 100; i++) {
+            pipeline.add(createAddRequest("add", i), handler);
+            assertTrue(pipeline.getInFlightCount() <= 5);
+        }
+        pipeline.awaitCompletion();
+
+        assertEquals(0, pipeline.getInFlightCount());
+        assertEquals(100, successes.size());
+        assertTrue(failures.isEmpty());
+        assertNotNull(connection.getEntry(dn("add", 99)));
+    }
+
+    @Test
+    public void testAdd_Failure() throws Exception {
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(connection, 5, 0);
+        pipeline.add(createAddRequest("dup", 0), handler);
+        pipeline.add(createAddRequest("dup", 0), handler);
+        pipeline.awaitCompletion();
+
+        assertEquals(1, successes.size());
+        assertEquals(1, failures.size());
+        assertEquals(ResultCode.ENTRY_ALREADY_EXISTS, failures.get(0).getResultCode());
+    }
+
+    @Test
+    public void testResponseTimeListener() throws Exception {
+        List<String> responses = new ArrayList<>();
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(connection, 5, 0);
+        pipeline.setResponseTimeListener((OperationType operationType, String dn, ResultCode resultCode, long elapsedNanos) -> {
+            assertTrue(elapsedNanos > 0);
+            responses.add(operationType + " " + dn + " " + resultCode.getName());
+        });
+
+        pipeline.add(createAddRequest("timed", 0), handler);
+        pipeline.add(createAddRequest("timed", 0), handler);
+        pipeline.delete(new DeleteRequest(dn("timed", 0)), handler);
+        pipeline.awaitCompletion();
+
+        assertEquals(3, responses.size());
+        assertEquals("ADD " + dn("timed", 0) + " success", responses.get(0));
+        assertEquals("ADD " + dn("timed", 0) + " entry already exists", responses.get(1));
+        assertEquals("DELETE " + dn("timed", 0) + " success", responses.get(2));
+    }
+
+    @Test
+    public void testModifyAndDelete() throws Exception {
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(connection, 3, 1000);
+        for (int i = 0; i < 10; i++) {
+            pipeline.add(createAddRequest("mod", i), handler);
+        }
+        pipeline.awaitCompletion();
+
+        for (int i = 0; i < 10; i++) {
+            pipeline.modify(new ModifyRequest(dn("mod", i), new Modification(ModificationType.REPLACE, "cn", "changed")), handler);
+        }
+        pipeline.awaitCompletion();
+        assertEquals("changed", connection.getEntry(dn("mod", 5)).getAttributeValue("cn"));
+
+        for (int i = 0; i < 10; i++) {
+            pipeline.delete(new DeleteRequest(dn("mod", i)), handler);
+        }
+        pipeline.awaitCompletion();
+
+        assertEquals(30, successes.size());
+        assertTrue(failures.isEmpty());
+        assertNull(connection.getEntry(dn("mod", 5)));
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(connection, 3, 0);
+        for (int i = 0; i < 10; i++) {
+            pipeline.add(createAddRequest("search", i), handler);
+        }
+        pipeline.awaitCompletion();
+
+        List<String> found = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            pipeline.search(new SearchRequest(dn("search", i), SearchScope.BASE, "(objectClass=*)"),
+                    (SearchResultEntry entry) -> found.add(entry.getDN()), handler);
+        }
+        pipeline.awaitCompletion();
+
+        assertEquals(10, found.size());
+        assertTrue(found.contains(dn("search", 9)));
+        assertEquals(20, successes.size());
+        assertEquals(1, failures.size());
+        assertEquals(ResultCode.NO_SUCH_OBJECT, failures.get(0).getResultCode());
+    }
+
+    @Test
+    public void testResponseTimeoutPerOperationType() throws Exception {
+        Map<OperationType, Long> timeouts = new EnumMap<>(OperationType.class);
+        timeouts.put(OperationType.ADD, 2000L);
+        timeouts.put(OperationType.DELETE, 0L);
+        AsyncOperationPipeline pipeline = new AsyncOperationPipeline(connection, 3, timeouts);
+
+        AddRequest addRequest = createAddRequest("timeout", 0);
+        pipeline.add(addRequest, handler);
+        DeleteRequest deleteRequest = new DeleteRequest(dn("timeout", 0));
+        pipeline.delete(deleteRequest, handler);
+        pipeline.awaitCompletion();
+
+        assertEquals(2000, addRequest.getResponseTimeoutMillis(connection));
+        assertEquals(connection.getConnectionOptions().getResponseTimeoutMillis(),
+                deleteRequest.getResponseTimeoutMillis(connection));
+        assertEquals(2, successes.size());
+    }
+
+    @Test
+    public void testSynchronousMode() throws Exception {
+        LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setUseSynchronousMode(true);
+        LDAPConnection synchronousConnection = new LDAPConnection(options, "localhost", ldapServer.getPort());
+
+        try {
+            AsyncOperationPipeline pipeline = new AsyncOperationPipeline(synchronousConnection, 5, 0);
+            pipeline.add(createAddRequest("sync", 0), handler);
+            assertEquals(0, pipeline.getInFlightCount());
+            pipeline.add(createAddRequest("sync", 0), handler);
+            pipeline.awaitCompletion();
+
+            assertEquals(1, successes.size());
+            assertEquals(1, failures.size());
+            assertEquals(ResultCode.ENTRY_ALREADY_EXISTS, failures.get(0).getResultCode());
+        } finally {
+            synchronousConnection.close();
+        }
+    }
+
+}
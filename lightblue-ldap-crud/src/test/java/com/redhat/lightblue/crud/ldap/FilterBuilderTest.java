@@ -19,6 +19,7 @@
 package com.redhat.lightblue.crud.ldap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -238,4 +239,40 @@ public class FilterBuilderTest {
         new FilterBuilder(new TrivialLdapFieldNameTranslator()).build(query);
     }
 
+    @Test
+    public void testGetPinnedValues_Equals(){
+        QueryExpression query = new ValueComparisonExpression(
+                new Path("uid"), BinaryComparisonOperator._eq, new Value("someuid"));
+
+        assertEquals(Arrays.asList("someuid"),
+                new FilterBuilder(new TrivialLdapFieldNameTranslator()).getPinnedValues(query, "UID"));
+    }
+
+    @Test
+    public void testGetPinnedValues_In(){
+        QueryExpression query = new NaryValueRelationalExpression(
+                new Path("uid"), NaryRelationalOperator._in, Arrays.asList(new Value("a"), new Value("b"), new Value("a")));
+
+        assertEquals(Arrays.asList("a", "b"),
+                new FilterBuilder(new TrivialLdapFieldNameTranslator()).getPinnedValues(query, "uid"));
+    }
+
+    @Test
+    public void testGetPinnedValues_OtherAttribute(){
+        QueryExpression query = new ValueComparisonExpression(
+                new Path("cn"), BinaryComparisonOperator._eq, new Value("someuid"));
+
+        assertNull(new FilterBuilder(new TrivialLdapFieldNameTranslator()).getPinnedValues(query, "uid"));
+    }
+
+    @Test
+    public void testGetPinnedValues_OtherShape(){
+        QueryExpression query = new UnaryLogicalExpression(UnaryLogicalOperator._not, new ValueComparisonExpression(
+                new Path("uid"), BinaryComparisonOperator._eq, new Value("someuid")));
+
+        assertNull(new FilterBuilder(new TrivialLdapFieldNameTranslator()).getPinnedValues(query, "uid"));
+        assertNull(new FilterBuilder(new TrivialLdapFieldNameTranslator()).getPinnedValues(
+                new ValueComparisonExpression(new Path("uid"), BinaryComparisonOperator._neq, new Value("someuid")), "uid"));
+    }
+
 }
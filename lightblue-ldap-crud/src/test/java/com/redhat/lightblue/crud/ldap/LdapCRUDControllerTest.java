@@ -0,0 +1,534 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConnectionLease;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapCrudSettings;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.common.ldap.LdapErrorCode;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics;
+import com.redhat.lightblue.common.ldap.LdapOperationType;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.crud.CrudConstants;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.ldap.instrumentation.FindPhase;
+import com.redhat.lightblue.crud.ldap.instrumentation.InMemoryFindPhaseTimings;
+import com.redhat.lightblue.crud.ldap.instrumentation.SlowOperationLog;
+import com.redhat.lightblue.crud.ldap.translator.ResultTranslationPlan;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedDeleteRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedModifyRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+@InMemoryLdapServer
+public class LdapCRUDControllerTest {
+
+    private static final String BASE_DN = "ou=People,dc=example,dc=com";
+
+    private static final String METADATA = "{"
+            + "\"entityInfo\": {\"name\": \"person\", \"datastore\": {\"backend\": \"ldap\"}},"
+            + "\"schema\": {"
+            + "  \"name\": \"person\","
+            + "  \"version\": {\"value\": \"1.0.0\", \"changelog\": \"test\"},"
+            + "  \"status\": {\"value\": \"active\"},"
+            + "  \"access\": {\"insert\": [\"anyone\"], \"update\": [\"anyone\"], \"delete\": [\"anyone\"], \"find\": [\"anyone\"]},"
+            + "  \"fields\": {"
+            + "    \"uid\": {\"type\": \"string\"},"
+            + "    \"cn\": {\"type\": \"string\"},"
+            + "    \"sn\": {\"type\": \"string\"},"
+            + "    \"givenName\": {\"type\": \"string\"},"
+            + "    \"restricted\": {\"type\": \"string\", \"access\": {\"update\": [\"admin\"]}}"
+            + "  }"
+            + "}}";
+
+    private final RecordingInterceptor interceptor = new RecordingInterceptor();
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance()
+            .addOperationInterceptor(interceptor);
+
+    private LDAPConnectionPool pool;
+    private InMemoryDBResolver dbResolver;
+    private LdapCRUDController controller;
+    private EntityMetadata md;
+
+    @Before
+    public void before() throws Exception {
+        ldapServer.add(BASE_DN, new Attribute[]{
+                new Attribute("objectClass", "top"),
+                new Attribute("objectClass", "organizationalUnit"),
+                new Attribute("ou", "People")});
+        addPerson("john.doe", "John", "Doe");
+        addPerson("jane.doe", "Jane", "Doe");
+        addPerson("jack.smith", "Jack", "Smith");
+
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 3);
+        dbResolver = new InMemoryDBResolver(pool);
+        controller = new LdapCRUDController(dbResolver);
+
+        md = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND, json(METADATA), null, null);
+        md.getEntityInfo().setDataStore(new LdapDataStore("test", BASE_DN, "uid"));
+        new LdapMetadataListener().beforeCreateNewSchema(null, md);
+
+        interceptor.reset();
+    }
+
+    @After
+    public void after() {
+        pool.close();
+        Error.reset();
+    }
+
+    private void addPerson(String uid, String givenName, String sn) throws Exception {
+        addPerson(BASE_DN, uid, givenName, sn);
+    }
+
+    private void addPerson(String parentDn, String uid, String givenName, String sn) throws Exception {
+        ldapServer.add("uid=" + uid + "," + parentDn, new Attribute[]{
+                new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                new Attribute("uid", uid),
+                new Attribute("givenName", givenName),
+                new Attribute("sn", sn),
+                new Attribute("cn", givenName + " " + sn)});
+    }
+
+    private String getAttribute(String uid, String attributeName) throws LDAPException {
+        LDAPConnection connection = ldapServer.getLDAPConnection();
+        try {
+            return connection.getEntry("uid=" + uid + "," + BASE_DN).getAttributeValue(attributeName);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private boolean exists(String dn) throws LDAPException {
+        LDAPConnection connection = ldapServer.getLDAPConnection();
+        try {
+            return connection.getEntry(dn) != null;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private CRUDOperationContext createContext(CRUDOperation operation, JsonDoc... documents) {
+        Factory factory = new Factory();
+        factory.setNodeFactory(JsonNodeFactory.withExactBigDecimals(true));
+        return new CRUDOperationContext(operation, "person", factory, Arrays.asList(documents), new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return md;
+            }
+        };
+    }
+
+    private static QueryExpression query(String query) throws Exception {
+        return QueryExpression.fromJson(json(query));
+    }
+
+    private static Projection projection(String projection) throws Exception {
+        return Projection.fromJson(json(projection));
+    }
+
+    private static UpdateExpression update(String update) throws Exception {
+        return UpdateExpression.fromJson(json(update));
+    }
+
+    private List<String> find(String query, Projection projection) throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        CRUDFindResponse response = controller.find(ctx, query(query), projection, null, null, null);
+
+        assertFalse(ctx.hasErrors());
+        assertEquals(response.getSize(), ctx.getDocuments().size());
+        List<String> documents = new ArrayList<>();
+        for (DocCtx document : ctx.getDocuments()) {
+            documents.add(document.getOutputDocument().toString());
+        }
+        return documents;
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        interceptor.rejectModify("uid=jane.doe," + BASE_DN);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.UPDATE);
+        CRUDUpdateResponse response = controller.update(ctx,
+                query("{\"field\": \"sn\", \"op\": \"=\", \"rvalue\": \"Doe\"}"),
+                update("{\"$set\": {\"cn\": \"Updated\"}}"),
+                null);
+
+        assertEquals(2, response.getNumMatched());
+        assertEquals(1, response.getNumUpdated());
+        assertEquals(1, response.getNumFailed());
+
+        //Only the failed document is retained, so that its error is reported.
+        assertEquals(1, ctx.getDocuments().size());
+        DocCtx failed = ctx.getDocuments().get(0);
+        assertEquals(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, failed.getErrors().get(0).getErrorCode());
+        assertEquals("jane.doe", failed.get(new Path("uid")).asText());
+
+        assertEquals("Updated", getAttribute("john.doe", "cn"));
+        assertEquals("Jane Doe", getAttribute("jane.doe", "cn"));
+        assertEquals("Jack Smith", getAttribute("jack.smith", "cn"));
+    }
+
+    @Test
+    public void testUpdate_SlowWritesLogged() throws Exception {
+        List<String> records = new ArrayList<>();
+        controller = new LdapCRUDController(dbResolver, null, new SlowOperationLog(0, 100) {
+
+            @Override
+            protected void write(String record) {
+                records.add(record);
+            }
+
+        });
+
+        controller.update(createContext(CRUDOperation.UPDATE),
+                query("{\"field\": \"uid\", \"op\": \"=\", \"rvalue\": \"jack.smith\"}"),
+                update("{\"$set\": {\"cn\": \"Updated\"}}"),
+                null);
+
+        assertEquals(2, records.size());
+        assertTrue(records.get(0), records.get(0).startsWith("slow ldap search: entity=person "));
+        assertTrue(records.get(0), records.get(0).contains(" processingMillis="));
+        assertTrue(records.get(1), records.get(1).startsWith(
+                "slow ldap write: entity=person operation=modify dn=\"uid=jack.smith," + BASE_DN + "\" result=success "));
+    }
+
+    @Test
+    public void testUpdate_Projected() throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.UPDATE);
+        CRUDUpdateResponse response = controller.update(ctx,
+                query("{\"field\": \"sn\", \"op\": \"=\", \"rvalue\": \"Doe\"}"),
+                update("{\"$set\": {\"cn\": \"Updated\"}}"),
+                projection("[{\"field\": \"uid\"}, {\"field\": \"cn\"}]"));
+
+        assertEquals(2, response.getNumMatched());
+        assertEquals(2, response.getNumUpdated());
+        assertEquals(0, response.getNumFailed());
+
+        assertEquals(2, ctx.getDocuments().size());
+        for (DocCtx document : ctx.getDocuments()) {
+            assertFalse(document.hasErrors());
+            JSONAssert.assertEquals(
+                    "{\"uid\": \"" + document.getOutputDocument().get(new Path("uid")).asText()
+                            + "\", \"cn\": \"Updated\"}",
+                    document.getOutputDocument().toString(),
+                    true);
+        }
+    }
+
+    @Test
+    public void testUpdate_Unchanged() throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.UPDATE);
+        CRUDUpdateResponse response = controller.update(ctx,
+                query("{\"field\": \"uid\", \"op\": \"=\", \"rvalue\": \"john.doe\"}"),
+                update("{\"$set\": {\"cn\": \"John Doe\"}}"),
+                null);
+
+        //Nothing changed, so the entry is matched but neither updated nor sent.
+        assertEquals(1, response.getNumMatched());
+        assertEquals(0, response.getNumUpdated());
+        assertEquals(0, response.getNumFailed());
+        assertEquals(0, interceptor.getModifies());
+    }
+
+    @Test
+    public void testUpdate_NoFieldUpdateAccess() throws Exception {
+        ldapServer.add("uid=jill.doe," + BASE_DN, new Attribute[]{
+                new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                new Attribute("uid", "jill.doe"),
+                new Attribute("sn", "Doe"),
+                new Attribute("cn", "Jill Doe"),
+                new Attribute("restricted", "original")});
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.UPDATE);
+        CRUDUpdateResponse response = controller.update(ctx,
+                query("{\"field\": \"uid\", \"op\": \"=\", \"rvalue\": \"jill.doe\"}"),
+                update("{\"$set\": {\"restricted\": \"value\"}}"),
+                null);
+
+        assertEquals(1, response.getNumMatched());
+        assertEquals(0, response.getNumUpdated());
+        assertEquals(1, response.getNumFailed());
+        assertEquals(CrudConstants.ERR_NO_FIELD_UPDATE_ACCESS, ctx.getDocuments().get(0).getErrors().get(0).getErrorCode());
+        assertEquals(0, interceptor.getModifies());
+        assertEquals("original", getAttribute("jill.doe", "restricted"));
+    }
+
+    @Test
+    public void testInsert_ProjectedFromPostRead() throws Exception {
+        JsonDoc document = new JsonDoc(json("{"
+                + "\"objectClass\": [\"top\", \"person\", \"organizationalPerson\", \"inetOrgPerson\"],"
+                + "\"uid\": \"jill.doe\", \"givenName\": \"Jill\", \"sn\": \"Doe\", \"cn\": \"Jill Doe\"}"));
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT, document);
+        CRUDInsertionResponse response = controller.insert(ctx,
+                projection("[{\"field\": \"dn\"}, {\"field\": \"uid\"}, {\"field\": \"cn\"}]"));
+
+        assertFalse(ctx.hasErrors());
+        assertFalse(ctx.hasDocumentErrors());
+        assertEquals(1, response.getNumInserted());
+        JSONAssert.assertEquals(
+                "{\"dn\": \"uid=jill.doe," + BASE_DN + "\", \"uid\": \"jill.doe\", \"cn\": \"Jill Doe\"}",
+                ctx.getDocuments().get(0).getOutputDocument().toString(),
+                true);
+        //The projection was built from the post-read control, not by searching for the entry.
+        assertEquals(0, interceptor.getSearches());
+    }
+
+    @Test
+    public void testInsertAndFind_UniqueValueNeedsEscaping() throws Exception {
+        String uid = "doe, jill+x=y\\z";
+        JsonDoc document = new JsonDoc(json("{"
+                + "\"objectClass\": [\"top\", \"person\", \"organizationalPerson\", \"inetOrgPerson\"],"
+                + "\"uid\": \"doe, jill+x=y\\\\z\", \"givenName\": \"Jill\", \"sn\": \"Doe\", \"cn\": \"Jill Doe\"}"));
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT, document);
+        CRUDInsertionResponse response = controller.insert(ctx, projection("{\"field\": \"uid\"}"));
+        assertFalse(ctx.hasDocumentErrors());
+        assertEquals(1, response.getNumInserted());
+
+        //Pinning the unique attribute reads the entry directly by its DN.
+        List<String> found = find("{\"field\": \"uid\", \"op\": \"=\", \"rvalue\": \"doe, jill+x=y\\\\z\"}",
+                projection("{\"field\": \"uid\"}"));
+        assertEquals(1, found.size());
+        assertEquals(uid, new JsonDoc(json(found.get(0))).get(new Path("uid")).asText());
+    }
+
+    @Test
+    public void testFind_PhaseTimings() throws Exception {
+        controller = new LdapCRUDController(dbResolver, new InMemoryFindPhaseTimings());
+        assertEquals(3, find("{\"field\": \"objectClass\", \"op\": \"=\", \"rvalue\": \"person\"}", projection("{\"field\": \"uid\"}")).size());
+
+        InMemoryFindPhaseTimings timings = (InMemoryFindPhaseTimings) controller.getFindPhaseTimingSink();
+        assertEquals(1, timings.getHistogram(FindPhase.SEARCH).getCount());
+        assertEquals(3, timings.getHistogram(FindPhase.TRANSLATE).getCount());
+        assertEquals(1, timings.getHistogram("person", FindPhase.BUILD_FILTER).getCount());
+        assertTrue(timings.getEntityNames().contains("person"));
+    }
+
+    @Test
+    public void testFind_ProjectionPushedDown() throws Exception {
+        String query = "{\"field\": \"objectClass\", \"op\": \"=\", \"rvalue\": \"person\"}";
+        List<String> unprojected = find(query, projection("{\"field\": \"*\", \"recursive\": true}"));
+        assertEquals(3, unprojected.size());
+
+        for (String projectionJson : new String[]{
+                "{\"field\": \"cn\"}",
+                "[{\"field\": \"dn\"}, {\"field\": \"uid\"}, {\"field\": \"sn\"}]",
+                "[{\"field\": \"*\", \"recursive\": true}, {\"field\": \"givenName\", \"include\": false}]",
+                "[{\"field\": \"objectClass\"}, {\"field\": \"objectClass#\"}]"}) {
+            Projection projection = projection(projectionJson);
+            //Only worth comparing if the projector is actually skipped.
+            assertNotNull(projectionJson, ResultTranslationPlan.compile(md, new TrivialLdapFieldNameTranslator()).project(projection, md));
+
+            //The same documents that running the projector over the whole document would produce.
+            Projector projector = Projector.getInstance(projection, md);
+            List<String> expected = new ArrayList<>();
+            for (String document : unprojected) {
+                expected.add(projector.project(new JsonDoc(json(document)), JsonNodeFactory.withExactBigDecimals(true)).toString());
+            }
+
+            assertEquals(projectionJson, expected, find(query, projection));
+        }
+    }
+
+    @Test
+    public void testDelete_SubtreeFullyMatched() throws Exception {
+        dbResolver.settings.setSubtreeDelete(true);
+        String johnDn = "uid=john.doe," + BASE_DN;
+        addPerson(johnDn, "jimmy.doe", "Jimmy", "Doe");
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.DELETE);
+        CRUDDeleteResponse response = controller.delete(ctx,
+                query("{\"field\": \"sn\", \"op\": \"=\", \"rvalue\": \"Doe\"}"));
+
+        assertFalse(ctx.hasErrors());
+        assertEquals(3, response.getNumDeleted());
+        //john.doe and jimmy.doe are removed by a single subtree delete.
+        assertEquals(2, interceptor.getDeletes());
+        assertFalse(exists(johnDn));
+        assertFalse(exists("uid=jane.doe," + BASE_DN));
+        assertTrue(exists("uid=jack.smith," + BASE_DN));
+    }
+
+    @Test
+    public void testDelete_SubtreePartiallyMatched() throws Exception {
+        dbResolver.settings.setSubtreeDelete(true);
+        String johnDn = "uid=john.doe," + BASE_DN;
+        addPerson(johnDn, "jimmy.doe", "Jimmy", "Doe");
+        addPerson(johnDn, "jill.smith", "Jill", "Smith");
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.DELETE);
+        CRUDDeleteResponse response = controller.delete(ctx,
+                query("{\"field\": \"sn\", \"op\": \"=\", \"rvalue\": \"Doe\"}"));
+
+        //The unmatched child must survive, so john.doe cannot be deleted.
+        assertTrue(exists("uid=jill.smith," + johnDn));
+        assertTrue(exists(johnDn));
+        assertFalse(exists("uid=jimmy.doe," + johnDn));
+        assertFalse(exists("uid=jane.doe," + BASE_DN));
+        assertEquals(2, response.getNumDeleted());
+        assertEquals(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, ctx.getErrors().get(0).getErrorCode());
+    }
+
+    /**
+     * {@link DBResolver} that leases every connection from a single pool.
+     */
+    private static class InMemoryDBResolver implements DBResolver {
+
+        private final LDAPConnectionPool pool;
+        private final LdapCrudSettings settings = new LdapCrudSettings();
+        private final LdapOperationStatistics statistics = new LdapOperationStatistics();
+
+        InMemoryDBResolver(LDAPConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        @Deprecated
+        public LDAPConnection get(DataStore store) throws LDAPException {
+            return pool.getConnection();
+        }
+
+        @Override
+        public LdapConnectionLease lease(DataStore store) throws LDAPException {
+            return lease(store, LdapOperationType.WRITE);
+        }
+
+        @Override
+        public LdapConnectionLease lease(DataStore store, LdapOperationType operationType) throws LDAPException {
+            return new LdapConnectionLease(pool.getConnection(), pool, statistics);
+        }
+
+        @Override
+        public LdapCrudSettings getSettings(DataStore store) {
+            return settings;
+        }
+
+        @Override
+        public LdapOperationStatistics getStatistics(DataStore store) {
+            return statistics;
+        }
+
+    }
+
+    /**
+     * Counts the searches, modifies and deletes the server receives, and rejects modifies of a chosen entry.
+     */
+    private static class RecordingInterceptor extends InMemoryOperationInterceptor {
+
+        private final AtomicInteger searches = new AtomicInteger();
+        private final AtomicInteger modifies = new AtomicInteger();
+        private final AtomicInteger deletes = new AtomicInteger();
+        private volatile String rejectedDn;
+
+        void reset() {
+            searches.set(0);
+            modifies.set(0);
+            deletes.set(0);
+            rejectedDn = null;
+        }
+
+        void rejectModify(String dn) {
+            rejectedDn = dn;
+        }
+
+        int getSearches() {
+            return searches.get();
+        }
+
+        int getModifies() {
+            return modifies.get();
+        }
+
+        int getDeletes() {
+            return deletes.get();
+        }
+
+        @Override
+        public void processSearchRequest(InMemoryInterceptedSearchRequest request) throws LDAPException {
+            searches.incrementAndGet();
+        }
+
+        @Override
+        public void processModifyRequest(InMemoryInterceptedModifyRequest request) throws LDAPException {
+            modifies.incrementAndGet();
+            if (request.getRequest().getDN().equalsIgnoreCase(rejectedDn)) {
+                throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM, "Modify rejected by test.");
+            }
+        }
+
+        @Override
+        public void processDeleteRequest(InMemoryInterceptedDeleteRequest request) throws LDAPException {
+            deletes.incrementAndGet();
+        }
+
+    }
+
+}
@@ -31,6 +31,8 @@ import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.test.metadata.FakeDataStore;
 import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
 
 public class LdapCrudUtilTest {
 
@@ -98,6 +100,17 @@ public class LdapCrudUtilTest {
         assertEquals("uniqueId=uniqueValue,baseDn", LdapCrudUtil.createDN(store, "uniqueValue"));
     }
 
+    @Test
+    public void testCreateDN_EscapesSpecialCharacters() throws LDAPException{
+        LdapDataStore store = new LdapDataStore("database", "dc=example,dc=com", "uid");
+
+        DN dn = new DN(LdapCrudUtil.createDN(store, "doe, john+x=y\\z"));
+
+        assertEquals(1, dn.getRDN().getAttributeValues().length);
+        assertEquals("doe, john+x=y\\z", dn.getRDN().getAttributeValues()[0]);
+        assertEquals(new DN("dc=example,dc=com"), dn.getParent());
+    }
+
     /** Fake implementation of {@link LdapFieldNameTranslator} for testing purposes. */
     private static final class FakeLdapFieldNameTranslator implements LdapFieldNameTranslator{
 
@@ -0,0 +1,225 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LatencyInjectingInterceptor;
+import com.redhat.lightblue.ldap.test.LatencyInjectingInterceptor.Operation;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class SearchResultStreamerTest {
+
+    private static final String BASE_DN = "ou=People,dc=example,dc=com";
+    private static final int NUMBER_OF_ENTRIES = 50;
+
+    private static final LatencyInjectingInterceptor LATENCY = new LatencyInjectingInterceptor();
+
+    @ClassRule
+    public static LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance()
+            .addOperationInterceptor(LATENCY);
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        ldapServer.add(BASE_DN, new Attribute[]{
+                new Attribute("objectClass", "top"),
+                new Attribute("objectClass", "organizationalUnit"),
+                new Attribute("ou", "People")});
+
+        for (int i = 0; i < NUMBER_OF_ENTRIES; i++) {
+            ldapServer.add("uid=user" + i + "," + BASE_DN, new Attribute[]{
+                    new Attribute("objectClass", "top"),
+                    new Attribute("objectClass", "person"),
+                    new Attribute("uid", "user" + i),
+                    new Attribute("cn", "User " + i),
+                    new Attribute("sn", "User")});
+        }
+    }
+
+    private LDAPConnection connection;
+
+    @Before
+    public void before() throws Exception {
+        connection = ldapServer.getLDAPConnection();
+    }
+
+    @After
+    public void after() {
+        connection.close();
+        LATENCY.reset();
+    }
+
+    private SearchRequest createSearchRequest(String filter) throws Exception {
+        return new SearchRequest(BASE_DN, SearchScope.ONE, filter, "uid");
+    }
+
+    @Test
+    public void testStream_Windowed() throws Exception {
+        List<String> uids = new ArrayList<>();
+        SearchResult result = SearchResultStreamer.stream(connection, createSearchRequest("(objectClass=person)"), 5,
+                (SearchResultEntry entry) -> uids.add(entry.getAttributeValue("uid")));
+
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        assertEquals(NUMBER_OF_ENTRIES, uids.size());
+        assertNull(result.getSearchEntries());
+    }
+
+    @Test
+    public void testStream_Inline() throws Exception {
+        List<String> uids = new ArrayList<>();
+        SearchResult result = SearchResultStreamer.stream(connection, createSearchRequest("(objectClass=person)"), 0,
+                (SearchResultEntry entry) -> uids.add(entry.getAttributeValue("uid")));
+
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        assertEquals(NUMBER_OF_ENTRIES, uids.size());
+        assertNull(result.getSearchEntries());
+    }
+
+    @Test
+    public void testStream_SynchronousMode() throws Exception {
+        LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setUseSynchronousMode(true);
+        LDAPConnection synchronousConnection = new LDAPConnection(options, "localhost", ldapServer.getPort());
+
+        try {
+            List<String> uids = new ArrayList<>();
+            SearchResultStreamer.stream(synchronousConnection, createSearchRequest("(objectClass=person)"), 5,
+                    (SearchResultEntry entry) -> uids.add(entry.getAttributeValue("uid")));
+
+            assertEquals(NUMBER_OF_ENTRIES, uids.size());
+        } finally {
+            synchronousConnection.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStream_Windowed_ProcessorFailure() throws Exception {
+        SearchResultStreamer.stream(connection, createSearchRequest("(objectClass=person)"), 1,
+                (SearchResultEntry entry) -> {
+                    throw new IllegalStateException("fake failure");
+                });
+    }
+
+    @Test
+    public void testStream_Windowed_ProcessorFailure_ConnectionStillUsable() throws Exception {
+        try {
+            testStream_Windowed_ProcessorFailure();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        testStream_Windowed();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStream_Inline_ProcessorFailure() throws Exception {
+        SearchResultStreamer.stream(connection, createSearchRequest("(objectClass=person)"), 0,
+                (SearchResultEntry entry) -> {
+                    throw new IllegalStateException("fake failure");
+                });
+    }
+
+    @Test
+    public void testStreamPages() throws Exception {
+        List<String> uids = new ArrayList<>();
+        SearchResult result = SearchResultStreamer.streamPages(connection, createSearchRequest("(objectClass=person)"), 7, 5,
+                (SearchResultEntry entry) -> uids.add(entry.getAttributeValue("uid")));
+
+        assertEquals(ResultCode.SUCCESS, result.getResultCode());
+        assertEquals(NUMBER_OF_ENTRIES, uids.size());
+        assertEquals(NUMBER_OF_ENTRIES, new HashSet<>(uids).size());
+        assertEquals(NUMBER_OF_ENTRIES % 7, result.getEntryCount());
+    }
+
+    @Test
+    public void testStreamPages_PagingDisabled() throws Exception {
+        List<String> uids = new ArrayList<>();
+        SearchResult result = SearchResultStreamer.streamPages(connection, createSearchRequest("(objectClass=person)"), 0, 5,
+                (SearchResultEntry entry) -> uids.add(entry.getAttributeValue("uid")));
+
+        assertEquals(NUMBER_OF_ENTRIES, uids.size());
+        assertEquals(NUMBER_OF_ENTRIES, result.getEntryCount());
+    }
+
+    @Test(expected = LDAPSearchException.class)
+    public void testStream_Windowed_NoSuchObject() throws Exception {
+        SearchResultStreamer.stream(connection,
+                new SearchRequest("ou=DoesNotExist,dc=example,dc=com", SearchScope.ONE, "(objectClass=*)"), 5,
+                (SearchResultEntry entry) -> {});
+    }
+
+    private void assertSearchTimesOut(int windowSize) throws Exception {
+        LATENCY.setLatencyMillis(Operation.SEARCH, 2000);
+        SearchRequest searchRequest = createSearchRequest("(objectClass=person)");
+        searchRequest.setResponseTimeoutMillis(200);
+
+        long start = System.currentTimeMillis();
+        try {
+            SearchResultStreamer.stream(connection, searchRequest, windowSize, (SearchResultEntry entry) -> {});
+            fail("Expected the search to time out");
+        } catch (LDAPSearchException e) {
+            assertEquals(ResultCode.TIMEOUT, e.getResultCode());
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void testStream_Windowed_ResponseTimeout() throws Exception {
+        assertSearchTimesOut(5);
+    }
+
+    @Test
+    public void testStream_Inline_ResponseTimeout() throws Exception {
+        assertSearchTimesOut(0);
+    }
+
+    @Test
+    public void testCopy_KeepsResponseTimeout() throws Exception {
+        SearchRequest searchRequest = createSearchRequest("(objectClass=person)");
+        assertEquals(-1, SearchResultStreamer.copy(searchRequest, null).getResponseTimeoutMillis(null));
+
+        searchRequest.setResponseTimeoutMillis(1234);
+        assertEquals(1234, SearchResultStreamer.copy(searchRequest, null).getResponseTimeoutMillis(null));
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.instrumentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class InMemoryFindPhaseTimingsTest {
+
+    @Test
+    public void testRecord(){
+        InMemoryFindPhaseTimings timings = new InMemoryFindPhaseTimings();
+        timings.record("person", FindPhase.SEARCH, 2000000);
+        timings.record("person", FindPhase.TRANSLATE, 1000);
+        timings.record("group", FindPhase.SEARCH, 4000000);
+
+        assertEquals(2, timings.getHistogram(FindPhase.SEARCH).getCount());
+        assertEquals(4, timings.getHistogram(FindPhase.SEARCH).getMaxMillis(), 0.0);
+        assertEquals(1, timings.getHistogram(FindPhase.TRANSLATE).getCount());
+        assertEquals(0, timings.getHistogram(FindPhase.PROJECT).getCount());
+
+        assertEquals(1, timings.getHistogram("person", FindPhase.SEARCH).getCount());
+        assertEquals(2, timings.getHistogram("person", FindPhase.SEARCH).getMaxMillis(), 0.0);
+        assertEquals(0, timings.getHistogram("group", FindPhase.TRANSLATE).getCount());
+        assertNull(timings.getHistogram("unknown", FindPhase.SEARCH));
+
+        assertEquals(new TreeSet<>(Arrays.asList("group", "person")), timings.getEntityNames());
+    }
+
+    @Test
+    public void testRecord_NullEntityName(){
+        InMemoryFindPhaseTimings timings = new InMemoryFindPhaseTimings();
+        timings.record(null, FindPhase.BUILD_FILTER, 1000);
+
+        assertEquals(1, timings.getHistogram(FindPhase.BUILD_FILTER).getCount());
+        assertTrue(timings.getEntityNames().isEmpty());
+    }
+
+    @Test
+    public void testReset(){
+        InMemoryFindPhaseTimings timings = new InMemoryFindPhaseTimings();
+        timings.record("person", FindPhase.SEARCH, 1000);
+        timings.reset();
+
+        assertEquals(0, timings.getHistogram(FindPhase.SEARCH).getCount());
+        assertTrue(timings.getEntityNames().isEmpty());
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.instrumentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+
+public class SlowOperationLogTest {
+
+    private static final long MILLIS = 1000000L;
+
+    private static class RecordingSlowOperationLog extends SlowOperationLog {
+
+        private final List<String> records = new ArrayList<>();
+
+        RecordingSlowOperationLog(long thresholdMillis, int maxRecordsPerSecond) {
+            super(thresholdMillis, maxRecordsPerSecond);
+        }
+
+        @Override
+        protected void write(String record) {
+            records.add(record);
+        }
+
+    }
+
+    @Test
+    public void testRecord_BelowThreshold() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(100, 10);
+
+        assertFalse(log.isSlow(99 * MILLIS));
+        log.record("person", new SearchRequest("dc=example,dc=com", SearchScope.SUB, "(uid=john)"), 0, 0, 1, 10, 99 * MILLIS);
+
+        assertTrue(log.records.isEmpty());
+    }
+
+    @Test
+    public void testRecord() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(100, 10);
+        SearchRequest searchRequest = new SearchRequest("ou=Users,dc=example,dc=com", SearchScope.SUB, "(&(objectClass=person)(cn=John Smith))", "uid", "cn");
+        searchRequest.addControl(new ServerSideSortRequestControl(false, new SortKey("cn"), new SortKey("uid", true)));
+        searchRequest.addControl(new VirtualListViewRequestControl(1, 0, 9, 0, null, false));
+
+        log.record("person", searchRequest, 500, 0, 10, 1024, 150 * MILLIS, 40 * MILLIS);
+
+        assertEquals(1, log.records.size());
+        assertEquals("slow ldap search: entity=person baseDN=\"ou=Users,dc=example,dc=com\" scope=sub"
+                + " filter=\"(&(objectClass=person)(cn=John Smith))\" attributes=uid,cn"
+                + " controls=\"sort(+cn -uid),vlv(offset=1 before=0 after=9)\""
+                + " entries=10 bytesReceived=1024 elapsedMillis=150.000 processingMillis=40.000 suppressed=0",
+                log.records.get(0));
+    }
+
+    @Test
+    public void testRecord_ProcessingIsNotSlow() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(100, 10);
+
+        log.record("person", new SearchRequest("dc=example,dc=com", SearchScope.SUB, "(uid=*)"), 0, 0, 1000, 10240,
+                90 * MILLIS, 500 * MILLIS);
+
+        assertTrue(log.records.isEmpty());
+    }
+
+    @Test
+    public void testRecordWrite() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(100, 10);
+
+        log.recordWrite("person", OperationType.MODIFY, "uid=john,dc=example,dc=com", ResultCode.SUCCESS, 99 * MILLIS);
+        assertTrue(log.records.isEmpty());
+
+        log.recordWrite("person", OperationType.MODIFY, "uid=john,dc=example,dc=com", ResultCode.SUCCESS, 120 * MILLIS);
+        assertEquals(1, log.records.size());
+        assertEquals("slow ldap write: entity=person operation=modify dn=\"uid=john,dc=example,dc=com\""
+                + " result=success elapsedMillis=120.000 suppressed=0",
+                log.records.get(0));
+    }
+
+    @Test
+    public void testRecord_PagedSearch() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(0, 10);
+
+        log.record("person", new SearchRequest("dc=example,dc=com", SearchScope.SUB, "(uid=*)"), 500, 0, 0, 0, 0);
+
+        assertTrue(log.records.get(0).contains(" attributes=- controls=\"paging(size=500)\" "));
+    }
+
+    @Test
+    public void testRecord_DirectLookups() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(0, 10);
+
+        log.record("person", new SearchRequest("dc=example,dc=com", SearchScope.SUB, "(uid=john)"), 500, 2, 1, 0, 0);
+
+        assertTrue(log.records.get(0).contains(" scope=base "));
+        assertTrue(log.records.get(0).contains(" controls=- lookups=2 "));
+    }
+
+    @Test
+    public void testRecord_RateLimited() throws LDAPException{
+        RecordingSlowOperationLog log = new RecordingSlowOperationLog(0, 2);
+        SearchRequest searchRequest = new SearchRequest("dc=example,dc=com", SearchScope.SUB, "(uid=john)");
+
+        for (int x = 0; x < 5; x++) {
+            log.record("person", searchRequest, 0, 0, 1, 10, MILLIS);
+        }
+
+        //Unless the second rolled over part way through, only the first two are written.
+        if (log.records.size() == 2) {
+            assertEquals(3, log.getSuppressedCount());
+        }
+        assertTrue(log.records.size() < 5);
+    }
+
+    @Test
+    public void testGetSize(){
+        SearchResultEntry entry = new SearchResultEntry("uid=john,dc=com",
+                new Attribute[]{new Attribute("cn", "John", "Johnny")}, new Control[0]);
+
+        assertEquals("uid=john,dc=com".length() + "cn".length() + "John".length() + "Johnny".length(),
+                SlowOperationLog.getSize(entry));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_NoRecordsPerSecond(){
+        new SlowOperationLog(100, 0);
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadResource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.Constants;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.matchingrules.CaseExactStringMatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.util.StaticUtils;
+
+public class ModificationTranslatorFromJsonTest {
+
+    private static final String DN = "uid=someuid,dc=example,dc=com";
+
+    private ModificationTranslatorFromJson translator;
+
+    @Before
+    public void before() throws Exception {
+        EntityMetadata md = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND,
+                json(loadResource("./metadata/modificationTranslatorTest-metadata.json"), true), null, null);
+        translator = new ModificationTranslatorFromJson(md, new TrivialLdapFieldNameTranslator());
+    }
+
+    @After
+    public void after(){
+        Error.reset();
+    }
+
+    private static Entry createEntry(String... members) {
+        List<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("uid", "someuid"));
+        attributes.add(new Attribute("cn", "Some Name"));
+        if (members.length > 0) {
+            attributes.add(new Attribute("member", members));
+        }
+        return new Entry(DN, attributes);
+    }
+
+    private static Modification findModification(ModifyRequest request, String attributeName, ModificationType type) {
+        for (Modification modification : request.getModifications()) {
+            if (modification.getAttributeName().equals(attributeName) && modification.getModificationType().equals(type)) {
+                return modification;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testTranslate_ReplacesEveryField() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"uid\":\"someuid\",\"cn\":\"Some Name\",\"member\":[\"a\",\"b\"]}")), DN);
+
+        assertEquals(3, request.getModifications().size());
+        for (Modification modification : request.getModifications()) {
+            assertEquals(ModificationType.REPLACE, modification.getModificationType());
+        }
+    }
+
+    @Test
+    public void testTranslate_Diff_NothingChanged() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"uid\":\"someuid\",\"cn\":\"Some Name\",\"member\":[\"b\",\"a\"]}")), DN,
+                createEntry("a", "b"));
+
+        assertNull(request);
+    }
+
+    @Test
+    public void testTranslate_Diff_SimpleFieldChanged() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"uid\":\"someuid\",\"cn\":\"Another Name\"}")), DN,
+                createEntry());
+
+        assertEquals(1, request.getModifications().size());
+        Modification modification = findModification(request, "cn", ModificationType.REPLACE);
+        assertArrayEquals(new String[]{"Another Name"}, modification.getValues());
+    }
+
+    @Test
+    public void testTranslate_Diff_ValueDiffersOnlyInCase() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"cn\":\"some name\",\"member\":[\"A\",\"b\"]}")), DN,
+                createEntry("a", "B"));
+
+        assertNull(request);
+    }
+
+    @Test
+    public void testTranslate_Diff_CaseExactAttribute() throws Exception {
+        Entry entry = new Entry(DN, new Attribute("cn", CaseExactStringMatchingRule.getInstance(), "Some Name"));
+
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"cn\":\"some name\"}")), DN,
+                entry);
+
+        assertEquals(1, request.getModifications().size());
+        assertArrayEquals(new String[]{"some name"}, findModification(request, "cn", ModificationType.REPLACE).getValues());
+    }
+
+    @Test
+    public void testTranslate_Diff_DateUnchanged() throws Exception {
+        Entry entry = createEntry();
+        //Stored without milliseconds, but written with them.
+        entry.addAttribute("createdDate", "20150101000000Z");
+        Date date = StaticUtils.decodeGeneralizedTime("20150101000000Z");
+
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"createdDate\":\"" + Constants.getDateFormat().format(date) + "\"}")), DN,
+                entry);
+
+        assertNull(request);
+    }
+
+    @Test
+    public void testTranslate_Diff_DateChanged() throws Exception {
+        Entry entry = createEntry();
+        entry.addAttribute("createdDate", "20150101000000Z");
+        Date date = StaticUtils.decodeGeneralizedTime("20150101000001Z");
+
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"createdDate\":\"" + Constants.getDateFormat().format(date) + "\"}")), DN,
+                entry);
+
+        assertEquals(1, request.getModifications().size());
+        assertArrayEquals(new String[]{StaticUtils.encodeGeneralizedTime(date)},
+                findModification(request, "createdDate", ModificationType.REPLACE).getValues());
+    }
+
+    @Test
+    public void testTranslate_Diff_NewAttribute() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"description\":\"hello\",\"member\":[\"a\"]}")), DN,
+                createEntry());
+
+        assertEquals(2, request.getModifications().size());
+        assertArrayEquals(new String[]{"hello"}, findModification(request, "description", ModificationType.ADD).getValues());
+        assertArrayEquals(new String[]{"a"}, findModification(request, "member", ModificationType.ADD).getValues());
+    }
+
+    @Test
+    public void testTranslate_Diff_ArrayValuesAddedAndDeleted() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"member\":[\"a\",\"b\",\"c\",\"d\",\"f\"]}")), DN,
+                createEntry("a", "b", "c", "d", "e"));
+
+        assertEquals(2, request.getModifications().size());
+        assertArrayEquals(new String[]{"e"}, findModification(request, "member", ModificationType.DELETE).getValues());
+        assertArrayEquals(new String[]{"f"}, findModification(request, "member", ModificationType.ADD).getValues());
+    }
+
+    @Test
+    public void testTranslate_Diff_ArrayMostlyChanged() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"member\":[\"x\",\"y\"]}")), DN,
+                createEntry("a", "b"));
+
+        assertEquals(1, request.getModifications().size());
+        assertArrayEquals(new String[]{"x", "y"}, findModification(request, "member", ModificationType.REPLACE).getValues());
+    }
+
+    @Test
+    public void testTranslate_Diff_NullValueDeletesAttribute() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"cn\":null}")), DN,
+                createEntry());
+
+        assertEquals(1, request.getModifications().size());
+        assertEquals(0, findModification(request, "cn", ModificationType.DELETE).getValues().length);
+    }
+
+    @Test
+    public void testTranslate_Diff_RemoveMissingAttributes() throws Exception {
+        Entry entry = createEntry("a");
+        entry.addAttribute("objectClass", "person");
+
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"uid\":\"someuid\",\"member\":[\"a\"]}")), DN,
+                entry, true);
+
+        //objectClass is not a field on the entity, so it must be left alone.
+        assertEquals(1, request.getModifications().size());
+        assertEquals(0, findModification(request, "cn", ModificationType.DELETE).getValues().length);
+    }
+
+    @Test
+    public void testTranslate_Diff_MissingAttributesKeptByDefault() throws Exception {
+        ModifyRequest request = translator.translate(
+                new JsonDoc(json("{\"uid\":\"someuid\",\"member\":[\"a\"]}")), DN,
+                createEntry("a"));
+
+        assertNull(request);
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.ReferenceField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Version;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+public class ResultTranslationPlanTest {
+
+    private final JsonNodeFactory factory = JsonNodeFactory.withExactBigDecimals(true);
+
+    private static EntityMetadata createMetadata(String version) {
+        EntityMetadata md = new EntityMetadata("person");
+        md.setVersion(new Version(version, null, null));
+        md.getFields().addNew(new SimpleField("dn", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("cn", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("employeeNumber", IntegerType.TYPE));
+
+        ObjectField address = new ObjectField("address");
+        address.getFields().addNew(new SimpleField("street", StringType.TYPE));
+        md.getFields().addNew(address);
+        md.getFields().addNew(new ObjectField("empty"));
+        return md;
+    }
+
+    @Test
+    public void testTranslate() throws JSONException {
+        ResultTranslationPlan plan = ResultTranslationPlan.compile(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator());
+
+        //dn is not an attribute, so there is no step for it.
+        assertEquals(5, plan.getStepCount());
+
+        JsonDoc document = plan.translate(factory, new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
+                new Attribute("cn", "John Doe"),
+                new Attribute("employeeNumber", "42"),
+                new Attribute("street", "Main St")
+        }));
+
+        JSONAssert.assertEquals(
+                "{\"cn\":\"John Doe\",\"employeeNumber\":42,\"address\":{\"street\":\"Main St\"},\"empty\":null,\"dn\":\"uid=john.doe,dc=example,dc=com\"}",
+                document.toString(),
+                true);
+
+        //Fields are in the same order as the metadata.
+        Iterator<String> fieldNames = document.getRoot().fieldNames();
+        assertEquals("cn", fieldNames.next());
+        assertEquals("employeeNumber", fieldNames.next());
+        assertEquals("address", fieldNames.next());
+        assertEquals("empty", fieldNames.next());
+        assertEquals("dn", fieldNames.next());
+    }
+
+    @Test
+    public void testTranslate_NestedDnPath() throws JSONException {
+        LdapFieldNameTranslator fieldNameTranslator = new TrivialLdapFieldNameTranslator() {
+
+            @Override
+            public Path translateAttributeName(String attributeName) {
+                return "dn".equals(attributeName) ? new Path("address.dn") : super.translateAttributeName(attributeName);
+            }
+
+        };
+
+        //The top level dn field is no longer the dn, so is treated as any other attribute.
+        JsonDoc document = ResultTranslationPlan.compile(createMetadata("1.0.0"), fieldNameTranslator).translate(factory,
+                new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{new Attribute("street", "Main St")}));
+
+        JSONAssert.assertEquals(
+                "{\"dn\":null,\"cn\":null,\"employeeNumber\":null,\"address\":{\"street\":\"Main St\",\"dn\":\"uid=john.doe,dc=example,dc=com\"},\"empty\":null}",
+                document.toString(),
+                true);
+    }
+
+    @Test
+    public void testTranslate_ErrorHasFieldContext() {
+        ResultTranslationPlan plan = ResultTranslationPlan.compile(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator());
+
+        try {
+            plan.translate(factory, new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
+                    new Attribute("employeeNumber", "not a number")
+            }));
+            fail("Expected an Error");
+        } catch (Error e) {
+            assertTrue(e.getContext(), e.getContext().endsWith("employeeNumber"));
+        }
+    }
+
+    @Test
+    public void testCache() {
+        ResultTranslationPlanCache cache = new ResultTranslationPlanCache();
+
+        ResultTranslationPlan plan = cache.get(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator());
+        assertSame(plan, cache.get(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator()));
+        assertNotSame(plan, cache.get(createMetadata("2.0.0"), new TrivialLdapFieldNameTranslator()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCache_DifferentFieldNameTranslator() {
+        ResultTranslationPlanCache cache = new ResultTranslationPlanCache();
+
+        ResultTranslationPlan plan = cache.get(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator());
+        assertNotSame(plan, cache.get(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator() {}));
+    }
+
+    @Test
+    public void testCache_WithoutVersion() {
+        ResultTranslationPlanCache cache = new ResultTranslationPlanCache();
+
+        EntityMetadata md = createMetadata("1.0.0");
+        md.setVersion(null);
+        cache.get(md, new TrivialLdapFieldNameTranslator());
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCache_MaxSize() {
+        ResultTranslationPlanCache cache = new ResultTranslationPlanCache(2);
+
+        cache.get(createMetadata("1.0.0"), new TrivialLdapFieldNameTranslator());
+        cache.get(createMetadata("2.0.0"), new TrivialLdapFieldNameTranslator());
+        cache.get(createMetadata("3.0.0"), new TrivialLdapFieldNameTranslator());
+
+        assertEquals(1, cache.size());
+    }
+
+    private static EntityMetadata createProjectionMetadata() {
+        EntityMetadata md = createMetadata("1.0.0");
+        md.getFields().addNew(new SimpleField("objectType", StringType.TYPE));
+        md.getFields().addNew(new ArrayField("mail", new SimpleArrayElement(StringType.TYPE)));
+        md.getFields().addNew(new ArrayField("emptyArray", new SimpleArrayElement(StringType.TYPE)));
+        md.getFields().addNew(new ArrayField("absentArray", new SimpleArrayElement(StringType.TYPE)));
+        return md;
+    }
+
+    private static SearchResultEntry createProjectionEntry() {
+        return new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
+                new Attribute("cn", "John Doe"),
+                new Attribute("street", "Main St"),
+                new Attribute("mail", "john@example.com", "jd@example.com"),
+                new Attribute("emptyArray")
+        });
+    }
+
+    /**
+     * Asserts that the projected plan writes exactly what the {@link Projector} keeps of the full translation.
+     */
+    private void assertSameAsProjector(String projectionJson) throws Exception {
+        EntityMetadata md = createProjectionMetadata();
+        Projection projection = Projection.fromJson(JsonUtils.json(projectionJson.replace('\'', '"')));
+        ResultTranslationPlan plan = ResultTranslationPlan.compile(md, new TrivialLdapFieldNameTranslator());
+
+        JsonDoc expected = Projector.getInstance(projection, md).project(plan.translate(factory, createProjectionEntry()), factory);
+
+        ResultTranslationPlan projectedPlan = plan.project(projection, md);
+        assertNotNull(projectedPlan);
+        assertTrue(projectedPlan.isProjected());
+
+        //Compared as strings, so that the fields are also in the same order.
+        assertEquals(projectionJson, expected.toString(), projectedPlan.translate(factory, createProjectionEntry()).toString());
+    }
+
+    @Test
+    public void testProject_SameAsProjector() throws Exception {
+        assertSameAsProjector("{'field':'*','recursive':true}");
+        assertSameAsProjector("{'field':'cn'}");
+        assertSameAsProjector("{'field':'dn'}");
+        assertSameAsProjector("{'field':'address.street'}");
+        assertSameAsProjector("{'field':'address'}");
+        assertSameAsProjector("{'field':'address','recursive':true}");
+        assertSameAsProjector("{'field':'empty'}");
+        assertSameAsProjector("{'field':'objectType'}");
+        assertSameAsProjector("{'field':'mail'}");
+        assertSameAsProjector("{'field':'mail.*'}");
+        assertSameAsProjector("{'field':'mail','recursive':true}");
+        assertSameAsProjector("{'field':'mail#'}");
+        assertSameAsProjector("{'field':'emptyArray'}");
+        assertSameAsProjector("{'field':'emptyArray.*'}");
+        assertSameAsProjector("{'field':'absentArray','recursive':true}");
+        assertSameAsProjector("[{'field':'*','recursive':true},{'field':'mail','include':false}]");
+        assertSameAsProjector("[{'field':'*','recursive':true},{'field':'address','include':false}]");
+        assertSameAsProjector("[{'field':'mail','recursive':true},{'field':'mail#','include':true},{'field':'cn'}]");
+        assertSameAsProjector("[{'field':'address','recursive':true},{'field':'address.street','include':false}]");
+    }
+
+    @Test
+    public void testProject_ArrayProjectionNotPushedDown() throws Exception {
+        EntityMetadata md = createProjectionMetadata();
+        ResultTranslationPlan plan = ResultTranslationPlan.compile(md, new TrivialLdapFieldNameTranslator());
+
+        assertNull(plan.project(Projection.fromJson(JsonUtils.json(
+                "{\"field\":\"mail\",\"range\":[0,1],\"project\":{\"field\":\"*\"}}")), md));
+        assertNull(plan.project(Projection.fromJson(JsonUtils.json("{\"field\":\"mail.1\"}")), md));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testProject_UnsupportedFieldStillFails() throws Exception {
+        EntityMetadata md = createProjectionMetadata();
+        md.getFields().addNew(new ReferenceField("reference"));
+
+        ResultTranslationPlan.compile(md, new TrivialLdapFieldNameTranslator())
+                .project(Projection.fromJson(JsonUtils.json("{\"field\":\"cn\"}")), md)
+                .translate(factory, new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{new Attribute("reference", "x")}));
+    }
+
+}
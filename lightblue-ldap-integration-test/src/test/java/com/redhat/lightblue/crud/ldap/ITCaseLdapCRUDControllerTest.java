@@ -40,6 +40,7 @@ import com.redhat.lightblue.crud.DeleteRequest;
 import com.redhat.lightblue.crud.FindRequest;
 import com.redhat.lightblue.crud.InsertionRequest;
 import com.redhat.lightblue.crud.SaveRequest;
+import com.redhat.lightblue.crud.UpdateRequest;
 import com.redhat.lightblue.ldap.test.LightblueLdapTestHarness;
 import com.redhat.lightblue.test.FakeClientIdentification;
 import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
@@ -154,6 +155,25 @@ public class ITCaseLdapCRUDControllerTest extends LightblueLdapTestHarness {
         assertEquals(3, findResponse.getMatchCount());
     }
 
+    /**
+     * The projection asks for more than the dn, so the inserted entry needs to be read back.
+     */
+    @Test
+    public void testInsertSingle_ProjectAttributes() throws Exception {
+        //Test
+        Response response = getLightblueFactory().getMediator().insert(
+                createRequest_FromResource(InsertionRequest.class, "./crud/insert/person-insert-single-projected.json"));
+
+        assertValidResponse(response);
+        assertEquals(1, response.getModifiedCount());
+
+        JsonNode entityData = response.getEntityData();
+        assertNotNull(entityData);
+        JSONAssert.assertEquals(
+                "[{" + generatePersonDnJson("john.doe") + ",\"uid\":\"john.doe\",\"cn\":\"John Doe\"}]",
+                entityData.toString(), true);
+    }
+
     @Test
     public void testFindSingle() throws Exception {
         //Setup
@@ -291,6 +311,33 @@ public class ITCaseLdapCRUDControllerTest extends LightblueLdapTestHarness {
         assertPersonEntryValues(uid, cn, null);
     }
 
+    /**
+     * optional does not exist on the original record, ensure that it has been added.
+     */
+    @Test
+    public void testUpdate_SetValue() throws Exception {
+        //Setup
+        assertValidResponse(getLightblueFactory().getMediator().insert(
+                createRequest_FromResource(InsertionRequest.class, "./crud/insert/person-insert-single.json")));
+
+        //Test
+        Response response = getLightblueFactory().getMediator().update(
+                createRequest_FromResource(UpdateRequest.class, "./crud/update/person-update-simple.json"));
+
+        //Asserts
+        assertValidResponse(response);
+        assertEquals(1, response.getModifiedCount());
+        assertEquals(1, response.getMatchCount());
+
+        JsonNode entityData = response.getEntityData();
+        assertNotNull(entityData);
+        JSONAssert.assertEquals(
+                "[{" + generatePersonDnJson("john.doe") + "}]",
+                entityData.toString(), false);
+
+        assertPersonEntryValues("john.doe", "John Doe", "updated value");
+    }
+
     @Test
     public void testFindMany() throws Exception {
         //Setup
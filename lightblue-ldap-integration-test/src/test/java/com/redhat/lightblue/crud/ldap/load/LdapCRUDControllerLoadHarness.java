@@ -0,0 +1,238 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.load;
+
+import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+import com.redhat.lightblue.crud.DeleteRequest;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.crud.InsertionRequest;
+import com.redhat.lightblue.crud.SaveRequest;
+import com.redhat.lightblue.crud.UpdateRequest;
+import com.redhat.lightblue.ldap.test.LightblueLdapTestHarness;
+import com.redhat.lightblue.mediator.Mediator;
+import com.unboundid.ldap.sdk.Attribute;
+
+/**
+ * Load harness that drives the {@link com.redhat.lightblue.crud.ldap.LdapCRUDController} through
+ * the mediator against the in-memory directory, and reports the throughput and latency
+ * percentiles of each operation.<br>
+ * The directory is seeded with synthetic person entries, then a number of threads each
+ * repeatedly choose an operation from the mix and run it against a random entry. Finds, saves
+ * and updates act on the seeded entries, while deletes remove entries that were inserted during
+ * the run so that the size of the directory stays stable. A warm up period is run and discarded
+ * before measuring.<br>
+ * Not run as part of the build, run with <code>mvn test -Dtest=LdapCRUDControllerLoadHarness</code>
+ * and tune with the system properties:
+ * <ul>
+ * <li><code>load.entries</code> - number of entries to seed, default 1000.</li>
+ * <li><code>load.threads</code> - number of concurrent clients, default 8.</li>
+ * <li><code>load.warmupSeconds</code> - default 5.</li>
+ * <li><code>load.durationSeconds</code> - default 30.</li>
+ * <li><code>load.mix</code> - default <code>find=70,save=10,insert=10,delete=10</code>.</li>
+ * </ul>
+ *
+ * @author dcrissman
+ */
+public class LdapCRUDControllerLoadHarness extends LightblueLdapTestHarness {
+
+    private static final String BASEDN_USERS = "ou=Users,dc=example,dc=com";
+
+    private static final int ENTRIES = Integer.getInteger("load.entries", 1000);
+    private static final int THREADS = Integer.getInteger("load.threads", 8);
+    private static final long WARMUP_SECONDS = Long.getLong("load.warmupSeconds", 5);
+    private static final long DURATION_SECONDS = Long.getLong("load.durationSeconds", 30);
+    private static final String MIX = System.getProperty("load.mix", "find=70,save=10,insert=10,delete=10");
+
+    private static final String OBJECT_CLASSES = "\"objectClass\":[\"top\",\"person\",\"organizationalPerson\",\"inetOrgPerson\"]";
+
+    private final AtomicLong insertSequence = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> inserted = new ConcurrentLinkedQueue<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        System.setProperty("ldap.person.basedn", BASEDN_USERS);
+
+        ldapServer.add(BASEDN_USERS, new Attribute[]{
+                new Attribute("objectClass", "top"),
+                new Attribute("objectClass", "organizationalUnit"),
+                new Attribute("ou", "Users")});
+
+        for (int x = 0; x < ENTRIES; x++) {
+            String uid = seededUid(x);
+            ldapServer.add("uid=" + uid + "," + BASEDN_USERS, new Attribute[]{
+                    new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                    new Attribute("uid", uid),
+                    new Attribute("givenName", "Seeded"),
+                    new Attribute("sn", "User" + x),
+                    new Attribute("cn", "Seeded User" + x)});
+        }
+    }
+
+    public LdapCRUDControllerLoadHarness() throws Exception {
+        super();
+    }
+
+    @Override
+    protected JsonNode[] getMetadataJsonNodes() throws IOException {
+        return new JsonNode[]{loadJsonNode("./metadata/person-metadata.json")};
+    }
+
+    private static String seededUid(int x) {
+        return "seeded" + x;
+    }
+
+    @Test
+    public void runLoad() throws Exception {
+        Mediator mediator = getLightblueFactory().getMediator();
+        LoadMix mix = new LoadMix(MIX);
+
+        run(mediator, mix, TimeUnit.SECONDS.toNanos(WARMUP_SECONDS));
+
+        long start = System.nanoTime();
+        LoadResults results = run(mediator, mix, TimeUnit.SECONDS.toNanos(DURATION_SECONDS));
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("entries=%d threads=%d durationSeconds=%d mix=%s%n%s",
+                ENTRIES, THREADS, DURATION_SECONDS, mix, results.format(elapsed)));
+
+        for (CrudOperation operation : CrudOperation.values()) {
+            assertEquals("Failed " + operation + " operations", 0, results.getFailures(operation));
+        }
+    }
+
+    private LoadResults run(Mediator mediator, LoadMix mix, long durationNanos) throws Exception {
+        LoadResults results = new LoadResults();
+        long deadline = System.nanoTime() + durationNanos;
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> clients = new ArrayList<>();
+            for (int x = 0; x < THREADS; x++) {
+                clients.add(executor.submit(() -> {
+                    Random random = new Random();
+                    while (System.nanoTime() < deadline) {
+                        drive(mediator, mix.next(random), random, results);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> client : clients) {
+                client.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Runs a single operation, timing only the call to the mediator.
+     */
+    private void drive(Mediator mediator, CrudOperation operation, Random random, LoadResults results) throws IOException {
+        String uid = seededUid(random.nextInt(ENTRIES));
+        String deleteUid = (operation == CrudOperation.DELETE) ? inserted.poll() : null;
+        if ((operation == CrudOperation.DELETE) && (deleteUid == null)) {
+            //Nothing left to delete, insert something instead.
+            operation = CrudOperation.INSERT;
+        }
+
+        long start;
+        Response response;
+        switch (operation) {
+            case FIND:
+                FindRequest find = createRequest_FromJsonString(FindRequest.class,
+                        "{\"entity\":\"person\",\"entityVersion\":\"1.0.0\","
+                        + "\"projection\":[{\"field\":\"uid\"},{\"field\":\"cn\"},{\"field\":\"optional\"}],"
+                        + "\"query\":" + queryByUid(uid) + "}");
+                start = System.nanoTime();
+                response = mediator.find(find);
+                break;
+            case INSERT:
+                uid = "inserted" + insertSequence.incrementAndGet();
+                InsertionRequest insert = createRequest_FromJsonString(InsertionRequest.class,
+                        "{\"entity\":\"person\",\"entityVersion\":\"1.0.0\",\"projection\":{\"field\":\"dn\"},"
+                        + "\"data\":" + person(uid, "Inserted User") + "}");
+                start = System.nanoTime();
+                response = mediator.insert(insert);
+                break;
+            case SAVE:
+                SaveRequest save = createRequest_FromJsonString(SaveRequest.class,
+                        "{\"entity\":\"person\",\"entityVersion\":\"1.0.0\",\"projection\":{\"field\":\"dn\"},"
+                        + "\"data\":" + person(uid, "Saved User" + random.nextInt()) + ",\"upsert\":false}");
+                start = System.nanoTime();
+                response = mediator.save(save);
+                break;
+            case UPDATE:
+                UpdateRequest update = createRequest_FromJsonString(UpdateRequest.class,
+                        "{\"entity\":\"person\",\"entityVersion\":\"1.0.0\",\"projection\":{\"field\":\"dn\"},"
+                        + "\"query\":" + queryByUid(uid) + ","
+                        + "\"update\":{\"$set\":{\"optional\":\"updated " + random.nextInt() + "\"}}}");
+                start = System.nanoTime();
+                response = mediator.update(update);
+                break;
+            case DELETE:
+                DeleteRequest delete = createRequest_FromJsonString(DeleteRequest.class,
+                        "{\"entity\":\"person\",\"entityVersion\":\"1.0.0\",\"query\":" + queryByUid(deleteUid) + "}");
+                start = System.nanoTime();
+                response = mediator.delete(delete);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported operation: " + operation);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        boolean failed = !response.getErrors().isEmpty() || !response.getDataErrors().isEmpty();
+        results.record(operation, elapsed, failed);
+        if ((operation == CrudOperation.INSERT) && !failed) {
+            inserted.add(uid);
+        }
+    }
+
+    private static String queryByUid(String uid) {
+        return "{\"field\":\"uid\",\"op\":\"$eq\",\"rvalue\":\"" + uid + "\"}";
+    }
+
+    private static String person(String uid, String cn) {
+        return "{" + OBJECT_CLASSES + ","
+                + "\"uid\":\"" + uid + "\","
+                + "\"givenName\":\"Load\","
+                + "\"sn\":\"" + uid + "\","
+                + "\"cn\":\"" + cn + "\"}";
+    }
+
+}
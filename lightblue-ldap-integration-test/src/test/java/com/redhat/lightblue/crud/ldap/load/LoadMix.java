@@ -0,0 +1,79 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+
+/**
+ * The proportion of each {@link CrudOperation} to drive during a load run, parsed from a
+ * comma separated list of weights, ie. <code>find=70,insert=10,save=10,delete=10</code>.
+ * Operations that are not listed are not run.
+ *
+ * @author dcrissman
+ */
+class LoadMix {
+
+    private final Map<CrudOperation, Integer> weights = new EnumMap<>(CrudOperation.class);
+    private final int totalWeight;
+
+    LoadMix(String mix) {
+        int total = 0;
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight: " + part);
+            }
+            CrudOperation operation = CrudOperation.valueOf(pair[0].trim().toUpperCase());
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight cannot be negative: " + part);
+            }
+            weights.put(operation, weight);
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one operation must have a weight: " + mix);
+        }
+        totalWeight = total;
+    }
+
+    /**
+     * @return a {@link CrudOperation} chosen at random in proportion to its weight.
+     */
+    CrudOperation next(Random random) {
+        int choice = random.nextInt(totalWeight);
+        for (Map.Entry<CrudOperation, Integer> weight : weights.entrySet()) {
+            choice -= weight.getValue();
+            if (choice < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Weights do not add up to " + totalWeight);
+    }
+
+    @Override
+    public String toString() {
+        return weights.toString();
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.lightblue.common.ldap.LatencyHistogram;
+import com.redhat.lightblue.common.ldap.LdapOperationStatistics.CrudOperation;
+
+/**
+ * Latency and failures of each {@link CrudOperation} driven during a load run.
+ *
+ * @author dcrissman
+ */
+class LoadResults {
+
+    private final Map<CrudOperation, LatencyHistogram> latencies = new EnumMap<>(CrudOperation.class);
+    private final Map<CrudOperation, AtomicLong> failures = new EnumMap<>(CrudOperation.class);
+
+    LoadResults() {
+        for (CrudOperation operation : CrudOperation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            failures.put(operation, new AtomicLong());
+        }
+    }
+
+    void record(CrudOperation operation, long elapsedNanos, boolean failed) {
+        latencies.get(operation).record(elapsedNanos);
+        if (failed) {
+            failures.get(operation).incrementAndGet();
+        }
+    }
+
+    long getCount(CrudOperation operation) {
+        return latencies.get(operation).getCount();
+    }
+
+    long getFailures(CrudOperation operation) {
+        return failures.get(operation).get();
+    }
+
+    /**
+     * @param elapsedNanos - duration of the measured part of the run.
+     * @return a table of the throughput and latency percentiles of each operation that was run.
+     */
+    String format(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1000000000.0;
+        StringBuilder report = new StringBuilder(String.format("%-8s %10s %9s %12s %10s %10s %10s %10s%n",
+                "op", "count", "failed", "ops/sec", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+        long totalCount = 0;
+        for (CrudOperation operation : CrudOperation.values()) {
+            LatencyHistogram latency = latencies.get(operation);
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            totalCount += latency.getCount();
+            report.append(String.format("%-8s %10d %9d %12.1f %10.3f %10.3f %10.3f %10.3f%n",
+                    operation.name().toLowerCase(),
+                    latency.getCount(),
+                    failures.get(operation).get(),
+                    latency.getCount() / elapsedSeconds,
+                    latency.getPercentileMillis(50),
+                    latency.getPercentileMillis(99),
+                    latency.getPercentileMillis(99.9),
+                    latency.getMaxMillis()));
+        }
+        report.append(String.format("%-8s %10d %9s %12.1f%n", "total", totalCount, "", totalCount / elapsedSeconds));
+        return report.toString();
+    }
+
+}
@@ -80,4 +80,24 @@ public class LdapMetadata implements LdapFieldNameTranslator{
         fieldsToAttributes.put(fieldPath, attributeName);
     }
 
+    @Override
+    public int hashCode() {
+        return fieldsToAttributes.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        LdapMetadata other = (LdapMetadata) obj;
+        return fieldsToAttributes.equals(other.fieldsToAttributes);
+    }
+
 }
@@ -36,6 +36,7 @@ public class LdapDataStoreParser<T> implements DataStoreParser<T> {
     private final static String DATABASE = "database";
     private final static String BASEDN = "basedn";
     private final static String UNIQUE_FIELD = "uniqueattr";
+    private final static String PAGE_SIZE = "pagesize";
 
     @Override
     public LdapDataStore parse(String name, MetadataParser<T> p, T node) {
@@ -47,10 +48,29 @@ public class LdapDataStoreParser<T> implements DataStoreParser<T> {
         dataStore.setDatabase(p.getRequiredStringProperty(node, DATABASE));
         dataStore.setBaseDN(p.getRequiredStringProperty(node, BASEDN));
         dataStore.setUniqueAttribute(p.getRequiredStringProperty(node, UNIQUE_FIELD));
+        dataStore.setPageSize(parsePageSize(p, node));
 
         return dataStore;
     }
 
+    private Integer parsePageSize(MetadataParser<T> p, T node) {
+        T pageSizeNode = p.getMapProperty(node, PAGE_SIZE);
+        Object pageSize = (pageSizeNode == null) ? null : p.asValue(pageSizeNode);
+        if (pageSize == null) {
+            return null;
+        }
+
+        try {
+            int size = (pageSize instanceof Number) ? ((Number) pageSize).intValue() : Integer.parseInt(String.valueOf(pageSize));
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            //Handled below.
+        }
+        throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, PAGE_SIZE + "=" + pageSize);
+    }
+
     @Override
     public void convert(MetadataParser<T> p, T emptyNode, DataStore store) {
         if(!(store instanceof LdapDataStore)){
@@ -61,6 +81,9 @@ public class LdapDataStoreParser<T> implements DataStoreParser<T> {
         p.setMapProperty(emptyNode, DATABASE, p.asRepresentation(ds.getDatabase()));
         p.setMapProperty(emptyNode, BASEDN, p.asRepresentation(ds.getBaseDN()));
         p.setMapProperty(emptyNode, UNIQUE_FIELD, p.asRepresentation(ds.getUniqueAttribute()));
+        if (ds.getPageSize() != null) {
+            p.setMapProperty(emptyNode, PAGE_SIZE, p.asRepresentation(ds.getPageSize()));
+        }
     }
 
     @Override
@@ -20,6 +20,7 @@ package com.redhat.lightblue.metadata.ldap.model;
 
 import static org.hamcrest.Matchers.hasItems;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertThat;
@@ -33,6 +34,19 @@ import com.redhat.lightblue.util.Path;
 
 public class LdapMetadataTest {
 
+    @Test
+    public void testEquals(){
+        LdapMetadata metadata = new LdapMetadata();
+        metadata.addFieldToAttribute(new Path("fakeFieldName"), "fakeAttributeName");
+
+        LdapMetadata same = new LdapMetadata();
+        same.addFieldToAttribute(new Path("fakeFieldName"), "fakeAttributeName");
+
+        assertEquals(metadata, same);
+        assertEquals(metadata.hashCode(), same.hashCode());
+        assertNotEquals(metadata, new LdapMetadata());
+    }
+
     @Test
     public void testTranslateFieldName(){
         Path fieldName = new Path("fakeFieldName");
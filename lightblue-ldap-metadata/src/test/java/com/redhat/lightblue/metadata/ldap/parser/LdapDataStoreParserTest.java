@@ -22,6 +22,7 @@ import static com.redhat.lightblue.util.JsonUtils.json;
 import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.io.IOException;
 
@@ -68,6 +69,28 @@ public class LdapDataStoreParserTest {
         assertEquals(DATABASE, store.getDatabase());
         assertEquals(BASE_DN, store.getBaseDN());
         assertEquals(UNIQUE_ATTRIBUTE, store.getUniqueAttribute());
+        assertNull(store.getPageSize());
+    }
+
+    @Test
+    public void testParse_WithPageSize() throws IOException{
+        LdapDataStore store = new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\",\"pagesize\":250}"));
+
+        assertEquals(Integer.valueOf(250), store.getPageSize());
+    }
+
+    @Test
+    public void testParse_InvalidPageSize() throws IOException{
+        expectedEx.expect(com.redhat.lightblue.util.Error.class);
+        expectedEx.expectMessage("metadata:IllFormedMetadata");
+
+        new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\",\"pagesize\":-1}"));
     }
 
     @Test
@@ -96,6 +119,22 @@ public class LdapDataStoreParserTest {
                 node.toString(), true);
     }
 
+    @Test
+    public void testConvert_WithPageSize() throws IOException, JSONException{
+        LdapDataStore store = new LdapDataStore(DATABASE, BASE_DN, UNIQUE_ATTRIBUTE);
+        store.setPageSize(250);
+
+        JsonNode node = json("{}");
+
+        new LdapDataStoreParser<JsonNode>().convert(
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                node,
+                store);
+
+        JSONAssert.assertEquals("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\",\"pagesize\":250}",
+                node.toString(), true);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testConvert_wrongStoreType(){
         new LdapDataStoreParser<JsonNode>().convert(null, null, new FakeDataStore("fake"));
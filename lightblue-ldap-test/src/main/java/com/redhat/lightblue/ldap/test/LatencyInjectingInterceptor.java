@@ -0,0 +1,210 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedAddRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedCompareRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedDeleteRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedExtendedRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedModifyDNRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedModifyRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSASLBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * {@link InMemoryOperationInterceptor} that makes the in-memory directory behave more like
+ * one across a network, by delaying each request by a configurable latency plus a random
+ * amount of jitter, and by failing a proportion of requests with {@link ResultCode#BUSY} or
+ * {@link ResultCode#UNAVAILABLE}. Failures are never injected into binds, so connections can
+ * always be established.<br>
+ * <b>NOTE:</b> The in-memory directory handles the requests on a single connection one at a
+ * time, so the latency of requests pipelined on one connection adds up. Gains from sending
+ * fewer requests, or spreading them over more connections, can be measured.<br>
+ * Settings can be changed while the server is running.
+ *
+ * @author dcrissman
+ */
+public class LatencyInjectingInterceptor extends InMemoryOperationInterceptor {
+
+    public enum Operation {
+        ADD, BIND, COMPARE, DELETE, EXTENDED, MODIFY, MODIFY_DN, SEARCH
+    }
+
+    private final AtomicLongArray latencyMillis = new AtomicLongArray(Operation.values().length);
+    private volatile long jitterMillis = 0;
+    private volatile double failureRate = 0;
+    private volatile ResultCode[] failureResultCodes = new ResultCode[]{ResultCode.BUSY, ResultCode.UNAVAILABLE};
+
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    /**
+     * Delays every operation by the latency.
+     * @param latencyMillis - time to delay each request by.
+     * @return this instance.
+     */
+    public LatencyInjectingInterceptor setLatencyMillis(long latencyMillis) {
+        for (Operation operation : Operation.values()) {
+            setLatencyMillis(operation, latencyMillis);
+        }
+        return this;
+    }
+
+    /**
+     * Delays each request for the {@link Operation} by the latency.
+     * @param operation - {@link Operation}
+     * @param latencyMillis - time to delay each request by.
+     * @return this instance.
+     */
+    public LatencyInjectingInterceptor setLatencyMillis(Operation operation, long latencyMillis) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis cannot be negative: " + latencyMillis);
+        }
+        this.latencyMillis.set(operation.ordinal(), latencyMillis);
+        return this;
+    }
+
+    public long getLatencyMillis(Operation operation) {
+        return latencyMillis.get(operation.ordinal());
+    }
+
+    /**
+     * Adds a random delay, between <code>0</code> and the jitter, to every request.
+     * @param jitterMillis - maximum additional delay.
+     * @return this instance.
+     */
+    public LatencyInjectingInterceptor setJitterMillis(long jitterMillis) {
+        if (jitterMillis < 0) {
+            throw new IllegalArgumentException("jitterMillis cannot be negative: " + jitterMillis);
+        }
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Fails the proportion of requests with one of the {@link ResultCode}s, chosen at random.
+     * @param failureRate - between 0 and 1.
+     * @param resultCodes - {@link ResultCode}s to fail with, defaults to {@link ResultCode#BUSY}
+     * and {@link ResultCode#UNAVAILABLE}.
+     * @return this instance.
+     */
+    public LatencyInjectingInterceptor setFailureRate(double failureRate, ResultCode... resultCodes) {
+        if ((failureRate < 0) || (failureRate > 1)) {
+            throw new IllegalArgumentException("failureRate must be between 0 and 1: " + failureRate);
+        }
+        if ((resultCodes != null) && (resultCodes.length > 0)) {
+            this.failureResultCodes = resultCodes.clone();
+        }
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @return the number of requests that have been failed on purpose.
+     */
+    public long getInjectedFailureCount() {
+        return injectedFailures.get();
+    }
+
+    /**
+     * Removes all latency, jitter and failures.
+     */
+    public void reset() {
+        setLatencyMillis(0);
+        jitterMillis = 0;
+        failureRate = 0;
+        injectedFailures.set(0);
+    }
+
+    @Override
+    public void processAddRequest(InMemoryInterceptedAddRequest request) throws LDAPException {
+        intercept(Operation.ADD);
+    }
+
+    @Override
+    public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) throws LDAPException {
+        intercept(Operation.BIND);
+    }
+
+    @Override
+    public void processSASLBindRequest(InMemoryInterceptedSASLBindRequest request) throws LDAPException {
+        intercept(Operation.BIND);
+    }
+
+    @Override
+    public void processCompareRequest(InMemoryInterceptedCompareRequest request) throws LDAPException {
+        intercept(Operation.COMPARE);
+    }
+
+    @Override
+    public void processDeleteRequest(InMemoryInterceptedDeleteRequest request) throws LDAPException {
+        intercept(Operation.DELETE);
+    }
+
+    @Override
+    public void processExtendedRequest(InMemoryInterceptedExtendedRequest request) throws LDAPException {
+        intercept(Operation.EXTENDED);
+    }
+
+    @Override
+    public void processModifyRequest(InMemoryInterceptedModifyRequest request) throws LDAPException {
+        intercept(Operation.MODIFY);
+    }
+
+    @Override
+    public void processModifyDNRequest(InMemoryInterceptedModifyDNRequest request) throws LDAPException {
+        intercept(Operation.MODIFY_DN);
+    }
+
+    @Override
+    public void processSearchRequest(InMemoryInterceptedSearchRequest request) throws LDAPException {
+        intercept(Operation.SEARCH);
+    }
+
+    private void intercept(Operation operation) throws LDAPException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long jitter = jitterMillis;
+        long delay = latencyMillis.get(operation.ordinal()) + ((jitter > 0) ? random.nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LDAPException(ResultCode.UNAVAILABLE, "Interrupted while injecting latency.", e);
+            }
+        }
+
+        double rate = failureRate;
+        if ((operation != Operation.BIND) && (rate > 0) && (random.nextDouble() < rate)) {
+            ResultCode[] resultCodes = failureResultCodes;
+            injectedFailures.incrementAndGet();
+            throw new LDAPException(resultCodes[random.nextInt(resultCodes.length)], "Injected failure for " + operation);
+        }
+    }
+
+}
@@ -18,13 +18,17 @@
  */
 package com.redhat.lightblue.ldap.test;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map.Entry;
 
 import org.junit.rules.ExternalResource;
@@ -34,6 +38,7 @@ import org.junit.runners.model.Statement;
 import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
@@ -95,6 +100,7 @@ public class LdapServerExternalResource extends ExternalResource {
     private InMemoryLdapServer imlsAnnotation = null;
     private final LinkedHashMap<String, Attribute[]> preloadDnData;
     private final Schema schema;
+    private final List<InMemoryOperationInterceptor> interceptors = new ArrayList<>();
 
     public LdapServerExternalResource() {
         this(null, null);
@@ -131,6 +137,9 @@ public class LdapServerExternalResource extends ExternalResource {
                 imlsAnnotation.name(), null, imlsAnnotation.port(), null, null, null);
         config.setListenerConfigs(listenerConfig);
         config.setSchema(schema); // do not check (attribute) schema
+        for (InMemoryOperationInterceptor interceptor : interceptors) {
+            config.addInMemoryOperationInterceptor(interceptor);
+        }
 
         server = new InMemoryDirectoryServer(config);
         server.startListening();
@@ -146,10 +155,32 @@ public class LdapServerExternalResource extends ExternalResource {
         }
     }
 
+    /**
+     * Installs an {@link InMemoryOperationInterceptor}, ie. a {@link LatencyInjectingInterceptor},
+     * on the ldap server. Must be called before the server is started.
+     * @return this instance.
+     */
+    public LdapServerExternalResource addOperationInterceptor(InMemoryOperationInterceptor interceptor) {
+        if (server != null) {
+            throw new IllegalStateException("Interceptors must be added before the ldap server is started.");
+        }
+        interceptors.add(interceptor);
+        return this;
+    }
+
     public void add(String dn, Attribute... attributes) throws LDIFException, LDAPException {
         server.add(dn, attributes);
     }
 
+    /**
+     * Bulk imports the entries in the LDIF file, ie. as written by {@link LdifGenerator},
+     * through a {@link LdifBulkLoader}.
+     * @return the number of entries imported.
+     */
+    public int importLdif(File ldif) throws IOException, LDAPException {
+        return new LdifBulkLoader(server).load(ldif);
+    }
+
     /**
      * @return the actual name used by the ldap server.
      */
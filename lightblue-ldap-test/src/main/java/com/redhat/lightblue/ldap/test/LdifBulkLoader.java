@@ -0,0 +1,89 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFReader;
+
+/**
+ * Imports large LDIF files, ie. as written by {@link LdifGenerator}, into an
+ * {@link InMemoryDirectoryServer}. The file is read through a memory-mapped window and
+ * parsed by several threads as it is read, so the whole file is never materialised on the
+ * heap, only the entries themselves once they are in the server.<br>
+ * Entries are imported in a single transaction, bypassing any operation interceptors, so
+ * either every entry is loaded or none are. The parents of the entries must already exist.
+ *
+ * @author dcrissman
+ */
+public class LdifBulkLoader {
+
+    public static final int DEFAULT_PARSE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private final InMemoryDirectoryServer server;
+    private int parseThreads = DEFAULT_PARSE_THREADS;
+    private int windowSize = MappedFileInputStream.DEFAULT_WINDOW_SIZE;
+
+    public LdifBulkLoader(InMemoryDirectoryServer server) {
+        if (server == null) {
+            throw new IllegalArgumentException("server cannot be null");
+        }
+        this.server = server;
+    }
+
+    /**
+     * @param parseThreads - number of threads used to parse entries, 0 to parse on the calling thread.
+     */
+    public LdifBulkLoader setParseThreads(int parseThreads) {
+        if (parseThreads < 0) {
+            throw new IllegalArgumentException("parseThreads cannot be negative: " + parseThreads);
+        }
+        this.parseThreads = parseThreads;
+        return this;
+    }
+
+    /**
+     * @param windowSize - maximum number of bytes of the file mapped into memory at once.
+     */
+    public LdifBulkLoader setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Adds the entries in the LDIF file to those already in the server.
+     * @param ldif - LDIF file to import.
+     * @return the number of entries imported.
+     */
+    public int load(File ldif) throws IOException, LDAPException {
+        LDIFReader reader = new LDIFReader(new MappedFileInputStream(ldif, windowSize), parseThreads);
+        try {
+            return server.importFromLDIF(false, reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import com.redhat.lightblue.metadata.ArrayElement;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.types.BigDecimalType;
+import com.redhat.lightblue.metadata.types.BigIntegerType;
+import com.redhat.lightblue.metadata.types.BinaryType;
+import com.redhat.lightblue.metadata.types.BooleanType;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.DoubleType;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.UIDType;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFWriter;
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Streams synthetic entries matching an {@link EntityMetadata} as LDIF, for loading directories
+ * large enough to benchmark against. Entries are written one at a time, so any number can be
+ * generated without holding them in memory.<br>
+ * Each simple field is given a random value of its type, each simple array a random number of
+ * distinct values as drawn from its {@link ValueCount}, and each binary field a random number of
+ * bytes. Fields of nested objects are written as attributes named after the field itself.
+ * The <code>dn</code>, <code>objectType</code> and array count fields are skipped, as are
+ * references and arrays of objects, which ldap does not support. Values are generated from a
+ * seed, so the same seed always produces the same LDIF.
+ *
+ * @author dcrissman
+ */
+public class LdifGenerator {
+
+    private static final String[] IGNORED_FIELDS = new String[]{"dn", "objectType", "objectClass"};
+
+    private final EntityMetadata entityMetadata;
+    private final String baseDn;
+    private final String uniqueAttribute;
+
+    private String[] objectClasses = new String[]{"top", "person", "organizationalPerson", "inetOrgPerson"};
+    private ValueCount defaultArraySize = ValueCount.uniform(1, 5);
+    private ValueCount defaultBinarySize = ValueCount.fixed(1024);
+    private final Map<String, ValueCount> valueCounts = new HashMap<>();
+    private long seed = 0;
+
+    /**
+     * @param entityMetadata - {@link EntityMetadata} to generate entries for.
+     * @param baseDn - DN the entries are generated beneath.
+     * @param uniqueAttribute - attribute the DN of each entry is built from, it is given a unique value.
+     */
+    public LdifGenerator(EntityMetadata entityMetadata, String baseDn, String uniqueAttribute) {
+        this.entityMetadata = entityMetadata;
+        this.baseDn = baseDn;
+        this.uniqueAttribute = uniqueAttribute;
+    }
+
+    public LdifGenerator setObjectClasses(String... objectClasses) {
+        this.objectClasses = objectClasses.clone();
+        return this;
+    }
+
+    /**
+     * @param defaultArraySize - {@link ValueCount} for multi-valued fields without their own.
+     */
+    public LdifGenerator setDefaultArraySize(ValueCount defaultArraySize) {
+        this.defaultArraySize = defaultArraySize;
+        return this;
+    }
+
+    /**
+     * @param defaultBinarySize - {@link ValueCount} for binary fields without their own.
+     */
+    public LdifGenerator setDefaultBinarySize(ValueCount defaultBinarySize) {
+        this.defaultBinarySize = defaultBinarySize;
+        return this;
+    }
+
+    /**
+     * @param fieldName - name of a multi-valued or binary field.
+     * @param valueCount - number of values, or bytes, to generate for the field.
+     */
+    public LdifGenerator setValueCount(String fieldName, ValueCount valueCount) {
+        valueCounts.put(fieldName, valueCount);
+        return this;
+    }
+
+    public LdifGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes the entries to the {@link OutputStream}, which is left open.
+     * @param out - {@link OutputStream} to write the LDIF to.
+     * @param count - number of entries to generate.
+     * @return the number of entries written.
+     */
+    public int generate(OutputStream out, int count) throws IOException {
+        Random random = new Random(seed);
+        LDIFWriter writer = new LDIFWriter(out);
+        for (int x = 0; x < count; x++) {
+            writer.writeEntry(createEntry(x, random));
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * @return the entry with the index.
+     */
+    Entry createEntry(int index, Random random) {
+        String uniqueValue = uniqueAttribute + index;
+        List<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("objectClass", objectClasses));
+        attributes.add(new Attribute(uniqueAttribute, uniqueValue));
+
+        addAttributes(entityMetadata.getFields().getFields(), random, attributes);
+
+        return new Entry(uniqueAttribute + "=" + uniqueValue + "," + baseDn, attributes);
+    }
+
+    private void addAttributes(Iterator<Field> fields, Random random, List<Attribute> attributes) {
+        while (fields.hasNext()) {
+            Field field = fields.next();
+            String name = field.getName();
+            if (isIgnored(name)) {
+                continue;
+            }
+
+            if (field instanceof SimpleField) {
+                Type type = ((SimpleField) field).getType();
+                if (type instanceof BinaryType) {
+                    attributes.add(new Attribute(name, createBytes(getValueCount(name, defaultBinarySize).next(random), random)));
+                }
+                else {
+                    attributes.add(new Attribute(name, createValue(name, type, random)));
+                }
+            }
+            else if (field instanceof ArrayField) {
+                ArrayElement element = ((ArrayField) field).getElement();
+                if (element instanceof SimpleArrayElement) {
+                    Type type = element.getType();
+                    int size = getValueCount(name, defaultArraySize).next(random);
+                    if (size > 0) {
+                        if (type instanceof BinaryType) {
+                            byte[][] values = new byte[size][];
+                            for (int x = 0; x < size; x++) {
+                                values[x] = createBytes(defaultBinarySize.next(random), random);
+                            }
+                            attributes.add(new Attribute(name, values));
+                        }
+                        else {
+                            String[] values = new String[size];
+                            for (int x = 0; x < size; x++) {
+                                //Values of an attribute must be distinct.
+                                values[x] = createDistinctValue(name, type, x, random);
+                            }
+                            attributes.add(new Attribute(name, values));
+                        }
+                    }
+                }
+            }
+            else if (field instanceof ObjectField) {
+                addAttributes(((ObjectField) field).getFields().getFields(), random, attributes);
+            }
+        }
+    }
+
+    private boolean isIgnored(String name) {
+        if (name.equals(uniqueAttribute) || name.endsWith("#")) {
+            return true;
+        }
+        for (String ignored : IGNORED_FIELDS) {
+            if (ignored.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ValueCount getValueCount(String name, ValueCount defaultValueCount) {
+        ValueCount valueCount = valueCounts.get(name);
+        return (valueCount == null) ? defaultValueCount : valueCount;
+    }
+
+    private static String createValue(String name, Type type, Random random) {
+        if (type instanceof IntegerType) {
+            return String.valueOf(random.nextInt(1000000));
+        }
+        else if (type instanceof DoubleType) {
+            return String.valueOf(random.nextDouble() * 1000000);
+        }
+        else if (type instanceof BooleanType) {
+            return String.valueOf(random.nextBoolean());
+        }
+        else if (type instanceof BigIntegerType) {
+            return new BigInteger(96, random).toString();
+        }
+        else if (type instanceof BigDecimalType) {
+            return new BigDecimal(new BigInteger(96, random), 6).toString();
+        }
+        else if (type instanceof DateType) {
+            //Anywhere in the ~30 years after 1990.
+            long millis = 631152000000L + (long) (random.nextDouble() * 946080000000L);
+            return StaticUtils.encodeGeneralizedTime(new Date(millis));
+        }
+        else if (type instanceof UIDType) {
+            return new UUID(random.nextLong(), random.nextLong()).toString();
+        }
+        return name + "-" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    private static String createDistinctValue(String name, Type type, int index, Random random) {
+        if ((type instanceof IntegerType) || (type instanceof BigIntegerType)) {
+            return String.valueOf(index);
+        }
+        else if ((type instanceof DoubleType) || (type instanceof BigDecimalType)) {
+            return index + ".5";
+        }
+        else if ((type instanceof DateType) || (type instanceof UIDType) || (type instanceof BooleanType)) {
+            //Booleans can have no more than two distinct values, so these are left to chance.
+            return createValue(name, type, random);
+        }
+        return name + "-" + index + "-" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    private static byte[] createBytes(int size, Random random) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import java.util.Random;
+
+/**
+ * Distribution of the number of values to generate for a multi-valued attribute, or the
+ * number of bytes to generate for a binary attribute.
+ *
+ * @author dcrissman
+ */
+public interface ValueCount {
+
+    /**
+     * @return the number of values, or bytes, to generate.
+     */
+    int next(Random random);
+
+    /**
+     * @return a {@link ValueCount} that is always the same.
+     */
+    static ValueCount fixed(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count cannot be negative: " + count);
+        }
+        return (Random random) -> count;
+    }
+
+    /**
+     * @return a {@link ValueCount} evenly distributed between min and max, inclusive.
+     */
+    static ValueCount uniform(int min, int max) {
+        if ((min < 0) || (max < min)) {
+            throw new IllegalArgumentException("Expected 0 <= min <= max: " + min + ", " + max);
+        }
+        return (Random random) -> min + random.nextInt(max - min + 1);
+    }
+
+    /**
+     * Long tailed distribution between min and max, inclusive, where most counts are close to
+     * min and only a few approach max, ie. most groups are small but a few are very large.
+     * @param exponent - greater than 1, the higher it is the fewer large counts there are.
+     */
+    static ValueCount powerLaw(int min, int max, double exponent) {
+        if ((min < 1) || (max < min)) {
+            throw new IllegalArgumentException("Expected 1 <= min <= max: " + min + ", " + max);
+        }
+        if (exponent <= 1) {
+            throw new IllegalArgumentException("exponent must be greater than 1: " + exponent);
+        }
+        //Inverse transform sampling of a bounded Pareto distribution.
+        double oneMinusExponent = 1 - exponent;
+        double low = Math.pow(min, oneMinusExponent);
+        double high = Math.pow(max + 1, oneMinusExponent);
+        return (Random random) -> {
+            double sample = Math.pow(low + (random.nextDouble() * (high - low)), 1 / oneMinusExponent);
+            return Math.min(max, (int) sample);
+        };
+    }
+
+}
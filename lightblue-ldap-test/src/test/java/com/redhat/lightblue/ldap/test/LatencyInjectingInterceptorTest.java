@@ -0,0 +1,108 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LatencyInjectingInterceptor.Operation;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+@InMemoryLdapServer
+public class LatencyInjectingInterceptorTest {
+
+    private static final LatencyInjectingInterceptor interceptor = new LatencyInjectingInterceptor();
+
+    @ClassRule
+    public static final LdapServerExternalResource ldapServer =
+            LdapServerExternalResource.createDefaultInstance().addOperationInterceptor(interceptor);
+
+    @After
+    public void after() {
+        interceptor.reset();
+    }
+
+    @Test
+    public void testLatency() throws LDAPException {
+        interceptor.setLatencyMillis(Operation.SEARCH, 50);
+
+        LDAPConnection connection = ldapServer.getLDAPConnection();
+        try {
+            long start = System.nanoTime();
+            assertNotNull(connection.getEntry("dc=example,dc=com"));
+            assertTrue((System.nanoTime() - start) >= 50000000L);
+
+            //Only searches were slowed down.
+            assertEquals(0, interceptor.getLatencyMillis(Operation.ADD));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testFailureRate() throws LDAPException {
+        interceptor.setFailureRate(1, ResultCode.BUSY);
+
+        LDAPConnection connection = ldapServer.getLDAPConnection();
+        try {
+            //Binds are never failed.
+            connection.bind(LdapServerExternalResource.DEFAULT_BINDABLE_DN, LdapServerExternalResource.DEFAULT_PASSWORD);
+
+            connection.getEntry("dc=example,dc=com");
+            fail("Expected an injected failure");
+        } catch (LDAPException e) {
+            assertEquals(ResultCode.BUSY, e.getResultCode());
+            assertEquals(1, interceptor.getInjectedFailureCount());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testDirectAdd_NotIntercepted() throws Exception {
+        interceptor.setFailureRate(1);
+
+        ldapServer.add("ou=Direct,dc=example,dc=com",
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "Direct"));
+
+        assertEquals(0, interceptor.getInjectedFailureCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetFailureRate_OutOfRange() {
+        new LatencyInjectingInterceptor().setFailureRate(1.5);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddOperationInterceptor_AfterStart() {
+        ldapServer.addOperationInterceptor(new LatencyInjectingInterceptor());
+    }
+
+}
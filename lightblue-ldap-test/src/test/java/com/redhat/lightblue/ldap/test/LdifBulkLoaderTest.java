@@ -0,0 +1,110 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+
+@InMemoryLdapServer
+public class LdifBulkLoaderTest {
+
+    @ClassRule
+    public static final LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File ldif;
+
+    @Before
+    public void before() throws Exception {
+        ldapServer.clear();
+
+        ldif = folder.newFile("people.ldif");
+        try (OutputStream out = new FileOutputStream(ldif)) {
+            new LdifGenerator(LdifGeneratorTest.createMetadata(), "dc=example,dc=com", "uid")
+                    .setValueCount("jpegPhoto", ValueCount.uniform(0, 512))
+                    .generate(out, 200);
+        }
+    }
+
+    @Test
+    public void testImportLdif() throws IOException, LDAPException {
+        assertEquals(200, ldapServer.importLdif(ldif));
+
+        LDAPConnection connection = ldapServer.getLDAPConnection();
+        try {
+            assertNotNull(connection.getEntry("uid=uid199,dc=example,dc=com"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testLoad_EntriesSpanWindows() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+        config.setSchema(null);
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.add("dc=example,dc=com", new Attribute("objectClass", "top", "domain"), new Attribute("dc", "example"));
+
+        //Small enough for nearly every entry to be split across windows.
+        assertEquals(200, new LdifBulkLoader(server).setWindowSize(97).setParseThreads(2).load(ldif));
+        assertEquals(200, server.countEntriesBelow("dc=example,dc=com") - 1);
+    }
+
+    @Test
+    public void testMappedFileInputStream_SmallWindow() throws IOException {
+        byte[] expected = Files.readAllBytes(ldif.toPath());
+
+        byte[] actual = new byte[expected.length];
+        try (InputStream in = new MappedFileInputStream(ldif, 97)) {
+            int offset = 0;
+            int read;
+            while ((read = in.read(actual, offset, Math.min(1000, actual.length - offset))) > 0) {
+                offset += read;
+            }
+            assertEquals(expected.length, offset);
+            assertEquals(-1, in.read());
+        }
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.ldap.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.types.BinaryType;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.StringType;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+
+public class LdifGeneratorTest {
+
+    static EntityMetadata createMetadata() {
+        EntityMetadata md = new EntityMetadata("person");
+        md.getFields().addNew(new SimpleField("dn", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("uid", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("cn", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("employeeNumber", IntegerType.TYPE));
+        md.getFields().addNew(new SimpleField("createTimestamp", DateType.TYPE));
+        md.getFields().addNew(new SimpleField("jpegPhoto", BinaryType.TYPE));
+        md.getFields().addNew(new ArrayField("mail", new SimpleArrayElement(StringType.TYPE)));
+        md.getFields().addNew(new SimpleField("mail#", IntegerType.TYPE));
+
+        ObjectField address = new ObjectField("address");
+        address.getFields().addNew(new SimpleField("street", StringType.TYPE));
+        md.getFields().addNew(address);
+        return md;
+    }
+
+    private static LDIFReader read(ByteArrayOutputStream out) {
+        return new LDIFReader(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testGenerate() throws IOException, LDIFException {
+        LdifGenerator generator = new LdifGenerator(createMetadata(), "dc=example,dc=com", "uid")
+                .setValueCount("mail", ValueCount.fixed(3))
+                .setValueCount("jpegPhoto", ValueCount.fixed(100));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(10, generator.generate(out, 10));
+
+        LDIFReader reader = read(out);
+        for (int x = 0; x < 10; x++) {
+            Entry entry = reader.readEntry();
+            assertEquals("uid=uid" + x + ",dc=example,dc=com", entry.getDN());
+            assertTrue(entry.hasObjectClass("inetOrgPerson"));
+            assertNotNull(entry.getAttributeValue("cn"));
+            assertNotNull(entry.getAttributeValueAsInteger("employeeNumber"));
+            assertNotNull(entry.getAttributeValueAsDate("createTimestamp"));
+            assertEquals(100, entry.getAttributeValueBytes("jpegPhoto").length);
+            assertEquals(3, new HashSet<>(Arrays.asList(entry.getAttributeValues("mail"))).size());
+            assertNotNull(entry.getAttributeValue("street"));
+
+            assertFalse(entry.hasAttribute("dn"));
+            assertFalse(entry.hasAttribute("mail#"));
+        }
+        assertNull(reader.readEntry());
+    }
+
+    @Test
+    public void testGenerate_SameSeedSameLdif() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        new LdifGenerator(createMetadata(), "dc=example,dc=com", "uid").setSeed(42).generate(first, 5);
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        new LdifGenerator(createMetadata(), "dc=example,dc=com", "uid").setSeed(42).generate(second, 5);
+
+        assertTrue(Arrays.equals(first.toByteArray(), second.toByteArray()));
+    }
+
+    @Test
+    public void testGenerate_EmptyArrayIsOmitted() throws IOException, LDIFException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LdifGenerator(createMetadata(), "dc=example,dc=com", "uid")
+                .setValueCount("mail", ValueCount.fixed(0))
+                .generate(out, 1);
+
+        assertFalse(read(out).readEntry().hasAttribute("mail"));
+    }
+
+    @Test
+    public void testPowerLaw() {
+        ValueCount valueCount = ValueCount.powerLaw(1, 1000, 2);
+        Random random = new Random(0);
+
+        int small = 0;
+        for (int x = 0; x < 10000; x++) {
+            int count = valueCount.next(random);
+            assertTrue(count >= 1 && count <= 1000);
+            if (count < 10) {
+                small++;
+            }
+        }
+        //Most counts are at the low end of the range.
+        assertTrue(small > 8000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUniform_InvalidRange() {
+        ValueCount.uniform(5, 1);
+    }
+
+}